@@ -23,19 +23,33 @@ package net.hunterstrategy.jnfsgit;
 
 
 import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.List;
+import java.util.NoSuchElementException;
 import net.hunterstrategy.libgit2.Tree;
-import net.hunterstrategy.libgit2.TreeItem;
 
+/**
+ * The entries of one tree, read by index as the iterator is advanced, so
+ * that stopping early never touches the rest of a large directory. The
+ * filter is applied to each entry as it is reached.
+ *
+ * The tree is pinned, see Tree.pin(), from the call to iterator() until
+ * the entries run out or the stream is closed, whichever comes first. As
+ * with any DirectoryStream, there is one iterator per stream, and once the
+ * stream is closed it returns no more entries.
+ */
 public class GitDirectoryStream implements DirectoryStream<Path> {
     private final DirectoryStream.Filter<? super Path> filter;
     private final Tree tree;
     private final GitPath path;
 
+    // guarded by this
+    private boolean iterated;
+    private boolean pinned;
+    private volatile boolean closed;
+
     GitDirectoryStream(DirectoryStream.Filter<? super Path> filter, GitPath path, Tree tree) {
         this.filter = filter;
         this.tree = tree;
@@ -43,23 +57,81 @@ public class GitDirectoryStream implements DirectoryStream<Path> {
     }
 
     @Override
-    public void close() throws IOException {}
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        unpin();
+    }
+
+    private synchronized void unpin() {
+        if (pinned) {
+            pinned = false;
+            tree.unpin();
+        }
+    }
 
     @Override
-    public Iterator<Path> iterator() {
-        int entryCount = (int) tree.getEntryCount();
-        List<Path> items = new ArrayList<>(entryCount);
-        for (int pos = 0; pos < entryCount; pos++) {
-            TreeItem item = tree.getByIndex(pos);
-            GitPath itemPath = GitPath.class.cast(path.resolve(item.getName()));
-            try {
-                if (filter.accept(itemPath)) {
-                    items.add(itemPath);
+    public synchronized Iterator<Path> iterator() {
+        if (closed) {
+            throw new IllegalStateException("Directory stream is closed");
+        }
+        if (iterated) {
+            throw new IllegalStateException("Iterator already obtained");
+        }
+        iterated = true;
+        tree.pin();
+        pinned = true;
+        return new EntryIterator(tree.getEntryCount());
+    }
+
+    private final class EntryIterator implements Iterator<Path> {
+        private final long entryCount;
+        private long position;
+        // read ahead by hasNext, null if not yet read
+        private Path next;
+
+        private EntryIterator(long entryCount) {
+            this.entryCount = entryCount;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = advance();
+            }
+            return next != null;
+        }
+
+        @Override
+        public Path next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Path result = next;
+            next = null;
+            return result;
+        }
+
+        private Path advance() {
+            while (!closed && position < entryCount) {
+                Tree.Entry item = tree.getByIndex(position++);
+                if (item == null) {
+                    continue;
+                }
+                GitPath itemPath = path.resolveName(item.getName());
+                try {
+                    if (filter.accept(itemPath)) {
+                        return itemPath;
+                    }
+                } catch (IOException ioe) {
+                    throw new DirectoryIteratorException(ioe);
                 }
-            } catch (IOException ioe) {
-                throw new IllegalStateException(ioe);
             }
+            // exhausted, streams that are never closed don't keep the tree
+            unpin();
+            return null;
         }
-        return items.iterator();
     }
 }
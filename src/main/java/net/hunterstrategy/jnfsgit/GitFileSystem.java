@@ -23,10 +23,13 @@ package net.hunterstrategy.jnfsgit;
 
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.FileStore;
 import java.nio.file.FileSystem;
+import java.nio.file.NotLinkException;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.WatchService;
@@ -36,42 +39,117 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
+import net.hunterstrategy.libgit2.Blob;
 import net.hunterstrategy.libgit2.Commit;
 import net.hunterstrategy.libgit2.GitObject;
+import net.hunterstrategy.libgit2.MemoryStats;
+import net.hunterstrategy.libgit2.NoteSnapshot;
+import net.hunterstrategy.libgit2.Oid;
 import net.hunterstrategy.libgit2.Repository;
+import net.hunterstrategy.libgit2.RepositoryPool;
 import net.hunterstrategy.libgit2.Tree;
+import net.hunterstrategy.libgit2.TreeCache;
 import net.hunterstrategy.libgit2.TreeItem;
 
 public class GitFileSystem extends FileSystem {
+    /**
+     * Blobs at least this big are streamed by default, see GitFileSystemProvider.newByteChannel.
+     */
+    static final long DEFAULT_STREAMING_THRESHOLD = 16 * 1024 * 1024;
+
     private final GitFileSystemProvider provider;
     private final GitURI guri;
 
+    // this filesystem's view of the shared repository, see Repository.newView
     private final Repository repo;
+    // taken from the provider's registry, null if the repository was passed in
+    private final Repository shared;
     private final GitObject revision;
     private final GitFileStore fileStore;
+    private final long streamingThreshold;
+    // apply gitattributes filters to every read, see GitOpenOption.FILTERED
+    private final boolean filtered;
+    // extra handles for blob reads, null unless repositoryPoolSize > 1
+    private final RepositoryPool pool;
+
+    // null unless submodules are mounted
+    private final SubmoduleMounts submodules;
+
+    private final PathIndex.Mode pathIndexMode;
+    private final long pathIndexMaxBytes;
+    // null until built, empty if it is off or over its memory cap
+    private volatile Optional<PathIndex> pathIndex;
+
+    // resolved symbolic links of this revision
+    private final SymlinkResolver links = new SymlinkResolver(this);
+
+    // by notes ref, "" for the default
+    private final Map<String, NoteSnapshot> notes = new ConcurrentHashMap<>();
 
     private Tree rootTree;
     private Commit rootCommit;
 
     GitFileSystem(GitFileSystemProvider provider, GitURI guri, boolean bare) {
+        this(provider, guri, new GitFileSystemOptions().bare(bare));
+    }
+
+    GitFileSystem(GitFileSystemProvider provider, GitURI guri, GitFileSystemOptions options) {
         this.provider = provider;
         this.guri = guri;
+        this.streamingThreshold = options.getStreamingThreshold();
+        this.filtered = options.isFiltered();
+        this.submodules = options.isSubmodules() ? new SubmoduleMounts(provider.getRepositoryRegistry()) : null;
+        this.pathIndexMode = options.getPathIndexMode();
+        this.pathIndexMaxBytes = options.getPathIndexMaxBytes();
 
-        this.repo = bare ? Repository.openBare(guri.getRepositoryDir()) : Repository.open(guri.getRepositoryDir());
+        // every revision of a repository set up the same way shares one handle
+        // and object cache; setUp only runs for the first of them
+        Repository repository = options.getRepository();
+        this.shared = repository == null
+                ? provider.getRepositoryRegistry()
+                        .acquire(
+                                guri.getRepositoryDir(),
+                                options.isBare(),
+                                options.getRepositorySettings(),
+                                options::setUp)
+                : null;
+        this.repo = (repository == null ? this.shared : repository).newView();
 
-        this.revision = this.repo.revparseSingle(guri.getRevisionSpec());
+        try {
+            this.repo.getTreeCache().setMaxWeight(options.getTreeCacheMaxWeight());
+            this.revision = this.repo.revparseSingle(guri.getRevisionSpec());
 
-        this.revision.peel(Tree.class).ifPresentOrElse(t -> this.rootTree = t, () -> {
-            throw new NullPointerException("Cannot peel tree");
-        });
+            this.revision.peel(Tree.class).ifPresentOrElse(t -> this.rootTree = t, () -> {
+                throw new NullPointerException("Cannot peel tree");
+            });
 
-        this.revision.peel(Commit.class).ifPresentOrElse(c -> this.rootCommit = c, () -> {
-            throw new NullPointerException("Cannot peel commit");
-        });
+            this.revision.peel(Commit.class).ifPresentOrElse(c -> this.rootCommit = c, () -> {
+                throw new NullPointerException("Cannot peel commit");
+            });
 
+            if (pathIndexMode == PathIndex.Mode.EAGER) {
+                getPathIndex();
+            }
+        } catch (RuntimeException e) {
+            try {
+                closeRepository();
+            } catch (Exception suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+
+        // only once nothing else can fail, since closeRepository doesn't close it
+        this.pool = options.getRepositoryPoolSize() > 1
+                ? new RepositoryPool(
+                        guri.getRepositoryDir(), options.isBare(), options.getRepositoryPoolSize(), options::setUp)
+                : null;
         this.fileStore = new GitFileStore(guri);
     }
 
@@ -83,15 +161,158 @@ public class GitFileSystem extends FileSystem {
         return func.apply(this.rootTree);
     }
 
+    /**
+     * Take a reference to an entry's blob. With a repository pool, the blob
+     * is read through a pooled handle, while the tree stays shared.
+     *
+     * @return blob, empty if the entry isn't one
+     */
+    Optional<Blob> openBlob(Tree.Entry entry) {
+        if (pool == null || entry.getOwner() != repo) {
+            return entry.openBlob();
+        }
+        if (entry.getType() != GitObject.Type.BLOB) {
+            return Optional.empty();
+        }
+        return Optional.of(pool.with(repo -> repo.openBlob(entry.getOid())));
+    }
+
+    /**
+     * Stream an entry's blob, see Tree.Entry.newReadChannel.
+     */
+    SeekableByteChannel newReadChannel(Tree.Entry entry) {
+        if (pool == null || entry.getOwner() != repo) {
+            return entry.newReadChannel();
+        }
+        if (entry.getType() != GitObject.Type.BLOB) {
+            throw new IllegalStateException("Not a blob: " + entry.getName());
+        }
+        return pool.with(repo -> repo.getOdb().newReadChannel(entry.getOid()));
+    }
+
+    /**
+     * Read an entry's blob with the gitattributes filters of this revision
+     * applied, see Blob.newFilteredChannel. The filtered copy is independent
+     * of the blob, which is released before returning. Blobs at or above
+     * the streaming threshold are filtered into a temporary file instead,
+     * or streamed as they are when no filter applies to them.
+     *
+     * @param path the entry's path in this filesystem
+     */
+    SeekableByteChannel newFilteredChannel(Tree.Entry entry, String path) throws IOException {
+        String asPath;
+        Oid attributesCommit;
+        if (entry.getOwner() != repo) {
+            // attributes of the submodule, at its gitlink commit
+            SubmoduleMounts.Mount mount = submodules.mountFor(path).get();
+            asPath = mount.relativize(path);
+            attributesCommit = mount.getCommit();
+        } else {
+            asPath = path.startsWith("/") ? path.substring(1) : path;
+            attributesCommit = rootCommit.getOid();
+        }
+
+        long size = entry.getSize();
+        boolean large = size >= streamingThreshold || size > Integer.MAX_VALUE;
+        if (large && !entry.getOwner().hasFilters(asPath, attributesCommit)) {
+            return newReadChannel(entry);
+        }
+        Blob blob = openBlob(entry).orElseThrow(() -> new FileNotFoundException(path));
+        try {
+            if (large) {
+                return blob.newSpooledFilteredChannel(asPath, attributesCommit);
+            }
+            return blob.newFilteredChannel(asPath, attributesCommit);
+        } finally {
+            blob.release();
+        }
+    }
+
     <T> T withCommit(Function<Commit, T> func) {
         return func.apply(this.rootCommit);
     }
 
+    /**
+     * Resolve a path in this revision, entering mounted submodules.
+     *
+     * @return the entry, the root tree for "/", or null if there is none
+     */
     TreeItem lookupPath(String path) {
-        if ("/".equals(path)) {
+        if ("/".equals(path) || path.isEmpty()) {
             return rootTree;
         }
-        return withTree(tree -> tree.getByNameRecursive(path));
+        if (submodules != null) {
+            return submodules.lookup(rootTree, repo, path);
+        }
+        Optional<PathIndex> index = getPathIndex();
+        if (index.isPresent()) {
+            return index.get().lookup(path);
+        }
+        return rootTree.getByNameRecursive(path);
+    }
+
+    /**
+     * The revision's path index, built on first use. Not used with mounted
+     * submodules, whose paths it doesn't cover.
+     *
+     * @return the index, empty if it is off or would exceed its memory cap
+     */
+    Optional<PathIndex> getPathIndex() {
+        Optional<PathIndex> index = this.pathIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = this.pathIndex;
+                if (index == null) {
+                    index = pathIndexMode == PathIndex.Mode.OFF || submodules != null
+                            ? Optional.empty()
+                            : Optional.ofNullable(PathIndex.build(rootTree, pathIndexMaxBytes));
+                    this.pathIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Resolve a path like lookupPath(String), following symbolic links on
+     * the way.
+     *
+     * @param followFinal follow the last component too, if it is a link
+     * @return the entry, the root tree, or null if there is none or a link
+     *     on the way is dangling
+     */
+    TreeItem lookupPath(String path, boolean followFinal) throws IOException {
+        TreeItem item = lookupPath(path);
+        // a direct hit went through trees only
+        if (item != null && (!followFinal || item.getFileMode() != Tree.FileMode.LINK)) {
+            return item;
+        }
+        String real = realPath(path, followFinal);
+        return real == null ? null : lookupPath(real);
+    }
+
+    /**
+     * @return absolute path without symbolic links, "." or "..", which may
+     *     not exist; null if a link on the way is dangling
+     */
+    String realPath(String path, boolean followFinal) throws IOException {
+        String resolved = links.resolve(path, followFinal);
+        return resolved == null ? null : "/" + resolved;
+    }
+
+    /**
+     * @return the target stored in a symbolic link
+     * @throws NotLinkException if path isn't one
+     */
+    String readLink(String path) throws IOException {
+        TreeItem item = lookupPath(path, false);
+        if (item == null) {
+            throw new FileNotFoundException(path);
+        }
+        if (item.getFileMode() != Tree.FileMode.LINK) {
+            throw new NotLinkException(path);
+        }
+        return links.readLink(path, item);
     }
 
     @Override
@@ -115,12 +336,32 @@ public class GitFileSystem extends FileSystem {
     @Override
     public void close() throws IOException {
         try {
-            this.repo.close();
+            if (this.submodules != null) {
+                this.submodules.close();
+            }
+            if (this.pool != null) {
+                this.pool.close();
+            }
+            closeRepository();
         } catch (Exception e) {
             throw new IOException("Error while closing repo", e);
         }
     }
 
+    /**
+     * Free this revision's objects, and the repository too if no other
+     * filesystem holds it.
+     */
+    private void closeRepository() throws Exception {
+        if (!this.repo.isOpen()) {
+            return;
+        }
+        this.repo.close();
+        if (this.shared != null) {
+            provider.getRepositoryRegistry().release(this.shared);
+        }
+    }
+
     @Override
     public boolean isOpen() {
         return this.repo.isOpen();
@@ -138,19 +379,67 @@ public class GitFileSystem extends FileSystem {
 
     @Override
     public Iterable<Path> getRootDirectories() {
-        GitPath root = new GitPath(this, new GitURI(this.guri.toRepoPathURI("/")));
+        GitPath root = GitPath.of(this, this.guri, "/");
         return Arrays.asList(root);
     }
 
+    /**
+     * Live native resources held by this filesystem's repository, which is
+     * shared by every open revision of it.
+     */
+    public MemoryStats getMemoryStats() {
+        return repo.getMemoryStats();
+    }
+
+    /**
+     * Subtrees this filesystem keeps loaded, with their hit and miss counts.
+     * Unlike memory stats, these are this filesystem's own.
+     */
+    public TreeCache getTreeCache() {
+        return repo.getTreeCache();
+    }
+
+    /**
+     * Notes under the default notes reference, loaded once for the life of
+     * this filesystem, so lookups for any number of commits are answered
+     * from memory. Notes added later are not seen.
+     */
+    public NoteSnapshot getNotes() {
+        return getNotes(null);
+    }
+
+    /**
+     * @param notesRef e.g. "refs/notes/build", null for the default
+     */
+    public NoteSnapshot getNotes(String notesRef) {
+        return notes.computeIfAbsent(
+                notesRef == null ? "" : notesRef, ref -> ref.isEmpty() ? repo.noteSnapshot() : repo.noteSnapshot(ref));
+    }
+
+    /**
+     * @return the note on this filesystem's commit under the default notes reference
+     */
+    public Optional<String> getNote() {
+        return getNotes().getMessage(rootCommit.getOid());
+    }
+
+    long getStreamingThreshold() {
+        return streamingThreshold;
+    }
+
+    boolean isFiltered() {
+        return filtered;
+    }
+
     GitFileStore getFileStore() {
         return fileStore;
     }
 
-    boolean exists(GitPath gpath) {
+    boolean exists(GitPath gpath) throws IOException {
         if ("/".equals(gpath.toString()) || gpath.toString().isBlank()) {
             return true; // root
         }
-        return rootTree.getByNameRecursive(gpath.toString()) != null;
+        return lookupPath(gpath.toString(), true) != null;
     }
 
     @Override
@@ -165,11 +454,14 @@ public class GitFileSystem extends FileSystem {
 
     @Override
     public Path getPath(String first, String... more) {
+        if (more.length == 0) {
+            return GitPath.of(this, this.guri, first);
+        }
         List<String> strings = new ArrayList<>();
         strings.add(first);
         strings.addAll(Arrays.asList(more));
         String joined = String.join(getSeparator(), strings);
-        return new GitPath(this, new GitURI(this.guri.toRepoPathURI(joined)));
+        return GitPath.of(this, this.guri, joined);
     }
 
     @Override
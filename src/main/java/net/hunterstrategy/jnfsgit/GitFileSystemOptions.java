@@ -0,0 +1,171 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.jnfsgit;
+
+
+import java.util.List;
+import net.hunterstrategy.libgit2.Odb;
+import net.hunterstrategy.libgit2.OdbBackend;
+import net.hunterstrategy.libgit2.Repository;
+import net.hunterstrategy.libgit2.TreeCache;
+
+/**
+ * How a GitFileSystem is set up, parsed once from the newFileSystem
+ * environment. Unset options keep their defaults.
+ */
+final class GitFileSystemOptions {
+    private boolean bare;
+    private Repository repository;
+    private long streamingThreshold = GitFileSystem.DEFAULT_STREAMING_THRESHOLD;
+    private boolean filtered;
+    private boolean submodules;
+    private PathIndex.Mode pathIndexMode = PathIndex.Mode.OFF;
+    private long pathIndexMaxBytes = PathIndex.DEFAULT_MAX_BYTES;
+    private long treeCacheMaxWeight = TreeCache.DEFAULT_MAX_WEIGHT;
+    private int repositoryPoolSize = 1;
+    private OdbBackend odbBackend;
+    private int odbBackendPriority = Odb.PACKED_PRIORITY + 1;
+
+    GitFileSystemOptions bare(boolean bare) {
+        this.bare = bare;
+        return this;
+    }
+
+    /**
+     * Used as is and left open, instead of the provider's shared handle.
+     */
+    GitFileSystemOptions repository(Repository repository) {
+        this.repository = repository;
+        return this;
+    }
+
+    GitFileSystemOptions streamingThreshold(long streamingThreshold) {
+        this.streamingThreshold = streamingThreshold;
+        return this;
+    }
+
+    /**
+     * Apply gitattributes filters to every read, see GitOpenOption.FILTERED.
+     */
+    GitFileSystemOptions filtered(boolean filtered) {
+        this.filtered = filtered;
+        return this;
+    }
+
+    GitFileSystemOptions submodules(boolean submodules) {
+        this.submodules = submodules;
+        return this;
+    }
+
+    GitFileSystemOptions pathIndexMode(PathIndex.Mode pathIndexMode) {
+        this.pathIndexMode = pathIndexMode;
+        return this;
+    }
+
+    GitFileSystemOptions pathIndexMaxBytes(long pathIndexMaxBytes) {
+        this.pathIndexMaxBytes = pathIndexMaxBytes;
+        return this;
+    }
+
+    GitFileSystemOptions treeCacheMaxWeight(long treeCacheMaxWeight) {
+        this.treeCacheMaxWeight = treeCacheMaxWeight;
+        return this;
+    }
+
+    GitFileSystemOptions repositoryPoolSize(int repositoryPoolSize) {
+        this.repositoryPoolSize = repositoryPoolSize;
+        return this;
+    }
+
+    /**
+     * @param odbBackend added to every repository handle opened for the
+     *     filesystem, null for none
+     */
+    GitFileSystemOptions odbBackend(OdbBackend odbBackend) {
+        this.odbBackend = odbBackend;
+        return this;
+    }
+
+    /**
+     * Defaults to just above the packed object backend, so that the
+     * odbBackend is asked first.
+     */
+    GitFileSystemOptions odbBackendPriority(int odbBackendPriority) {
+        this.odbBackendPriority = odbBackendPriority;
+        return this;
+    }
+
+    boolean isBare() {
+        return bare;
+    }
+
+    Repository getRepository() {
+        return repository;
+    }
+
+    long getStreamingThreshold() {
+        return streamingThreshold;
+    }
+
+    boolean isFiltered() {
+        return filtered;
+    }
+
+    boolean isSubmodules() {
+        return submodules;
+    }
+
+    PathIndex.Mode getPathIndexMode() {
+        return pathIndexMode;
+    }
+
+    long getPathIndexMaxBytes() {
+        return pathIndexMaxBytes;
+    }
+
+    long getTreeCacheMaxWeight() {
+        return treeCacheMaxWeight;
+    }
+
+    int getRepositoryPoolSize() {
+        return repositoryPoolSize;
+    }
+
+    /**
+     * What setUp does to a handle, so that filesystems set up differently
+     * don't share one, see RepositoryRegistry.acquire.
+     *
+     * @return null if setUp does nothing
+     */
+    Object getRepositorySettings() {
+        return odbBackend == null ? null : List.of(odbBackend, odbBackendPriority);
+    }
+
+    /**
+     * Run on each repository handle opened for the filesystem.
+     */
+    void setUp(Repository repo) {
+        if (odbBackend != null) {
+            repo.getOdb().addBackend(odbBackend, odbBackendPriority);
+        }
+    }
+}
@@ -50,6 +50,7 @@ import java.nio.file.attribute.FileTime;
 import java.nio.file.spi.FileSystemProvider;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -59,13 +60,21 @@ import java.util.function.Function;
 import net.hunterstrategy.jnfsgit.ex.FileSystemIsReadOnlyException;
 import net.hunterstrategy.jnfsgit.ex.WrongFileTypeException;
 import net.hunterstrategy.libgit2.Blob;
+import net.hunterstrategy.libgit2.GitObject;
+import net.hunterstrategy.libgit2.Libgit2Options;
+import net.hunterstrategy.libgit2.OdbBackend;
+import net.hunterstrategy.libgit2.Repository;
+import net.hunterstrategy.libgit2.RepositoryRegistry;
 import net.hunterstrategy.libgit2.Tree;
 import net.hunterstrategy.libgit2.TreeItem;
 import net.hunterstrategy.libgit2.util.ByteBufferSeekableByteChannel;
+import net.hunterstrategy.libgit2.util.ReleasingSeekableByteChannel;
 
 public class GitFileSystemProvider extends FileSystemProvider {
     private static final Function<ByteBuffer, SeekableByteChannel> IOWRAPPER = initWrapper();
     private static final ConcurrentMap<String, GitFileSystem> repositories = new ConcurrentHashMap<>();
+    // repository handles shared between filesystems: revisions and submodules
+    private static final RepositoryRegistry registry = new RepositoryRegistry();
 
     private static Function<ByteBuffer, SeekableByteChannel> initWrapper() {
         String ioWrapper = System.getenv("JNFSGIT_IO_WRAPPER");
@@ -151,15 +160,31 @@ public class GitFileSystemProvider extends FileSystemProvider {
 
         String key = fsgu.toRepoURI().toString();
         return repositories.compute(key, (repoString, fs) -> {
-            boolean bare = isBare(guri, env);
-
+            GitFileSystemOptions options = parseOptions(guri, env);
             if (fs != null && fs.isOpen()) {
                 throw new FileSystemAlreadyExistsException(fsgu.toString());
             }
-            return new GitFileSystem(this, fsgu, bare);
+            // process-wide, so only once this filesystem is known to be new
+            applyLibgit2Options(env);
+            return new GitFileSystem(this, fsgu, options);
         });
     }
 
+    private GitFileSystemOptions parseOptions(GitURI guri, Map<String, ?> env) {
+        GitFileSystemOptions options = new GitFileSystemOptions().bare(isBare(guri, env));
+        getEnv(env, "repository", Repository.class).ifPresent(options::repository);
+        getEnv(env, "streamingThreshold", Number.class).ifPresent(n -> options.streamingThreshold(n.longValue()));
+        getEnv(env, "filtered", Boolean.class).ifPresent(options::filtered);
+        getEnv(env, "submodules", Boolean.class).ifPresent(options::submodules);
+        getEnv(env, "pathIndex", String.class).map(PathIndex.Mode::parse).ifPresent(options::pathIndexMode);
+        getEnv(env, "pathIndexMaxBytes", Number.class).ifPresent(n -> options.pathIndexMaxBytes(n.longValue()));
+        getEnv(env, "treeCacheMaxWeight", Number.class).ifPresent(n -> options.treeCacheMaxWeight(n.longValue()));
+        getEnv(env, "repositoryPoolSize", Number.class).ifPresent(n -> options.repositoryPoolSize(n.intValue()));
+        getEnv(env, "odbBackend", OdbBackend.class).ifPresent(options::odbBackend);
+        getEnv(env, "odbBackendPriority", Number.class).ifPresent(n -> options.odbBackendPriority(n.intValue()));
+        return options;
+    }
+
     private boolean isBare(GitURI guri, Map<String, ?> env) {
         // check if bare is explicitly set in configuration
         Optional<Boolean> bare = getEnv(env, "bare", Boolean.class);
@@ -173,6 +198,32 @@ public class GitFileSystemProvider extends FileSystemProvider {
                 || guri.getRepositoryDir().endsWith(".git/");
     }
 
+    /**
+     * libgit2 tuning options. These are process-wide in libgit2, so they apply
+     * to every open filesystem, and the last filesystem to set one wins.
+     *
+     * - cacheMaxSize: object cache size in bytes
+     * - cacheObjectLimit.{commit,tree,blob,tag}: largest object of that type to cache
+     * - caching: enable/disable the object cache
+     * - strictHashVerification: verify object hashes on read
+     * - mwindowSize, mwindowMappedLimit: pack mmap window size and total mapped bytes
+     * - mwindowFileLimit: pack files held open at once
+     */
+    private void applyLibgit2Options(Map<String, ?> env) {
+        getEnv(env, "cacheMaxSize", Number.class).ifPresent(n -> Libgit2Options.setCacheMaxSize(n.longValue()));
+        for (GitObject.Type type :
+                EnumSet.of(GitObject.Type.COMMIT, GitObject.Type.TREE, GitObject.Type.BLOB, GitObject.Type.TAG)) {
+            String key = "cacheObjectLimit." + type.name().toLowerCase(Locale.ROOT);
+            getEnv(env, key, Number.class).ifPresent(n -> Libgit2Options.setCacheObjectLimit(type, n.longValue()));
+        }
+        getEnv(env, "caching", Boolean.class).ifPresent(Libgit2Options::setCaching);
+        getEnv(env, "strictHashVerification", Boolean.class).ifPresent(Libgit2Options::setStrictHashVerification);
+        getEnv(env, "mwindowSize", Number.class).ifPresent(n -> Libgit2Options.setMwindowSize(n.longValue()));
+        getEnv(env, "mwindowMappedLimit", Number.class)
+                .ifPresent(n -> Libgit2Options.setMwindowMappedLimit(n.longValue()));
+        getEnv(env, "mwindowFileLimit", Number.class).ifPresent(n -> Libgit2Options.setMwindowFileLimit(n.longValue()));
+    }
+
     /*
      * Annoying ? capture-of type erasure interferes with Map
      * getOrDefault method.
@@ -199,6 +250,10 @@ public class GitFileSystemProvider extends FileSystemProvider {
         return fs;
     }
 
+    RepositoryRegistry getRepositoryRegistry() {
+        return registry;
+    }
+
     @Override
     public Path getPath(URI uri) {
         return getFileSystem(uri).createPath(uri);
@@ -209,23 +264,58 @@ public class GitFileSystemProvider extends FileSystemProvider {
             throws IOException {
         checkProvider(path);
 
-        if (!options.isEmpty() && !options.equals(EnumSet.of(StandardOpenOption.READ))) {
-            throw new FileSystemIsReadOnlyException();
+        for (OpenOption option : options) {
+            if (option != StandardOpenOption.READ
+                    && option != GitOpenOption.FILTERED
+                    && option != LinkOption.NOFOLLOW_LINKS) {
+                throw new FileSystemIsReadOnlyException();
+            }
         }
         GitPath gpath = GitPath.class.cast(path);
         if (gpath.isRoot()) {
             throw new WrongFileTypeException(WrongFileTypeException.Type.DIR_EXPECTED_FILE, gpath.toString());
         }
 
-        GitFileSystem gfs = getFileSystem(gpath.toUri());
-        Tree.Entry entry = gfs.withTree(t -> t.getByNameRecursive(gpath.toString()));
-        if (entry == null) {
+        GitFileSystem gfs = gpath.getFileSystem();
+        if (!gfs.isOpen()) {
+            throw new FileSystemNotFoundException(gpath.toString());
+        }
+        // with NOFOLLOW_LINKS, a link's content is the target path stored in it,
+        // as with readSymbolicLink, and a dangling link can still be read
+        boolean follow = !options.contains(LinkOption.NOFOLLOW_LINKS);
+        TreeItem item = gfs.lookupPath(gpath.toString(), follow);
+        if (item == null) {
             throw new FileNotFoundException(gpath.toString());
         }
-        if (entry.isTree()) {
+        if (item.isTree()) {
             throw new WrongFileTypeException(WrongFileTypeException.Type.DIR_EXPECTED_FILE, gpath.toString());
         }
-        return IOWRAPPER.apply(entry.viewAs(Blob.class).get().getRawContent());
+        Tree.Entry entry = item.viewAs(Tree.Entry.class).get();
+
+        if (options.contains(GitOpenOption.FILTERED) || gfs.isFiltered()) {
+            if (entry.getFileMode() != Tree.FileMode.LINK) {
+                // attributes apply to where the content is; large blobs are
+                // filtered to a temporary file, see GitFileSystem.newFilteredChannel
+                String asPath = follow ? gfs.realPath(gpath.toString(), true) : gpath.toString();
+                return gfs.newFilteredChannel(entry, asPath);
+            }
+        }
+
+        // large blobs are streamed rather than inflated whole into native memory
+        long size = entry.getSize();
+        if (size >= gfs.getStreamingThreshold() || size > Integer.MAX_VALUE) {
+            return gfs.newReadChannel(entry);
+        }
+
+        // the blob is shared with other open channels on this entry, and
+        // freed when the last of them closes
+        Blob blob = gfs.openBlob(entry).orElseThrow(() -> new FileNotFoundException(gpath.toString()));
+        try {
+            return new ReleasingSeekableByteChannel(IOWRAPPER.apply(blob.getRawContent()), blob::release);
+        } catch (RuntimeException e) {
+            blob.release();
+            throw e;
+        }
     }
 
     @Override
@@ -233,8 +323,7 @@ public class GitFileSystemProvider extends FileSystemProvider {
         checkProvider(dir);
 
         GitPath path = GitPath.class.cast(dir);
-        TreeItem pathRoot = path.getFileSystem()
-                .withTree(tree -> path.isRoot() ? (TreeItem) tree : tree.getByNameRecursive(path.toString()));
+        TreeItem pathRoot = path.getFileSystem().lookupPath(path.isRoot() ? "/" : path.toString(), true);
         if (pathRoot == null) {
             throw new FileNotFoundException(dir.toString());
         }
@@ -272,7 +361,13 @@ public class GitFileSystemProvider extends FileSystemProvider {
     public boolean isSameFile(Path path, Path path2) throws IOException {
         checkProvider(path, path2);
         if (path instanceof GitPath && path2 instanceof GitPath) {
-            return path.toUri().equals(path2.toUri());
+            if (path.toUri().equals(path2.toUri())) {
+                return true;
+            }
+            GitPath gpath = GitPath.class.cast(path);
+            GitPath gpath2 = GitPath.class.cast(path2);
+            return gpath.getFileSystem().equals(gpath2.getFileSystem())
+                    && gpath.toRealPath().equals(gpath2.toRealPath());
         }
         return false;
     }
@@ -308,8 +403,7 @@ public class GitFileSystemProvider extends FileSystemProvider {
                 case READ: // allow read
                     break;
                 case EXECUTE:
-                    if (!readAttributes(path, GitBasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS)
-                            .isExecutable()) {
+                    if (!readAttributes(path, GitBasicFileAttributes.class).isExecutable()) {
                         throw new AccessDeniedException(path.toString());
                     }
                     break;
@@ -352,23 +446,36 @@ public class GitFileSystemProvider extends FileSystemProvider {
     public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type, LinkOption... options)
             throws IOException {
         checkProvider(path);
-        if (!(options != null && Arrays.asList(options).contains(LinkOption.NOFOLLOW_LINKS))) {
-            throw new UnsupportedOperationException("Cannot follow symlinks.");
-        }
+        boolean follow = options == null || !Arrays.asList(options).contains(LinkOption.NOFOLLOW_LINKS);
 
         if (!(BasicFileAttributes.class.equals(type) || GitBasicFileAttributes.class.equals(type))) {
             throw new IllegalArgumentException("Unsupported attribute type: " + type);
         }
         GitPath gpath = GitPath.class.cast(path);
         GitFileSystem fs = gpath.getFileSystem();
-        TreeItem item =
-                gpath.isRoot() ? fs.lookupPath("/") : fs.withTree(tree -> tree.getByNameRecursive(gpath.toString()));
+        String name = gpath.isRoot() ? "/" : gpath.toString();
+        TreeItem item = fs.lookupPath(name);
+        if (item == null || (follow && item.getFileMode() == Tree.FileMode.LINK)) {
+            // through links, so attributes are keyed by the real path
+            String real = fs.realPath(name, follow);
+            item = real == null ? null : fs.lookupPath(real);
+            if (item != null) {
+                gpath = GitPath.class.cast(fs.getPath(real));
+            }
+        }
         if (item == null) {
             throw new FileNotFoundException(path.toUri().toString());
         }
         return (A) new GitBasicFileAttributesImpl(gpath, item);
     }
 
+    @Override
+    public Path readSymbolicLink(Path link) throws IOException {
+        checkProvider(link);
+        GitPath gpath = GitPath.class.cast(link);
+        return gpath.getFileSystem().getPath(gpath.getFileSystem().readLink(gpath.toString()));
+    }
+
     @Override
     public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options) throws IOException {
         throw new UnsupportedOperationException("Use readAttributes(Path, Class, LinkOption...) variant");
@@ -471,12 +578,12 @@ class GitBasicFileAttributesImpl implements GitBasicFileAttributes {
             return 0;
         }
 
-        Optional<Blob> blob = this.item.viewAs(Blob.class);
-        return blob.isPresent() ? blob.get().size() : 0;
+        // header read, so listing large files doesn't inflate them
+        return this.item.viewAs(Tree.Entry.class).map(Tree.Entry::getSize).orElse(0L);
     }
 
     @Override
     public Object fileKey() {
-        return path.getGitURI().toFullURI();
+        return path.toUri();
     }
 }
@@ -0,0 +1,36 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.jnfsgit;
+
+
+import java.nio.file.OpenOption;
+
+/**
+ * Read options specific to git filesystems, passed alongside READ.
+ */
+public enum GitOpenOption implements OpenOption {
+    /**
+     * Read file content as a checkout would write it, with the revision's
+     * gitattributes filters applied, rather than the raw blob.
+     */
+    FILTERED
+}
@@ -22,7 +22,7 @@
 package net.hunterstrategy.jnfsgit;
 
 
-import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.file.LinkOption;
@@ -32,15 +32,90 @@ import java.nio.file.WatchEvent.Kind;
 import java.nio.file.WatchEvent.Modifier;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
-import java.util.Objects;
+import java.util.Arrays;
 
+/**
+ * A path in a GitFileSystem, kept as its array of names. Names are
+ * interned, so paths built by walking a tree share their strings, and the
+ * string form, hash and URI are only built when first asked for. Path
+ * operations work on the array and never go through java.io.File or a URI.
+ */
 public class GitPath implements Path {
-    private GitFileSystem fs;
-    private GitURI guri;
+    private static final String[] NO_NAMES = new String[0];
+    // the empty path, which has one empty name
+    private static final String[] EMPTY = {""};
+
+    private final GitFileSystem fs;
+    // repository and revision for toUri, its own path isn't used
+    private final GitURI base;
+    private final boolean absolute;
+    private final String[] names;
+
+    private String string;
+    private int hash;
+    private URI uri;
 
     GitPath(GitFileSystem fs, GitURI uri) {
+        this(fs, uri, uri.getSubtreePath().startsWith("/"), parse(uri.getSubtreePath()));
+    }
+
+    private GitPath(GitFileSystem fs, GitURI base, boolean absolute, String[] names) {
         this.fs = fs;
-        this.guri = uri;
+        this.base = base;
+        this.absolute = absolute;
+        this.names = names;
+    }
+
+    /**
+     * @param base repository and revision of the path
+     */
+    static GitPath of(GitFileSystem fs, GitURI base, String path) {
+        return new GitPath(fs, base, path.startsWith("/"), parse(path));
+    }
+
+    private static String[] parse(String path) {
+        int count = 0;
+        int length = path.length();
+        for (int i = 0; i < length; i++) {
+            if (path.charAt(i) != '/' && (i == 0 || path.charAt(i - 1) == '/')) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            return path.startsWith("/") ? NO_NAMES : EMPTY;
+        }
+
+        String[] names = new String[count];
+        int n = 0;
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean separator = i == length || path.charAt(i) == '/';
+            if (separator && start >= 0) {
+                names[n++] = path.substring(start, i).intern();
+                start = -1;
+            } else if (!separator && start < 0) {
+                start = i;
+            }
+        }
+        return names;
+    }
+
+    private GitPath derive(boolean absolute, String[] names) {
+        if (names.length == 0 && !absolute) {
+            names = EMPTY;
+        }
+        return new GitPath(this.fs, this.base, absolute, names);
+    }
+
+    private boolean isEmpty() {
+        return names == EMPTY || (names.length == 1 && names[0].isEmpty());
+    }
+
+    private GitPath toGitPath(Path other) {
+        if (other instanceof GitPath) {
+            return GitPath.class.cast(other);
+        }
+        return of(this.fs, this.base, other.toString());
     }
 
     @Override
@@ -50,25 +125,35 @@ public class GitPath implements Path {
 
     @Override
     public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
         if (obj instanceof GitPath) {
             GitPath other = GitPath.class.cast(obj);
-            return this.guri.getSubtreePath().equals(other.guri.getSubtreePath()) && this.fs.equals(other.fs);
+            return this.absolute == other.absolute
+                    && Arrays.equals(this.names, other.names)
+                    && this.fs.equals(other.fs);
         }
         return false;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(GitPath.class, this.guri.getSubtreePath(), this.fs);
+        int h = this.hash;
+        if (h == 0) {
+            h = 31 * toString().hashCode() + this.fs.hashCode();
+            this.hash = h;
+        }
+        return h;
     }
 
     @Override
     public boolean isAbsolute() {
-        return new File(this.guri.getSubtreePath()).isAbsolute();
+        return this.absolute;
     }
 
     public boolean isRoot() {
-        return guri.isRoot();
+        return this.absolute && this.names.length == 0;
     }
 
     @Override
@@ -76,59 +161,112 @@ public class GitPath implements Path {
         if (!isAbsolute()) {
             return null;
         }
-        GitURI rootGuri = new GitURI(this.guri.toRepoPathURI("/"));
-        return new GitPath(this.fs, rootGuri);
+        return isRoot() ? this : derive(true, NO_NAMES);
     }
 
     @Override
     public GitPath getFileName() {
-        String name = new File(this.guri.getSubtreePath()).getName();
-        return new GitPath(this.fs, new GitURI(this.guri.toRepoPathURI(name)));
+        if (names.length == 0) {
+            return derive(false, EMPTY);
+        }
+        if (!absolute && names.length == 1) {
+            return this;
+        }
+        return derive(false, new String[] {names[names.length - 1]});
     }
 
     @Override
     public GitPath getParent() {
-        String parent = new File(this.guri.getSubtreePath()).getParent();
-        return parent == null ? null : new GitPath(this.fs, new GitURI(this.guri.toRepoPathURI(parent)));
+        if (names.length == 0 || (!absolute && names.length == 1)) {
+            return null;
+        }
+        return derive(absolute, Arrays.copyOf(names, names.length - 1));
     }
 
     @Override
     public int getNameCount() {
-        return new File(this.guri.getSubtreePath()).toPath().getNameCount();
+        return names.length;
     }
 
     @Override
     public GitPath getName(int index) {
-        Path newPath = new File(this.guri.getSubtreePath()).toPath().getName(index);
-        return new GitPath(this.fs, new GitURI(this.guri.toRepoPathURI(newPath.toString())));
+        if (index < 0 || index >= names.length) {
+            throw new IllegalArgumentException("Invalid index: " + index);
+        }
+        return derive(false, new String[] {names[index]});
     }
 
     @Override
     public GitPath subpath(int beginIndex, int endIndex) {
-        Path newPath = new File(this.guri.getSubtreePath()).toPath().subpath(beginIndex, endIndex);
-        return new GitPath(this.fs, new GitURI(this.guri.toRepoPathURI(newPath.toString())));
+        if (beginIndex < 0 || beginIndex >= names.length || endIndex > names.length || beginIndex >= endIndex) {
+            throw new IllegalArgumentException("Invalid range: " + beginIndex + ", " + endIndex);
+        }
+        return derive(false, Arrays.copyOfRange(names, beginIndex, endIndex));
     }
 
     @Override
     public boolean startsWith(Path other) {
-        if (other instanceof GitPath) {
-            return guri.getSubtreePath().startsWith(((GitPath) other).guri.getSubtreePath());
+        GitPath gother = toGitPath(other);
+        if (gother.absolute != this.absolute || gother.names.length > this.names.length) {
+            return false;
+        }
+        for (int i = 0; i < gother.names.length; i++) {
+            if (!this.names[i].equals(gother.names[i])) {
+                return false;
+            }
         }
-        return guri.getSubtreePath().startsWith(other.toString());
+        return true;
     }
 
     @Override
     public boolean endsWith(Path other) {
-        if (other instanceof GitPath) {
-            return guri.getSubtreePath().endsWith(((GitPath) other).guri.getSubtreePath());
+        GitPath gother = toGitPath(other);
+        if (gother.absolute && !this.absolute) {
+            return false;
+        }
+        int offset = this.names.length - gother.names.length;
+        if (offset < 0 || (gother.absolute && offset != 0)) {
+            return false;
         }
-        return guri.getSubtreePath().endsWith(other.toString());
+        for (int i = 0; i < gother.names.length; i++) {
+            if (!this.names[offset + i].equals(gother.names[i])) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
     public GitPath normalize() {
-        Path normalized = new File(guri.getSubtreePath()).toPath().normalize();
-        return new GitPath(this.fs, new GitURI(this.guri.toRepoPathURI(normalized.toString())));
+        boolean clean = true;
+        for (String name : names) {
+            if (".".equals(name) || "..".equals(name)) {
+                clean = false;
+                break;
+            }
+        }
+        if (clean) {
+            return this;
+        }
+
+        String[] result = new String[names.length];
+        int size = 0;
+        for (String name : names) {
+            if (".".equals(name)) {
+                continue;
+            }
+            if ("..".equals(name)) {
+                if (size > 0 && !"..".equals(result[size - 1])) {
+                    size--;
+                    continue;
+                }
+                if (absolute) {
+                    continue; // "/.." is "/"
+                }
+            }
+            result[size++] = name;
+        }
+        return derive(absolute, Arrays.copyOf(result, size));
     }
 
     @Override
@@ -143,11 +281,35 @@ public class GitPath implements Path {
         if (other.isAbsolute()) {
             return gother;
         }
-        if (other.toString().isBlank()) {
+        if (gother.isEmpty()) {
             return this;
         }
-        File f = new File(toString(), other.toString());
-        return new GitPath(this.fs, new GitURI(this.guri.toRepoPathURI(f.getPath())));
+        if (isEmpty()) {
+            return gother;
+        }
+        String[] joined = Arrays.copyOf(this.names, this.names.length + gother.names.length);
+        System.arraycopy(gother.names, 0, joined, this.names.length, gother.names.length);
+        return derive(this.absolute, joined);
+    }
+
+    @Override
+    public GitPath resolve(String other) {
+        return resolve(of(this.fs, this.base, other));
+    }
+
+    /**
+     * Resolve a single name, such as a tree entry's, without parsing it.
+     */
+    GitPath resolveName(String name) {
+        if (name.isEmpty() || name.indexOf('/') >= 0) {
+            return resolve(name);
+        }
+        if (isEmpty()) {
+            return derive(false, new String[] {name.intern()});
+        }
+        String[] joined = Arrays.copyOf(this.names, this.names.length + 1);
+        joined[this.names.length] = name.intern();
+        return derive(this.absolute, joined);
     }
 
     @Override
@@ -158,19 +320,40 @@ public class GitPath implements Path {
         if (!(other instanceof GitPath)) {
             throw new ProviderMismatchException();
         }
-        Path thisPath = new File(this.guri.getSubtreePath()).toPath();
-        Path otherPath = new File(other.toString()).toPath();
-        Path relativized = thisPath.relativize(otherPath);
-        return new GitPath(this.fs, new GitURI(this.guri.toRepoPathURI(relativized.toString())));
+        GitPath gother = GitPath.class.cast(other);
+        if (this.absolute != gother.absolute) {
+            throw new IllegalArgumentException("'other' is different type of Path");
+        }
+        String[] from = isEmpty() ? NO_NAMES : this.names;
+        String[] to = gother.isEmpty() ? NO_NAMES : gother.names;
+
+        int common = 0;
+        while (common < from.length && common < to.length && from[common].equals(to[common])) {
+            common++;
+        }
+        String[] result = new String[from.length - common + to.length - common];
+        int size = 0;
+        for (int i = common; i < from.length; i++) {
+            result[size++] = "..";
+        }
+        for (int i = common; i < to.length; i++) {
+            result[size++] = to[i];
+        }
+        return derive(false, result);
     }
 
     @Override
     public URI toUri() {
-        return this.guri.toFullURI();
+        URI u = this.uri;
+        if (u == null) {
+            u = GitURI.toURI(base.getRepositoryDir(), base.getRevisionSpec(), toString());
+            this.uri = u;
+        }
+        return u;
     }
 
     GitURI getGitURI() {
-        return this.guri;
+        return new GitURI(toUri());
     }
 
     @Override
@@ -178,14 +361,23 @@ public class GitPath implements Path {
         if (isAbsolute()) {
             return this;
         }
-
-        return new GitPath(this.fs, new GitURI(this.guri.toRepoPathURI("/" + this.toString())));
+        return derive(true, isEmpty() ? NO_NAMES : this.names);
     }
 
+    /**
+     * @return absolute path with symbolic links, "." and ".." resolved
+     *     within this revision
+     * @throws FileNotFoundException if the path or a link on the way doesn't resolve
+     * @throws java.nio.file.FileSystemLoopException for link cycles
+     */
     @Override
-    public Path toRealPath(LinkOption... options) throws IOException {
-        // potentially could be implemented be resolving to git object file TODO
-        throw new UnsupportedOperationException();
+    public GitPath toRealPath(LinkOption... options) throws IOException {
+        boolean follow = !Arrays.asList(options).contains(LinkOption.NOFOLLOW_LINKS);
+        String real = fs.realPath(toString(), follow);
+        if (real == null || fs.lookupPath(real) == null) {
+            throw new FileNotFoundException(toString());
+        }
+        return of(this.fs, this.base, real);
     }
 
     @Override
@@ -198,11 +390,17 @@ public class GitPath implements Path {
         if (!(other instanceof GitPath)) {
             throw new IllegalArgumentException("Cannot be used to compare paths across providers.");
         }
-        return this.guri.getSubtreePath().compareTo(other.toString());
+        return toString().compareTo(other.toString());
     }
 
     @Override
     public String toString() {
-        return this.guri.getSubtreePath();
+        String s = this.string;
+        if (s == null) {
+            String joined = String.join("/", names);
+            s = absolute ? "/" + joined : joined;
+            this.string = s;
+        }
+        return s;
     }
 }
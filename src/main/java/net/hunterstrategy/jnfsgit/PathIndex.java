@@ -0,0 +1,172 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.jnfsgit;
+
+
+import java.util.Locale;
+import java.util.Optional;
+import net.hunterstrategy.libgit2.Tree;
+import net.hunterstrategy.libgit2.TreeListing;
+
+/**
+ * Every path of a revision, for lookups in one hash probe instead of a
+ * tree walk per component. A revision never changes, so the index is built
+ * once, from a single native tree walk, and never invalidated.
+ *
+ * Paths are kept in one char table, addressed by offset, and hashed into an
+ * open addressing table of entry numbers, so the index holds no String per
+ * path. Paths missing from the index don't exist, and are answered without
+ * going to libgit2. Paths that do exist are resolved through the tree, so
+ * the entries and subtrees they load stay within the TreeCache's bound
+ * rather than being held by the index.
+ */
+final class PathIndex {
+    enum Mode {
+        /** look paths up tree by tree */
+        OFF,
+        /** build on the first lookup */
+        LAZY,
+        /** build when the filesystem opens */
+        EAGER;
+
+        static Mode parse(String mode) {
+            return valueOf(mode.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Default memory cap, see estimateBytes.
+     */
+    static final long DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+
+    private final Tree root;
+    private final char[] names;
+    // path i is names[offsets[i], offsets[i + 1])
+    private final int[] offsets;
+    // entry number + 1, 0 for an empty slot
+    private final int[] slots;
+
+    private PathIndex(Tree root, char[] names, int[] offsets, int[] slots) {
+        this.root = root;
+        this.names = names;
+        this.offsets = offsets;
+        this.slots = slots;
+    }
+
+    /**
+     * @return the index, or null if it would take more than maxBytes; the
+     *     walk stops as soon as that is known
+     */
+    static PathIndex build(Tree root, long maxBytes) {
+        Optional<TreeListing> walked = root.walk(
+                TreeListing.Order.PRE,
+                (size, chars) -> chars <= Integer.MAX_VALUE && estimateBytes(size, chars, capacity(size)) <= maxBytes);
+        if (walked.isEmpty()) {
+            return null;
+        }
+        TreeListing listing = walked.get();
+        int size = listing.size();
+        int capacity = capacity(size);
+        long chars = 0;
+        for (int i = 0; i < size; i++) {
+            chars += listing.getPath(i).length();
+        }
+
+        char[] names = new char[(int) chars];
+        int[] offsets = new int[size + 1];
+        int[] slots = new int[capacity];
+        int mask = capacity - 1;
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            String path = listing.getPath(i);
+            path.getChars(0, path.length(), names, offset);
+            offsets[i] = offset;
+            offset += path.length();
+
+            int slot = hash(path, 0, path.length()) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+        }
+        offsets[size] = offset;
+        return new PathIndex(root, names, offsets, slots);
+    }
+
+    // a power of two, at most half full
+    private static int capacity(int size) {
+        return Integer.highestOneBit(Math.max(2, size * 2 - 1)) << 1;
+    }
+
+    /**
+     * Names, offsets and slots. Entries aren't held by the index.
+     */
+    static long estimateBytes(int size, long chars, int capacity) {
+        return chars * Character.BYTES + (size + 1L) * Integer.BYTES + (long) capacity * Integer.BYTES;
+    }
+
+    long estimateBytes() {
+        return estimateBytes(size(), names.length, slots.length);
+    }
+
+    int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * @param path with or without a leading "/", not the root
+     * @return the entry, null if there is none
+     */
+    Tree.Entry lookup(String path) {
+        int start = path.startsWith("/") ? 1 : 0;
+        int end = path.length();
+        int mask = slots.length - 1;
+        for (int slot = hash(path, start, end) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int index = slots[slot] - 1;
+            if (matches(index, path, start, end)) {
+                return root.getByNameRecursive(path);
+            }
+        }
+        return null;
+    }
+
+    private boolean matches(int index, String path, int start, int end) {
+        int from = offsets[index];
+        if (offsets[index + 1] - from != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (names[from++] != path.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(String path, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + path.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+}
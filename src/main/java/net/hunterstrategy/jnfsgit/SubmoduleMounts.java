@@ -0,0 +1,213 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.jnfsgit;
+
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import net.hunterstrategy.libgit2.GitCallException;
+import net.hunterstrategy.libgit2.Oid;
+import net.hunterstrategy.libgit2.Repository;
+import net.hunterstrategy.libgit2.RepositoryRegistry;
+import net.hunterstrategy.libgit2.Tree;
+import net.hunterstrategy.libgit2.TreeItem;
+
+/**
+ * Submodules mounted as directories of a GitFileSystem, each showing the
+ * tree of the commit its gitlink entry records.
+ *
+ * A submodule's repository is looked for where git keeps it: checked out
+ * under the parent's working tree, then in the parent's modules directory
+ * (which is also where bare parents keep them). Repositories are opened on
+ * first lookup through a RepositoryRegistry, so filesystems of the same
+ * monorepo share one handle per submodule. A gitlink whose repository or
+ * commit can't be found stays a plain gitlink entry.
+ */
+final class SubmoduleMounts implements AutoCloseable {
+    static final class Mount {
+        // path of the mount in the filesystem, without a leading "/"
+        private final String path;
+        // held through the registry
+        private final Repository shared;
+        // this mount's objects, see Repository.newView
+        private final Repository repo;
+        private final Oid commit;
+        private final Tree tree;
+
+        private Mount(String path, Repository shared, Repository repo, Oid commit, Tree tree) {
+            this.path = path;
+            this.shared = shared;
+            this.repo = repo;
+            this.commit = commit;
+            this.tree = tree;
+        }
+
+        Repository getRepository() {
+            return repo;
+        }
+
+        Oid getCommit() {
+            return commit;
+        }
+
+        /**
+         * @return fsPath relative to this mount's root
+         */
+        String relativize(String fsPath) {
+            String stripped = fsPath.startsWith("/") ? fsPath.substring(1) : fsPath;
+            return stripped.substring(path.length() + 1);
+        }
+    }
+
+    private final RepositoryRegistry registry;
+    private final Map<String, Optional<Mount>> mounts = new ConcurrentHashMap<>();
+
+    SubmoduleMounts(RepositoryRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Resolve a path, entering submodules along the way. A path naming a
+     * mounted submodule resolves to the root tree of its commit.
+     *
+     * @return the entry or tree, null if there is none
+     */
+    TreeItem lookup(Tree root, Repository rootRepo, String path) {
+        String stripped = path.startsWith("/") ? path.substring(1) : path;
+        String[] components = stripped.split("/");
+        Tree tree = root;
+        Repository repo = rootRepo;
+        // where the current repository's root is in the filesystem path
+        int repoRoot = 0;
+        int end = 0;
+        for (int i = 0; i < components.length; i++) {
+            end += components[i].length() + (i == 0 ? 0 : 1);
+            boolean last = i == components.length - 1;
+            Tree.Entry entry = tree.getByName(components[i]);
+            if (entry == null) {
+                return null;
+            }
+
+            switch (entry.getFileMode()) {
+                case TREE:
+                    if (last) {
+                        return entry;
+                    }
+                    tree = entry.toTree().get();
+                    break;
+                case COMMIT:
+                    String mountPath = stripped.substring(0, end);
+                    Optional<Mount> mount = mount(mountPath, repo, mountPath.substring(repoRoot), entry);
+                    if (mount.isEmpty()) {
+                        return last ? entry : null;
+                    }
+                    if (last) {
+                        return mount.get().tree;
+                    }
+                    tree = mount.get().tree;
+                    repo = mount.get().repo;
+                    repoRoot = end + 1;
+                    break;
+                default:
+                    return last ? entry : null;
+            }
+        }
+        return null;
+    }
+
+    private Optional<Mount> mount(String mountPath, Repository parent, String pathInParent, Tree.Entry gitlink) {
+        return mounts.computeIfAbsent(mountPath, p -> {
+            Repository shared = open(parent, pathInParent);
+            if (shared == null) {
+                return Optional.empty();
+            }
+            Repository repo = shared.newView();
+            Oid commit = gitlink.getOid();
+            try {
+                return Optional.of(new Mount(p, shared, repo, commit, repo.lookupCommit(commit).getTree()));
+            } catch (GitCallException e) {
+                // the recorded commit was never fetched into the submodule
+                release(shared, repo);
+                return Optional.empty();
+            }
+        });
+    }
+
+    private Repository open(Repository parent, String pathInParent) {
+        List<String> candidates = new ArrayList<>();
+        String workdir = parent.getWorkdir();
+        if (workdir != null) {
+            candidates.add(new File(workdir, pathInParent).getPath());
+        }
+        candidates.add(new File(new File(parent.getPath(), "modules"), pathInParent).getPath());
+        for (String candidate : candidates) {
+            if (!new File(candidate).exists()) {
+                continue;
+            }
+            try {
+                return registry.acquire(candidate, false);
+            } catch (GitCallException e) {
+                // e.g. an empty directory for a submodule that isn't checked out
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the innermost mount holding fsPath, if any
+     */
+    Optional<Mount> mountFor(String fsPath) {
+        String stripped = fsPath.startsWith("/") ? fsPath.substring(1) : fsPath;
+        Mount best = null;
+        for (Optional<Mount> candidate : mounts.values()) {
+            if (candidate.isEmpty()) {
+                continue;
+            }
+            Mount mount = candidate.get();
+            if (stripped.startsWith(mount.path + "/") && (best == null || mount.path.length() > best.path.length())) {
+                best = mount;
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+
+    private void release(Repository shared, Repository view) {
+        try {
+            view.close();
+            registry.release(shared);
+        } catch (Exception e) {
+            // swallow, same as closing with the filesystem
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Optional<Mount> mount : mounts.values()) {
+            mount.ifPresent(m -> release(m.shared, m.repo));
+        }
+        mounts.clear();
+    }
+}
@@ -0,0 +1,152 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.jnfsgit;
+
+
+import java.io.FileNotFoundException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemLoopException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import net.hunterstrategy.libgit2.Blob;
+import net.hunterstrategy.libgit2.Tree;
+import net.hunterstrategy.libgit2.TreeItem;
+
+/**
+ * Resolves symbolic links within one GitFileSystem's revision, by reading
+ * the targets stored in LINK blobs.
+ *
+ * A revision never changes, so each link is resolved once and its fully
+ * resolved target is remembered; paths through the same linked directory
+ * then cost one map lookup per link. Targets are relative to the link's
+ * directory. Absolute targets, and targets climbing out of the tree, point
+ * outside the revision and are treated as dangling.
+ */
+final class SymlinkResolver {
+    // same limit as Linux's MAXSYMLINKS
+    static final int MAX_LINKS = 40;
+
+    private final GitFileSystem fs;
+    // link path -> resolved target, both without a leading "/"
+    private final Map<String, String> resolved = new ConcurrentHashMap<>();
+
+    SymlinkResolver(GitFileSystem fs) {
+        this.fs = fs;
+    }
+
+    /**
+     * Resolve the links in a path. Components that don't exist are kept as
+     * they are, so the result of a path to a missing file is still the path
+     * it would have.
+     *
+     * @param followFinal resolve the last component too, if it is a link
+     * @return path without links, "." or "..", and without a leading "/";
+     *     null if a link on the way is dangling
+     * @throws FileSystemLoopException if more than MAX_LINKS links are followed
+     */
+    String resolve(String path, boolean followFinal) throws FileSystemLoopException, FileNotFoundException {
+        return resolve(path, followFinal, new int[1]);
+    }
+
+    private String resolve(String path, boolean followFinal, int[] followed)
+            throws FileSystemLoopException, FileNotFoundException {
+        Deque<String> pending = new ArrayDeque<>(Arrays.asList(path.split("/")));
+        List<String> result = new ArrayList<>();
+        while (!pending.isEmpty()) {
+            String name = pending.pollFirst();
+            if (name.isEmpty() || ".".equals(name)) {
+                continue;
+            }
+            if ("..".equals(name)) {
+                if (result.isEmpty()) {
+                    return null; // out of the tree
+                }
+                result.remove(result.size() - 1);
+                continue;
+            }
+            result.add(name);
+            if (pending.isEmpty() && !followFinal) {
+                break;
+            }
+
+            String current = String.join("/", result);
+            String target = resolved.get(current);
+            if (target == null) {
+                TreeItem item = fs.lookupPath(current);
+                if (item == null) {
+                    result.addAll(pending);
+                    break;
+                }
+                if (item.getFileMode() != Tree.FileMode.LINK) {
+                    continue;
+                }
+                target = resolveLink(current, item, followed);
+                if (target == null) {
+                    return null;
+                }
+            } else if (++followed[0] > MAX_LINKS) {
+                throw new FileSystemLoopException(path);
+            }
+            result.clear();
+            if (!target.isEmpty()) {
+                result.addAll(Arrays.asList(target.split("/")));
+            }
+        }
+        return String.join("/", result);
+    }
+
+    private String resolveLink(String linkPath, TreeItem link, int[] followed)
+            throws FileSystemLoopException, FileNotFoundException {
+        if (++followed[0] > MAX_LINKS) {
+            throw new FileSystemLoopException(linkPath);
+        }
+        String text = readLink(linkPath, link);
+        if (text.startsWith("/")) {
+            return null;
+        }
+        int slash = linkPath.lastIndexOf('/');
+        String joined = slash < 0 ? text : linkPath.substring(0, slash + 1) + text;
+        String target = resolve(joined, true, followed);
+        if (target != null) {
+            resolved.put(linkPath, target);
+        }
+        return target;
+    }
+
+    /**
+     * @return the target stored in a link entry
+     */
+    String readLink(String linkPath, TreeItem link) throws FileNotFoundException {
+        Tree.Entry entry = link.viewAs(Tree.Entry.class).orElseThrow(() -> new FileNotFoundException(linkPath));
+        Blob blob = fs.openBlob(entry).orElseThrow(() -> new FileNotFoundException(linkPath));
+        try {
+            return blob.getStringContent(StandardCharsets.UTF_8);
+        } finally {
+            blob.release();
+        }
+    }
+}
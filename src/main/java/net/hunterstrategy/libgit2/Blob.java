@@ -22,8 +22,9 @@
 package net.hunterstrategy.libgit2;
 
 
-import com.kenai.jffi.MemoryIO;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.Charset;
 import java.util.Optional;
 import jnr.ffi.Pointer;
@@ -34,33 +35,86 @@ import net.hunterstrategy.libgit2.Tree.FileMode;
 public class Blob extends AbstractResource implements Peelable, TreeItem {
     private GitOperations ops;
     private Tree.Entry entry;
+    // set for blobs looked up by id, see Repository.openBlob
+    private Repository owner;
     private Pointer blob;
+    private Oid oid;
+    // inflated size, as accounted in MemoryStats
+    private final long nativeSize;
+    // a view closing may free the blob before its last release
+    private boolean closed;
 
     Blob(GitOperations ops, Pointer blob) {
         this.ops = ops;
         this.blob = blob;
+        this.nativeSize = size();
+        if (ops.retainNative(blob)) {
+            ops.stats().opened(MemoryStats.Kind.BLOB, nativeSize);
+        }
     }
 
     void fromEntry(Tree.Entry entry) {
         this.entry = entry;
     }
 
+    void fromRepository(Repository owner) {
+        this.owner = owner;
+    }
+
     @Override
     public Pointer getPointer() {
         return this.blob;
     }
 
+    /**
+     * Drop a reference taken with Tree.Entry.openBlob(). The native blob is
+     * freed once its last reference is released. A blob from
+     * Repository.openBlob() has only the one reference.
+     */
+    public void release() {
+        if (this.entry != null) {
+            this.entry.releaseBlob(this);
+        } else if (this.owner != null) {
+            releaseStandalone();
+        }
+    }
+
+    private synchronized void releaseStandalone() {
+        if (this.owner == null) {
+            return; // already released
+        }
+        this.owner.releaseOwnership(this);
+        this.owner = null;
+        try {
+            close();
+        } catch (Exception e) {
+            // swallow, same as closing with the repository
+        }
+    }
+
     @Override
-    public void close() throws Exception {
+    public synchronized void close() throws Exception {
+        if (closed) {
+            return;
+        }
+        closed = true;
         if (!ops.isClosed()) {
+            boolean last = ops.releaseNative(this.blob);
             ops.call_void(git -> git.git_blob_free(this.blob));
+            if (last) {
+                ops.stats().closed(MemoryStats.Kind.BLOB, nativeSize);
+            }
         }
     }
 
     @Override
-    public String getId() {
-        Pointer oid = ops.call(git -> git.git_blob_id(this.blob));
-        return ops.call(git -> git.git_oid_tostr_s(oid));
+    public Oid getOid() {
+        Oid id = this.oid;
+        if (id == null) {
+            id = Oid.fromPointer(ops.git().git_blob_id(this.blob));
+            this.oid = id;
+        }
+        return id;
     }
 
     @Override
@@ -86,16 +140,50 @@ public class Blob extends AbstractResource implements Peelable, TreeItem {
     }
 
     public boolean isBinary() {
-        return ops.call(git -> git.git_blob_is_binary(this.blob));
+        return ops.git().git_blob_is_binary(this.blob);
     }
 
     public long size() {
-        return ops.call(git -> git.git_blob_rawsize(this.blob));
+        return NativeBackend.blobRawSize(ops.git(), this.blob);
     }
 
+    /**
+     * The inflated content, as a direct buffer over libgit2's memory.
+     *
+     * @throws IllegalStateException if the blob is too big for a ByteBuffer,
+     *     use Tree.Entry.newReadChannel instead
+     */
     public ByteBuffer getRawContent() {
-        Pointer bufPtr = ops.call(git -> git.git_blob_rawcontent(this.blob));
-        return MemoryIO.getInstance().newDirectByteBuffer(bufPtr.address(), (int) size());
+        long size = size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Blob too large for a ByteBuffer (" + size + " bytes)");
+        }
+        return NativeBackend.blobContent(ops.git(), this.blob, (int) size);
+    }
+
+    /**
+     * Read this blob as a checkout would write it, with the gitattributes
+     * filters for asPath applied (eol conversion, ident and any filter
+     * drivers registered with libgit2). The channel holds its own copy of
+     * the result, so this blob may be released while it is open.
+     *
+     * @param asPath path of the blob in its tree, e.g. "dir/file.txt"
+     * @param attributesCommit commit whose .gitattributes files apply
+     * @return channel, which the caller must close
+     */
+    public SeekableByteChannel newFilteredChannel(String asPath, Oid attributesCommit) {
+        return FilteredBlobChannel.open(ops, this.blob, asPath, attributesCommit);
+    }
+
+    /**
+     * As newFilteredChannel, for blobs too large to filter into memory:
+     * the result is written to a temporary file, which is deleted when the
+     * channel closes. This blob may be released while it is open.
+     *
+     * @return channel, which the caller must close
+     */
+    public SeekableByteChannel newSpooledFilteredChannel(String asPath, Oid attributesCommit) throws IOException {
+        return FilteredBlobSpool.open(ops, this.blob, asPath, attributesCommit);
     }
 
     public String getStringContent(Charset charset) {
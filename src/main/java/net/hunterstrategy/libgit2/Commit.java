@@ -39,11 +39,13 @@ public class Commit extends AbstractResource implements Peelable {
     private Repository owner;
     private GitOperations ops;
     private Map<SigType, Structs.GitSignature> signatures = new ConcurrentHashMap<>();
+    private Oid oid;
 
     Commit(GitOperations ops, Pointer commit, Repository owner) {
         this.ops = ops;
         this.commit = commit;
         this.owner = owner;
+        ops.stats().opened(MemoryStats.Kind.COMMIT);
     }
 
     @Override
@@ -55,9 +57,19 @@ public class Commit extends AbstractResource implements Peelable {
     public void close() throws Exception {
         if (!ops.isClosed()) {
             ops.call_void(git -> git.git_commit_free(this.commit));
+            ops.stats().closed(MemoryStats.Kind.COMMIT);
         }
     }
 
+    public Oid getOid() {
+        Oid id = this.oid;
+        if (id == null) {
+            id = Oid.fromPointer(ops.git().git_commit_id(this.commit));
+            this.oid = id;
+        }
+        return id;
+    }
+
     Structs.GitSignature getAuthor() {
         return signatures.computeIfAbsent(SigType.AUTHOR, sig -> ops.call(git -> git.git_commit_author(this.commit)));
     }
@@ -100,12 +112,13 @@ public class Commit extends AbstractResource implements Peelable {
     }
 
     public Tree getTree() {
-        PointerByReference treePtr = new PointerByReference();
-        ops.callCheck(git -> git.git_commit_tree(treePtr, this.commit));
-        if (treePtr.getValue() == null) {
+        PointerByReference treePtr = GitOperations.out();
+        ops.check(ops.git().git_commit_tree(treePtr, this.commit));
+        Pointer treePointer = treePtr.getValue();
+        if (treePointer == null) {
             throw new NullPointerException();
         }
-        Tree tree = new Tree(this.ops, treePtr.getValue(), this.owner);
+        Tree tree = new Tree(this.ops, treePointer, this.owner);
         this.owner.addOwnership(tree);
         return tree;
     }
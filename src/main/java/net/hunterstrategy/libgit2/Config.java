@@ -37,6 +37,7 @@ public class Config extends AbstractResource {
     Config(GitOperations ops, Pointer config) {
         this.ops = ops;
         this.config = config;
+        ops.stats().opened(MemoryStats.Kind.CONFIG);
     }
 
     @Override
@@ -56,6 +57,7 @@ public class Config extends AbstractResource {
     public void close() throws Exception {
         if (!ops.isClosed()) {
             ops.call_void(git -> git.git_config_free(this.config));
+            ops.stats().closed(MemoryStats.Kind.CONFIG);
         }
     }
 }
@@ -0,0 +1,365 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import jnr.ffi.Memory;
+import jnr.ffi.Pointer;
+import jnr.ffi.Runtime;
+
+/**
+ * The changes between two trees, see Repository.diffTreeToTree().
+ *
+ * libgit2 skips subtrees whose ids are equal on both sides, so the cost is
+ * in what changed rather than the size of the trees. Only the list of
+ * changed files (deltas) is computed up front; the text diff of a file is
+ * generated when its patch is opened, one file at a time.
+ *
+ * Native structs are read at their LP64 offsets, as laid out in libgit2's
+ * diff.h.
+ */
+public class Diff extends AbstractResource implements Iterable<Diff.Delta> {
+    private static final int GIT_DIFF_OPTIONS_VERSION = 1;
+
+    /*
+     * git_diff_options: [0] version, [4] flags, [8] ignore_submodules,
+     * [16] pathspec.strings, [24] pathspec.count, [32, 56) callbacks and
+     * payload, [56] context_lines, [60] interhunk_lines, [64] id_abbrev,
+     * [72] max_size, [80] old_prefix, [88] new_prefix.
+     */
+    private static final int OPTIONS_SIZE = 96;
+
+    /*
+     * git_diff_delta: [0] status, [4] flags, [8] similarity, [10] nfiles,
+     * [16] old_file, [64] new_file.
+     * git_diff_file: [0] id, [24] path, [32] size, [40] flags, [44] mode.
+     */
+    private static final int DELTA_OLD_FILE = 16;
+    private static final int DELTA_NEW_FILE = 64;
+    static final int GIT_DIFF_FLAG_BINARY = 1;
+
+    public static enum Flag {
+        REVERSE(1 << 0),
+        INCLUDE_UNMODIFIED(1 << 5),
+        INCLUDE_TYPECHANGE(1 << 6),
+        INCLUDE_TYPECHANGE_TREES(1 << 7),
+        IGNORE_FILEMODE(1 << 8),
+        IGNORE_SUBMODULES(1 << 9),
+        IGNORE_CASE(1 << 10),
+        DISABLE_PATHSPEC_MATCH(1 << 12),
+        SKIP_BINARY_CHECK(1 << 13),
+        INDENT_HEURISTIC(1 << 18),
+        IGNORE_BLANK_LINES(1 << 19),
+        FORCE_TEXT(1 << 20),
+        FORCE_BINARY(1 << 21),
+        IGNORE_WHITESPACE(1 << 22),
+        IGNORE_WHITESPACE_CHANGE(1 << 23),
+        IGNORE_WHITESPACE_EOL(1 << 24),
+        PATIENCE(1 << 28),
+        MINIMAL(1 << 29);
+
+        private final int bit;
+
+        private Flag(int bit) {
+            this.bit = bit;
+        }
+    }
+
+    /**
+     * git_delta_t, in order.
+     */
+    public static enum Status {
+        UNMODIFIED,
+        ADDED,
+        DELETED,
+        MODIFIED,
+        RENAMED,
+        COPIED,
+        IGNORED,
+        UNTRACKED,
+        TYPECHANGE,
+        UNREADABLE,
+        CONFLICTED;
+
+        private static final Status[] VALUES = values();
+
+        static Status valueOf(int value) {
+            if (value < 0 || value >= VALUES.length) {
+                throw new IllegalArgumentException("Unknown delta status: " + value);
+            }
+            return VALUES[value];
+        }
+    }
+
+    /**
+     * git_diff_options. Unset values keep libgit2's defaults.
+     */
+    public static final class Options {
+        private final Set<Flag> flags = EnumSet.noneOf(Flag.class);
+        private List<String> pathspec = List.of();
+        private int contextLines = -1;
+        private int interhunkLines = -1;
+        private long maxSize = -1;
+
+        public Options flags(Flag... flags) {
+            this.flags.addAll(Arrays.asList(flags));
+            return this;
+        }
+
+        /**
+         * Only diff paths matching these fnmatch patterns (or prefixes,
+         * with DISABLE_PATHSPEC_MATCH).
+         */
+        public Options pathspec(String... pathspec) {
+            this.pathspec = List.of(pathspec);
+            return this;
+        }
+
+        public Options contextLines(int contextLines) {
+            this.contextLines = contextLines;
+            return this;
+        }
+
+        public Options interhunkLines(int interhunkLines) {
+            this.interhunkLines = interhunkLines;
+            return this;
+        }
+
+        /**
+         * Files bigger than this are treated as binary, and get no hunks.
+         */
+        public Options maxSize(long maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * @param keepAlive native memory the options point to, which the
+         *     caller holds on to until the diff call returns
+         */
+        Pointer toNative(GitOperations ops, List<Pointer> keepAlive) {
+            Runtime runtime = Runtime.getRuntime(ops.git());
+            Pointer opts = Memory.allocateDirect(runtime, OPTIONS_SIZE);
+            ops.check(ops.git().git_diff_options_init(opts, GIT_DIFF_OPTIONS_VERSION));
+
+            int bits = 0;
+            for (Flag flag : flags) {
+                bits |= flag.bit;
+            }
+            opts.putInt(4, bits);
+
+            if (!pathspec.isEmpty()) {
+                Pointer strings = Memory.allocateDirect(runtime, pathspec.size() * runtime.addressSize());
+                keepAlive.add(strings);
+                for (int i = 0; i < pathspec.size(); i++) {
+                    int capacity = pathspec.get(i).length() * 4 + 1;
+                    Pointer string = Memory.allocateDirect(runtime, capacity);
+                    string.putString(0, pathspec.get(i), capacity, StandardCharsets.UTF_8);
+                    keepAlive.add(string);
+                    strings.putPointer((long) i * runtime.addressSize(), string);
+                }
+                opts.putPointer(16, strings);
+                opts.putAddress(24, pathspec.size());
+            }
+            if (contextLines >= 0) {
+                opts.putInt(56, contextLines);
+            }
+            if (interhunkLines >= 0) {
+                opts.putInt(60, interhunkLines);
+            }
+            if (maxSize >= 0) {
+                opts.putLongLong(72, maxSize);
+            }
+            return opts;
+        }
+    }
+
+    private final GitOperations ops;
+    private final Repository owner;
+    private final Pointer diff;
+    private boolean closed;
+
+    Diff(GitOperations ops, Pointer diff, Repository owner) {
+        this.ops = ops;
+        this.diff = diff;
+        this.owner = owner;
+        ops.stats().opened(MemoryStats.Kind.DIFF);
+    }
+
+    @Override
+    public Pointer getPointer() {
+        return this.diff;
+    }
+
+    public long getDeltaCount() {
+        return ops.git().git_diff_num_deltas(diff);
+    }
+
+    public Delta getDelta(long index) {
+        if (index < 0 || index >= getDeltaCount()) {
+            throw new IndexOutOfBoundsException("Delta " + index);
+        }
+        return new Delta(index, ops.git().git_diff_get_delta(diff, index));
+    }
+
+    @Override
+    public Iterator<Delta> iterator() {
+        return new Iterator<>() {
+            private final long count = getDeltaCount();
+            private long index;
+
+            @Override
+            public boolean hasNext() {
+                return index < count;
+            }
+
+            @Override
+            public Delta next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getDelta(index++);
+            }
+        };
+    }
+
+    /**
+     * Free the diff now, rather than with its repository. Patches already
+     * opened from it stay usable.
+     */
+    @Override
+    public synchronized void close() throws Exception {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        owner.releaseOwnership(this);
+        if (!ops.isClosed()) {
+            ops.call_void(git -> git.git_diff_free(this.diff));
+            ops.stats().closed(MemoryStats.Kind.DIFF);
+        }
+    }
+
+    /**
+     * One changed file. Its fields are copied out of libgit2 when read.
+     */
+    public final class Delta {
+        private final long index;
+        private final Status status;
+        private final File oldFile;
+        private final File newFile;
+        private final int flags;
+
+        private Delta(long index, Pointer delta) {
+            this.index = index;
+            this.status = Status.valueOf(delta.getInt(0));
+            this.flags = delta.getInt(4);
+            this.oldFile = new File(delta.slice(DELTA_OLD_FILE));
+            this.newFile = new File(delta.slice(DELTA_NEW_FILE));
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public File getOldFile() {
+            return oldFile;
+        }
+
+        public File getNewFile() {
+            return newFile;
+        }
+
+        /**
+         * Only known if the content had been looked at when this delta was
+         * read, see Patch.isBinary() for an answer either way.
+         */
+        public boolean isBinary() {
+            return (flags & GIT_DIFF_FLAG_BINARY) != 0;
+        }
+
+        /**
+         * Generate the text diff of this file. Close it when done; it is
+         * otherwise freed with the repository.
+         */
+        public Patch newPatch() {
+            return Patch.fromDiff(ops, Diff.this, owner, index);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s -> %s", status, oldFile.getPath(), newFile.getPath());
+        }
+    }
+
+    /**
+     * One side of a delta. The id is zero and the path that of the other
+     * side when the file doesn't exist on this side.
+     */
+    public static final class File {
+        private final Oid oid;
+        private final String path;
+        private final long size;
+        private final int mode;
+
+        private File(Pointer file) {
+            this.oid = Oid.fromPointer(file);
+            Pointer pathPtr = file.getPointer(24);
+            this.path = pathPtr == null ? null : pathPtr.getString(0);
+            this.size = file.getLongLong(32);
+            this.mode = file.getShort(44) & 0xFFFF;
+        }
+
+        public Oid getOid() {
+            return oid;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return size in bytes, 0 if it hasn't been loaded
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return mode, UNREADABLE if the file doesn't exist on this side
+         */
+        public Tree.FileMode getFileMode() {
+            return Tree.FileMode.valueOf(mode);
+        }
+
+        public boolean exists() {
+            return !oid.isZero();
+        }
+    }
+}
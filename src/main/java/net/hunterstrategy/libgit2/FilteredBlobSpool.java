@@ -0,0 +1,182 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import jnr.ffi.Memory;
+import jnr.ffi.Pointer;
+import jnr.ffi.Runtime;
+import jnr.ffi.annotations.Delegate;
+import jnr.ffi.byref.PointerByReference;
+
+/**
+ * Filters a blob with git_filter_list_stream_blob into a temporary file,
+ * for content too large to hold filtered in memory, see
+ * FilteredBlobChannel.
+ *
+ * libgit2 runs each filter over the whole blob, so the blob is still
+ * inflated while the filters run, but the result is written out chunk by
+ * chunk instead of gathered into a second native buffer. The file is
+ * deleted when the returned channel closes.
+ */
+final class FilteredBlobSpool {
+    private static final int GIT_FILTER_TO_WORKTREE = 0;
+    private static final int GIT_FILTER_OPTIONS_VERSION = 1;
+    private static final int GIT_FILTER_ATTRIBUTES_FROM_COMMIT = 1 << 3;
+    private static final int GIT_ERROR = -1;
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    /*
+     * git_filter_options, LP64: [0] version, [4] flags, [8] commit_id
+     * (git_oid *), then from libgit2 1.5 an inline attr_commit_id.
+     */
+    private static final int OPTIONS_SIZE = 48;
+    private static final int FLAGS = 4;
+    private static final int COMMIT_ID = 8;
+
+    // git_writestream, LP64: [0] write, [8] close, [16] free
+    private static final int STREAM_SIZE = 24;
+
+    public interface WriteCallback {
+        @Delegate
+        int invoke(Pointer stream, Pointer buffer, long len);
+    }
+
+    public interface CloseCallback {
+        @Delegate
+        int invoke(Pointer stream);
+    }
+
+    public interface FreeCallback {
+        @Delegate
+        void invoke(Pointer stream);
+    }
+
+    private final FileChannel out;
+    // the closures must stay reachable while libgit2 may call them
+    private final WriteCallback write = this::write;
+    private final CloseCallback close = stream -> 0;
+    private final FreeCallback free = stream -> {};
+    private IOException failure;
+
+    private FilteredBlobSpool(FileChannel out) {
+        this.out = out;
+    }
+
+    /**
+     * Whether any filter applies to asPath, decided from its attributes
+     * alone, without loading the blob.
+     */
+    static boolean applies(GitOperations ops, Pointer repo, String asPath, Oid attributesCommit) {
+        Pointer filters = load(ops, repo, null, asPath, attributesCommit);
+        if (filters == null) {
+            return false;
+        }
+        ops.git().git_filter_list_free(filters);
+        return true;
+    }
+
+    /**
+     * @return channel over the filtered content, which the caller must close
+     */
+    static SeekableByteChannel open(GitOperations ops, Pointer blob, String asPath, Oid attributesCommit)
+            throws IOException {
+        Path file = Files.createTempFile("jnfsgit-filtered", null);
+        // the read side, returned to the caller, deletes the file when it closes
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+        try (FileChannel writer = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            FilteredBlobSpool spool = new FilteredBlobSpool(writer);
+            Pointer filters = load(ops, ops.git().git_blob_owner(blob), blob, asPath, attributesCommit);
+            if (filters == null) {
+                // nothing applies after all, the raw content is the result
+                spool.write(null, ops.git().git_blob_rawcontent(blob), NativeBackend.blobRawSize(ops.git(), blob));
+                spool.checkFailure();
+            } else {
+                try {
+                    spool.stream(ops, filters, blob);
+                } finally {
+                    ops.git().git_filter_list_free(filters);
+                }
+            }
+            return channel;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static Pointer load(GitOperations ops, Pointer repo, Pointer blob, String asPath, Oid attributesCommit) {
+        Runtime runtime = Runtime.getRuntime(NativeRuntime.library());
+        Pointer opts = Memory.allocateDirect(runtime, OPTIONS_SIZE + Oid.RAW_SIZE, true);
+        Pointer commitId = opts.slice(OPTIONS_SIZE, Oid.RAW_SIZE);
+        attributesCommit.copyTo(commitId);
+        opts.putInt(0, GIT_FILTER_OPTIONS_VERSION);
+        opts.putInt(FLAGS, GIT_FILTER_ATTRIBUTES_FROM_COMMIT);
+        opts.putPointer(COMMIT_ID, commitId);
+
+        PointerByReference filters = GitOperations.out();
+        ops.check(ops.git().git_filter_list_load_ext(filters, repo, blob, asPath, GIT_FILTER_TO_WORKTREE, opts));
+        return filters.getValue();
+    }
+
+    private void stream(GitOperations ops, Pointer filters, Pointer blob) throws IOException {
+        Runtime runtime = Runtime.getRuntime(NativeRuntime.library());
+        Pointer stream = Memory.allocateDirect(runtime, STREAM_SIZE, true);
+        stream.putPointer(0, runtime.getClosureManager().getClosurePointer(WriteCallback.class, write));
+        stream.putPointer(8, runtime.getClosureManager().getClosurePointer(CloseCallback.class, close));
+        stream.putPointer(16, runtime.getClosureManager().getClosurePointer(FreeCallback.class, free));
+
+        int code = ops.git().git_filter_list_stream_blob(filters, blob, stream);
+        checkFailure();
+        ops.check(code);
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private int write(Pointer stream, Pointer buffer, long len) {
+        try {
+            for (long offset = 0; offset < len; ) {
+                int n = (int) Math.min(CHUNK_SIZE, len - offset);
+                ByteBuffer chunk = NativeBackend.view(buffer.address() + offset, n);
+                while (chunk.hasRemaining()) {
+                    out.write(chunk);
+                }
+                offset += n;
+            }
+            return 0;
+        } catch (IOException e) {
+            failure = e;
+            return GIT_ERROR;
+        }
+    }
+}
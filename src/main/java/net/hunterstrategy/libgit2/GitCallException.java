@@ -24,6 +24,10 @@ package net.hunterstrategy.libgit2;
 public class GitCallException extends RuntimeException {
     private static final long serialVersionUID = 1L;
 
+    // git_error_code values that callers check for rather than throw
+    static final int GIT_ENOTFOUND = -3;
+    static final int GIT_ITEROVER = -31;
+
     private int code;
 
     public GitCallException(int code, String message) {
@@ -35,12 +35,14 @@ public class GitObject extends AbstractResource {
     private GitOperations ops;
     private Pointer object;
     private Repository owner;
+    private Oid oid;
     private final Map<Class<? extends Peelable>, Function<Pointer, Peelable>> peelables = initFunctionMap();
 
     GitObject(GitOperations ops, Pointer object, Repository owner) {
         this.ops = ops;
         this.object = object;
         this.owner = owner;
+        ops.stats().opened(MemoryStats.Kind.OBJECT);
     }
 
     Map<Class<? extends Peelable>, Function<Pointer, Peelable>> initFunctionMap() {
@@ -55,9 +57,17 @@ public class GitObject extends AbstractResource {
         return this.object;
     }
 
+    public Oid getOid() {
+        Oid id = this.oid;
+        if (id == null) {
+            id = Oid.fromPointer(ops.git().git_object_id(this.object));
+            this.oid = id;
+        }
+        return id;
+    }
+
     public String getId() {
-        Pointer oid = ops.call(git -> git.git_object_id(this.object));
-        return ops.call(git -> git.git_oid_tostr_s(oid));
+        return getOid().toString();
     }
 
     public Repository getOwner() {
@@ -73,18 +83,17 @@ public class GitObject extends AbstractResource {
         Type typeToPeel = clazz.getAnnotation(PeelableType.class).value();
 
         if (peelables.containsKey(clazz)) {
-            PointerByReference pointer = new PointerByReference();
-            try {
-                ops.callCheck(git -> git.git_object_peel(pointer, this.object, typeToPeel));
-            } catch (GitCallException ise) {
+            PointerByReference pointer = GitOperations.out();
+            if (ops.git().git_object_peel(pointer, this.object, typeToPeel) < 0) {
                 return Optional.empty();
             }
 
-            if (pointer.getValue() == null) {
+            Pointer peeled = pointer.getValue();
+            if (peeled == null) {
                 return Optional.empty();
             }
 
-            Peelable p = peelables.get(clazz).apply(pointer.getValue());
+            Peelable p = peelables.get(clazz).apply(peeled);
             this.owner.addOwnership(p);
             return (Optional<T>) Optional.of(p);
         }
@@ -103,6 +112,7 @@ public class GitObject extends AbstractResource {
     public void close() throws Exception {
         if (!ops.isClosed()) {
             ops.call_void(git -> git.git_object_free(this.object));
+            ops.stats().closed(MemoryStats.Kind.OBJECT);
         }
     }
 
@@ -126,5 +136,29 @@ public class GitObject extends AbstractResource {
         public int intValue() {
             return this.value;
         }
+
+        /**
+         * Map a raw libgit2 git_object_t without boxing.
+         */
+        public static Type valueOf(int value) {
+            switch (value) {
+                case -2:
+                    return ANY;
+                case 1:
+                    return COMMIT;
+                case 2:
+                    return TREE;
+                case 3:
+                    return BLOB;
+                case 4:
+                    return TAG;
+                case 6:
+                    return OFS_DELTA;
+                case 7:
+                    return REF_DELTA;
+                default:
+                    return INVALID;
+            }
+        }
     }
 }
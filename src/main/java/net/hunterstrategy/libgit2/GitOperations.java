@@ -25,40 +25,35 @@ package net.hunterstrategy.libgit2;
 import java.lang.ref.Cleaner;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import jnr.ffi.LibraryLoader;
+import jnr.ffi.Memory;
+import jnr.ffi.Pointer;
+import jnr.ffi.Runtime;
+import jnr.ffi.byref.PointerByReference;
 
 public class GitOperations implements ResourceOwner {
-    private static final AtomicInteger INITCOUNT = new AtomicInteger(0);
     private static final Cleaner CLEANER = Cleaner.create();
+    private static final ThreadLocal<PointerByReference> OUT = ThreadLocal.withInitial(PointerByReference::new);
+    private static final ThreadLocal<Pointer> OID = ThreadLocal.withInitial(
+            () -> Memory.allocateDirect(Runtime.getRuntime(NativeRuntime.library()), Oid.RAW_SIZE));
 
     private final AtomicBoolean CLOSED = new AtomicBoolean(false);
-    private final Set<Resource> resources = new HashSet<>();
+    private final Set<Resource> resources = ConcurrentHashMap.newKeySet();
+    private final MemoryStats stats = MemoryStats.forRepository();
+    // references to native objects by address, see retainNative
+    private final ConcurrentHashMap<Long, Integer> nativeReferences = new ConcurrentHashMap<>();
     private final Libgit2 LIBGIT = initialize();
     private OpsCleaner opsCleaner;
 
     private Libgit2 initialize() {
-        synchronized (INITCOUNT) {
-            Libgit2 libgit = LibraryLoader.create(Libgit2.class).load("git2");
-            int code = libgit.git_libgit2_init();
-            if (code < 0) {
-                throw new GitCallException(code, lastError(libgit));
-            }
-            int javacount = INITCOUNT.incrementAndGet();
-            if (code != javacount) {
-                System.err.printf(
-                        "libgit2/binding initialization count mismatch! java/libgit2 %d/%d%n", javacount, code);
-            }
-
-            this.opsCleaner = new OpsCleaner(libgit, resources, CLOSED);
-            CLEANER.register(this, this.opsCleaner);
-            return libgit;
-        }
+        Libgit2 libgit = NativeRuntime.acquire();
+        this.opsCleaner = new OpsCleaner(resources, stats, CLOSED);
+        CLEANER.register(this, this.opsCleaner);
+        return libgit;
     }
 
     /**
@@ -69,12 +64,12 @@ public class GitOperations implements ResourceOwner {
      */
     private static class OpsCleaner implements Runnable {
         private final Set<Resource> resources;
-        private final Libgit2 git;
+        private final MemoryStats stats;
         private final AtomicBoolean closed;
 
-        private OpsCleaner(Libgit2 git, Set<Resource> resources, AtomicBoolean closed) {
-            this.git = git;
+        private OpsCleaner(Set<Resource> resources, MemoryStats stats, AtomicBoolean closed) {
             this.resources = resources;
+            this.stats = stats;
             this.closed = closed;
         }
 
@@ -97,14 +92,9 @@ public class GitOperations implements ResourceOwner {
                         }
                     }
 
-                    int code = git.git_libgit2_shutdown();
-                    if (code < 0) {
-                        throw new GitCallException(code, lastError(git));
-                    }
-                    int javacount = INITCOUNT.decrementAndGet();
-                    if (javacount != code) {
-                        System.err.println("libgit2/binding shutdown count mismatch!");
-                    }
+                    // whatever is still counted went with the repository
+                    stats.clear();
+                    NativeRuntime.release();
                 } finally {
                     closed.compareAndSet(false, true);
                 }
@@ -122,6 +112,37 @@ public class GitOperations implements ResourceOwner {
         resources.add(resource);
     }
 
+    @Override
+    public void releaseOwnership(Resource resource) {
+        resources.remove(resource);
+    }
+
+    MemoryStats stats() {
+        return stats;
+    }
+
+    /**
+     * Count a reference to a native object. libgit2's object cache returns
+     * the same object to repeated lookups of one id, and its memory should
+     * only be accounted once.
+     *
+     * @return true for the first reference, which accounts for the memory
+     */
+    boolean retainNative(Pointer object) {
+        return nativeReferences.merge(object.address(), 1, Integer::sum) == 1;
+    }
+
+    /**
+     * Drop a reference counted with retainNative, before freeing the object,
+     * so its address isn't reused while it is still counted.
+     *
+     * @return true for the last reference
+     */
+    boolean releaseNative(Pointer object) {
+        return nativeReferences.computeIfPresent(object.address(), (address, count) -> count == 1 ? null : count - 1)
+                == null;
+    }
+
     boolean isClosed() {
         return CLOSED.get();
     }
@@ -132,6 +153,54 @@ public class GitOperations implements ResourceOwner {
         }
     }
 
+    /**
+     * Hot-path access to the binding.
+     *
+     * call/callCheck/call_void allocate a capturing lambda (and box the return
+     * code) for every native call. Code on hot paths, such as tree lookups and
+     * blob reads, calls the binding directly instead:
+     *
+     *     PointerByReference out = GitOperations.out();
+     *     ops.check(ops.git().git_blob_lookup(out, repo, oid));
+     *     Pointer blob = out.getValue();
+     *
+     * The closed check is a plain read, so the JIT is free to hoist it out of
+     * loops. Closing is still coordinated through the cleaner's lock.
+     */
+    Libgit2 git() {
+        if (CLOSED.getPlain()) {
+            throw new IllegalStateException("git resource is closed/freed");
+        }
+        return LIBGIT;
+    }
+
+    /**
+     * Throw a GitCallException for a negative libgit2 return code.
+     */
+    void check(int code) {
+        if (code < 0) {
+            throw new GitCallException(code, lastError(LIBGIT));
+        }
+    }
+
+    /**
+     * A reusable out-parameter for the calling thread. Its value must be read
+     * before the thread makes another call with out().
+     */
+    static PointerByReference out() {
+        return OUT.get();
+    }
+
+    /**
+     * Copy an id into a native git_oid for the calling thread. Like out(),
+     * it is only valid until the thread's next nativeOid() call.
+     */
+    static Pointer nativeOid(Oid oid) {
+        Pointer pointer = OID.get();
+        oid.copyTo(pointer);
+        return pointer;
+    }
+
     void callCheck(Function<Libgit2, Integer> func) {
         checkClosed();
         int code = func.apply(LIBGIT);
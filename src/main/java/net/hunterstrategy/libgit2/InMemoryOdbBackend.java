@@ -0,0 +1,90 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An OdbBackend over a map, e.g. to serve test fixtures or hot objects from
+ * the heap.
+ */
+public class InMemoryOdbBackend implements OdbBackend {
+    private final Map<Oid, RawObject> objects = new ConcurrentHashMap<>();
+
+    /**
+     * Store an object under its git id.
+     *
+     * @return the id, the SHA-1 of the object's header and content
+     */
+    public Oid put(GitObject.Type type, byte[] content) {
+        Oid oid = hash(type, content);
+        objects.put(oid, new RawObject(type, ByteBuffer.wrap(content.clone()).asReadOnlyBuffer()));
+        return oid;
+    }
+
+    public boolean remove(Oid oid) {
+        return objects.remove(oid) != null;
+    }
+
+    public int size() {
+        return objects.size();
+    }
+
+    @Override
+    public RawObject read(Oid oid) {
+        return objects.get(oid);
+    }
+
+    @Override
+    public boolean exists(Oid oid) {
+        return objects.containsKey(oid);
+    }
+
+    /**
+     * The id git gives an object: SHA-1 over "type size\0" and the content.
+     */
+    public static Oid hash(GitObject.Type type, byte[] content) {
+        if (type != GitObject.Type.COMMIT
+                && type != GitObject.Type.TREE
+                && type != GitObject.Type.BLOB
+                && type != GitObject.Type.TAG) {
+            throw new IllegalArgumentException("Not an object type: " + type);
+        }
+        MessageDigest sha1;
+        try {
+            sha1 = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        String header = type.name().toLowerCase(Locale.ROOT) + " " + content.length + "\0";
+        sha1.update(header.getBytes(StandardCharsets.US_ASCII));
+        sha1.update(content);
+        return Oid.fromRaw(sha1.digest());
+    }
+}
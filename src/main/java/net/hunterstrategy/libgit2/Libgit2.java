@@ -23,21 +23,82 @@ package net.hunterstrategy.libgit2;
 
 
 import jnr.ffi.Pointer;
+import jnr.ffi.annotations.Delegate;
 import jnr.ffi.annotations.In;
 import jnr.ffi.annotations.Out;
+import jnr.ffi.annotations.Variadic;
 import jnr.ffi.byref.PointerByReference;
 import jnr.ffi.types.size_t;
 import jnr.ffi.types.u_int64_t;
 
 public interface Libgit2
-        extends ErrorOps, ObjectOps, RevparseOps, OidOps, RepositoryOps, TreeOps, BlobOps, ConfigOps, CommitOps {
+        extends ErrorOps,
+                ObjectOps,
+                RevparseOps,
+                OidOps,
+                RepositoryOps,
+                TreeOps,
+                BlobOps,
+                ConfigOps,
+                CommitOps,
+                OdbOps,
+                OptionOps,
+                RevwalkOps,
+                DiffOps,
+                ReferenceOps,
+                BufOps,
+                FilterOps,
+                NoteOps {
     int git_libgit2_init();
 
     int git_libgit2_shutdown();
+
+    int git_libgit2_version(@Out Pointer major, @Out Pointer minor, @Out Pointer rev);
+}
+
+/**
+ * git_libgit2_opts(int option, ...) is variadic; each overload is one
+ * argument shape used by the options in Libgit2Options.
+ */
+interface OptionOps {
+    /**
+     * Options taking an int (booleans, e.g. ENABLE_CACHING).
+     */
+    @Variadic(fixedCount = 1)
+    int git_libgit2_opts(int option, int value);
+
+    /**
+     * Options taking a size_t or ssize_t (e.g. SET_MWINDOW_SIZE).
+     */
+    @Variadic(fixedCount = 1)
+    int git_libgit2_opts(int option, @size_t long value);
+
+    /**
+     * SET_CACHE_OBJECT_LIMIT: git_object_t, size_t.
+     */
+    @Variadic(fixedCount = 1)
+    int git_libgit2_opts(int option, int type, @size_t long value);
+
+    /**
+     * Options reading one size_t (e.g. GET_MWINDOW_SIZE).
+     */
+    @Variadic(fixedCount = 1)
+    int git_libgit2_opts(int option, @Out Pointer value);
+
+    /**
+     * GET_CACHED_MEMORY: ssize_t current, ssize_t allowed.
+     */
+    @Variadic(fixedCount = 1)
+    int git_libgit2_opts(int option, @Out Pointer first, @Out Pointer second);
 }
 
 interface ErrorOps {
     Structs.GitError git_error_last();
+
+    /**
+     * Set the error git_error_last() reports, e.g. from a callback.
+     */
+    int git_error_set_str(@In int errorClass, @In String message);
 }
 
 interface RevparseOps {
@@ -55,11 +116,163 @@ interface CommitOps {
 
     Pointer git_commit_id(@In Pointer commit);
 
+    int git_commit_lookup(@Out PointerByReference commit, @In Pointer repo, @In Pointer oid);
+
     String git_commit_message(@In Pointer commit);
 
+    int git_commit_parent(@Out PointerByReference parent, @In Pointer commit, @In int n);
+
+    int git_commit_parentcount(@In Pointer commit);
+
     long git_commit_time(@In Pointer commit);
 
     int git_commit_tree(@Out PointerByReference tree, @In Pointer commit);
+
+    Pointer git_commit_tree_id(@In Pointer commit);
+}
+
+/**
+ * Struct layouts are described where they are read, see Diff.
+ */
+interface DiffOps {
+    void git_diff_free(@In Pointer diff);
+
+    /**
+     * @return git_diff_delta, owned by the diff
+     */
+    Pointer git_diff_get_delta(@In Pointer diff, @In @size_t long idx);
+
+    @size_t
+    long git_diff_num_deltas(@In Pointer diff);
+
+    int git_diff_options_init(@Out Pointer opts, @In int version);
+
+    /**
+     * @param oldTree may be null, to diff against an empty tree
+     * @param newTree may be null, to diff against an empty tree
+     * @param opts git_diff_options, may be null for defaults
+     */
+    int git_diff_tree_to_tree(
+            @Out PointerByReference diff, @In Pointer repo, @In Pointer oldTree, @In Pointer newTree, @In Pointer opts);
+
+    void git_patch_free(@In Pointer patch);
+
+    /**
+     * @return git_diff_delta, owned by the patch
+     */
+    Pointer git_patch_get_delta(@In Pointer patch);
+
+    /**
+     * Generate the text diff of one delta, leaving the others alone.
+     */
+    int git_patch_from_diff(@Out PointerByReference patch, @In Pointer diff, @In @size_t long idx);
+
+    /**
+     * @param linesInHunk out size_t, may be null
+     */
+    int git_patch_get_hunk(
+            @Out PointerByReference hunk, @Out Pointer linesInHunk, @In Pointer patch, @In @size_t long hunkIdx);
+
+    int git_patch_get_line_in_hunk(
+            @Out PointerByReference line, @In Pointer patch, @In @size_t long hunkIdx, @In @size_t long lineOfHunk);
+
+    @size_t
+    long git_patch_num_hunks(@In Pointer patch);
+
+    int git_patch_num_lines_in_hunk(@In Pointer patch, @In @size_t long hunkIdx);
+}
+
+interface ReferenceOps {
+    void git_reference_free(@In Pointer ref);
+
+    void git_reference_iterator_free(@In Pointer iter);
+
+    /**
+     * @param glob fnmatch pattern on the full ref name, e.g. refs/tags/*
+     */
+    int git_reference_iterator_glob_new(@Out PointerByReference iter, @In Pointer repo, @In String glob);
+
+    int git_reference_iterator_new(@Out PointerByReference iter, @In Pointer repo);
+
+    String git_reference_name(@In Pointer ref);
+
+    /**
+     * @return 0, GIT_ITEROVER at the end, or a negative error code
+     */
+    int git_reference_next(@Out PointerByReference ref, @In Pointer iter);
+
+    /**
+     * Follow tags (and symbolic refs) until an object of the given type, or
+     * with ANY, the first object that isn't a tag.
+     */
+    int git_reference_peel(@Out PointerByReference object, @In Pointer ref, @In GitObject.Type type);
+
+    int git_reference_resolve(@Out PointerByReference resolved, @In Pointer ref);
+
+    String git_reference_symbolic_target(@In Pointer ref);
+
+    /**
+     * @return git_oid, null for a symbolic reference
+     */
+    Pointer git_reference_target(@In Pointer ref);
+}
+
+interface NoteOps {
+    void git_note_free(@In Pointer note);
+
+    Pointer git_note_id(@In Pointer note);
+
+    void git_note_iterator_free(@In Pointer iter);
+
+    /**
+     * @param notesRef e.g. refs/notes/commits, null for the default
+     * @return GIT_ENOTFOUND if the notes reference does not exist
+     */
+    int git_note_iterator_new(@Out PointerByReference iter, @In Pointer repo, @In String notesRef);
+
+    String git_note_message(@In Pointer note);
+
+    /**
+     * @param noteId out git_oid of the note's blob
+     * @param annotatedId out git_oid of the object the note is attached to
+     * @return 0, GIT_ITEROVER at the end, or a negative error code
+     */
+    int git_note_next(@Out Pointer noteId, @Out Pointer annotatedId, @In Pointer iter);
+
+    /**
+     * @return GIT_ENOTFOUND if the object has no note
+     */
+    int git_note_read(@Out PointerByReference note, @In Pointer repo, @In String notesRef, @In Pointer oid);
+}
+
+interface RevwalkOps {
+    void git_revwalk_free(@In Pointer walk);
+
+    int git_revwalk_hide(@In Pointer walk, @In Pointer oid);
+
+    int git_revwalk_hide_ref(@In Pointer walk, @In String refname);
+
+    int git_revwalk_new(@Out PointerByReference walk, @In Pointer repo);
+
+    /**
+     * @return 0, GIT_ITEROVER at the end of the walk, or a negative error code
+     */
+    int git_revwalk_next(@Out Pointer oid, @In Pointer walk);
+
+    int git_revwalk_push(@In Pointer walk, @In Pointer oid);
+
+    int git_revwalk_push_head(@In Pointer walk);
+
+    int git_revwalk_push_ref(@In Pointer walk, @In String refname);
+
+    int git_revwalk_reset(@In Pointer walk);
+
+    int git_revwalk_simplify_first_parent(@In Pointer walk);
+
+    /**
+     * @param sortMode GIT_SORT_* flags, see RevWalk.Sort
+     */
+    int git_revwalk_sorting(@In Pointer walk, @In int sortMode);
 }
 
 interface ConfigOps {
@@ -81,15 +294,78 @@ interface OidOps {
 interface RepositoryOps {
     int git_repository_config(@Out PointerByReference config, @In Pointer repo);
 
+    int git_repository_odb(@Out PointerByReference odb, @In Pointer repo);
+
     int git_repository_open(@Out PointerByReference repo, @In String path);
 
     int git_repository_open_bare(@Out PointerByReference repo, @In String path);
 
+    /**
+     * @return the repository's git directory, ending in "/"
+     */
+    String git_repository_path(@In Pointer repo);
+
+    /**
+     * @return the directory shared by all worktrees, holding objects and
+     *     refs; the git directory itself outside of a worktree
+     */
+    String git_repository_commondir(@In Pointer repo);
+
     String git_repository_workdir(@In Pointer repo);
 
     void git_repository_free(@In Pointer repo);
 }
 
+interface OdbOps {
+    /**
+     * @param backend git_odb_backend, see OdbBackendAdapter
+     * @param priority backends with higher priority are asked first
+     */
+    int git_odb_add_backend(@In Pointer odb, @In Pointer backend, @In int priority);
+
+    /**
+     * Allocate the buffer a backend's read callback hands to libgit2.
+     */
+    Pointer git_odb_backend_data_alloc(@In Pointer backend, @In @size_t long len);
+
+    void git_odb_free(@In Pointer odb);
+
+    int git_odb_init_backend(@Out Pointer backend, @In int version);
+
+    Pointer git_odb_object_data(@In Pointer object);
+
+    void git_odb_object_free(@In Pointer object);
+
+    @size_t
+    long git_odb_object_size(@In Pointer object);
+
+    /**
+     * Only loose objects can be streamed; packed objects fail with a negative code.
+     *
+     * @param len out size_t, pointer-sized
+     * @param type out git_object_t
+     */
+    int git_odb_open_rstream(
+            @Out PointerByReference stream, @Out Pointer len, @Out Pointer type, @In Pointer odb, @In Pointer oid);
+
+    int git_odb_read(@Out PointerByReference object, @In Pointer odb, @In Pointer oid);
+
+    /**
+     * Read only the object's size and type, without inflating it.
+     *
+     * @param len out size_t, pointer-sized
+     * @param type out git_object_t, see GitObject.Type.valueOf(int)
+     */
+    int git_odb_read_header(@Out Pointer len, @Out Pointer type, @In Pointer odb, @In Pointer oid);
+
+    void git_odb_stream_free(@In Pointer stream);
+
+    /**
+     * @return bytes read, 0 at the end of the stream, or a negative error code
+     */
+    int git_odb_stream_read(@In Pointer stream, @Out Pointer buffer, @In @size_t long len);
+}
+
 interface ObjectOps {
     Pointer git_object_id(@In Pointer object);
 
@@ -109,7 +385,10 @@ interface TreeOps {
 
     int git_tree_entry_bypath(@Out PointerByReference entry, @In Pointer tree, @In String path);
 
-    Tree.FileMode git_tree_entry_filemode(@In Pointer treeEntry);
+    /**
+     * @return raw mode bits, see Tree.FileMode.valueOf(int)
+     */
+    int git_tree_entry_filemode(@In Pointer treeEntry);
 
     void git_tree_entry_free(@In Pointer treeEntry);
 
@@ -119,7 +398,10 @@ interface TreeOps {
 
     int git_tree_entry_to_object(@Out PointerByReference object, @In Pointer repo, @In Pointer treeEntry);
 
-    GitObject.Type git_tree_entry_type(@In Pointer treeEntry);
+    /**
+     * @return raw object type, see GitObject.Type.valueOf(int)
+     */
+    int git_tree_entry_type(@In Pointer treeEntry);
 
     @size_t
     long git_tree_entrycount(@In Pointer tree);
@@ -127,9 +409,67 @@ interface TreeOps {
     void git_tree_free(@In Pointer tree);
 
     Pointer git_tree_id(@In Pointer tree);
+
+    int git_tree_lookup(@Out PointerByReference out, @In Pointer repo, @In Pointer id);
+
+    /**
+     * @param mode GIT_TREEWALK_PRE (0) or GIT_TREEWALK_POST (1)
+     */
+    int git_tree_walk(@In Pointer tree, @In int mode, @In TreeWalkCallback callback, @In Pointer payload);
+
+    interface TreeWalkCallback {
+        /**
+         * @param root path of the entry's directory, "" or ending in "/"
+         * @return 0 to continue, 1 to skip a tree's entries (pre-order
+         *     only), negative to stop the walk
+         */
+        @Delegate
+        int invoke(Pointer root, Pointer entry, Pointer payload);
+    }
+}
+
+interface BufOps {
+    /**
+     * Free the memory of a git_buf filled by libgit2; the struct itself is the caller's.
+     */
+    void git_buf_dispose(@In Pointer buf);
+}
+
+interface FilterOps {
+    /**
+     * @param blob the blob, or null to decide from the path's attributes alone
+     * @param mode GIT_FILTER_TO_WORKTREE (0) or GIT_FILTER_TO_ODB (1)
+     * @param opts git_filter_options, see FilteredBlobSpool
+     * @return 0, with out set to null when no filter applies
+     */
+    int git_filter_list_load_ext(
+            @Out PointerByReference out,
+            @In Pointer repo,
+            @In Pointer blob,
+            @In String path,
+            @In int mode,
+            @In Pointer opts);
+
+    /**
+     * Filter the blob into target, a git_writestream, which libgit2 closes but does not free.
+     */
+    int git_filter_list_stream_blob(@In Pointer filters, @In Pointer blob, @In Pointer target);
+
+    void git_filter_list_free(@In Pointer filters);
 }
 
 interface BlobOps {
+    /**
+     * Apply the blob's gitattributes filters, as for a checkout.
+     *
+     * @param out git_buf, zeroed before the call
+     * @param asPath path whose attributes apply
+     * @param opts git_blob_filter_options, see FilteredBlobChannel
+     */
+    int git_blob_filter(@Out Pointer out, @In Pointer blob, @In String asPath, @In Pointer opts);
+
+    int git_blob_filter_options_init(@Out Pointer opts, @In int version);
+
     void git_blob_free(@In Pointer blob);
 
     Pointer git_blob_id(@In Pointer blob);
@@ -138,6 +478,8 @@ interface BlobOps {
 
     int git_blob_lookup(@Out PointerByReference blob, @In Pointer repo, @In Pointer oid);
 
+    Pointer git_blob_owner(@In Pointer blob);
+
     Pointer git_blob_rawcontent(@In Pointer blob);
 
     @u_int64_t
@@ -0,0 +1,163 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import jnr.ffi.Memory;
+import jnr.ffi.Pointer;
+import jnr.ffi.Runtime;
+
+/**
+ * libgit2's global settings, via git_libgit2_opts.
+ *
+ * These are process-wide: they apply to every repository in the JVM, and
+ * the last value set wins. Pack window settings only affect packs mapped
+ * after they are changed, so set them before opening repositories.
+ *
+ * The first call initializes libgit2 and keeps it initialized for the life
+ * of the process, so settings are not lost when the last repository closes.
+ */
+public final class Libgit2Options {
+    // git_libgit2_opt_t
+    static final int GET_MWINDOW_SIZE = 0;
+    static final int SET_MWINDOW_SIZE = 1;
+    static final int GET_MWINDOW_MAPPED_LIMIT = 2;
+    static final int SET_MWINDOW_MAPPED_LIMIT = 3;
+    static final int SET_CACHE_OBJECT_LIMIT = 6;
+    static final int SET_CACHE_MAX_SIZE = 7;
+    static final int ENABLE_CACHING = 8;
+    static final int GET_CACHED_MEMORY = 9;
+    static final int ENABLE_STRICT_HASH_VERIFICATION = 22;
+    static final int GET_MWINDOW_FILE_LIMIT = 29;
+    static final int SET_MWINDOW_FILE_LIMIT = 30;
+
+    // libgit2 has no getter for it; on by default
+    private static volatile boolean strictHashVerification = true;
+
+    private Libgit2Options() {}
+
+    private static final class Holder {
+        private static final Libgit2 LIBGIT = NativeRuntime.acquire();
+    }
+
+    private static Libgit2 git() {
+        return Holder.LIBGIT;
+    }
+
+    private static void check(int code) {
+        if (code < 0) {
+            throw new GitCallException(code, GitOperations.lastError(git()));
+        }
+    }
+
+    private static long getSize(int option) {
+        Runtime runtime = Runtime.getRuntime(git());
+        Pointer out = Memory.allocateDirect(runtime, runtime.addressSize());
+        check(git().git_libgit2_opts(option, out));
+        return out.getAddress(0);
+    }
+
+    private static void setSize(int option, long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Must not be negative: " + value);
+        }
+        check(git().git_libgit2_opts(option, value));
+    }
+
+    /**
+     * Maximum bytes held by the decompressed object cache, shared by all
+     * repositories. libgit2's default is 256 MiB.
+     */
+    public static void setCacheMaxSize(long bytes) {
+        setSize(SET_CACHE_MAX_SIZE, bytes);
+    }
+
+    /**
+     * Objects of this type bigger than this are never cached; 0 disables
+     * caching for the type. By default blobs are not cached, and commits,
+     * trees and tags up to 4 KiB are.
+     */
+    public static void setCacheObjectLimit(GitObject.Type type, long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("Must not be negative: " + bytes);
+        }
+        check(git().git_libgit2_opts(SET_CACHE_OBJECT_LIMIT, type.intValue(), bytes));
+    }
+
+    /**
+     * Turn the object cache on or off entirely.
+     */
+    public static void setCaching(boolean enabled) {
+        check(git().git_libgit2_opts(ENABLE_CACHING, enabled ? 1 : 0));
+    }
+
+    /**
+     * Verify every object's hash when it is read. On by default; turning it
+     * off saves a SHA-1 per object read, for trusted repositories.
+     */
+    public static void setStrictHashVerification(boolean enabled) {
+        check(git().git_libgit2_opts(ENABLE_STRICT_HASH_VERIFICATION, enabled ? 1 : 0));
+        strictHashVerification = enabled;
+    }
+
+    /**
+     * As last set through setStrictHashVerification, for objects read
+     * outside libgit2, see PackedObjectChannel.
+     */
+    static boolean isStrictHashVerification() {
+        return strictHashVerification;
+    }
+
+    /**
+     * Size of each mmap'd window into a pack file.
+     */
+    public static void setMwindowSize(long bytes) {
+        setSize(SET_MWINDOW_SIZE, bytes);
+    }
+
+    public static long getMwindowSize() {
+        return getSize(GET_MWINDOW_SIZE);
+    }
+
+    /**
+     * Total bytes of pack files mapped at once, after which least recently
+     * used windows are unmapped.
+     */
+    public static void setMwindowMappedLimit(long bytes) {
+        setSize(SET_MWINDOW_MAPPED_LIMIT, bytes);
+    }
+
+    public static long getMwindowMappedLimit() {
+        return getSize(GET_MWINDOW_MAPPED_LIMIT);
+    }
+
+    /**
+     * Maximum number of pack files held open at once. 0 means unlimited.
+     */
+    public static void setMwindowFileLimit(long files) {
+        setSize(SET_MWINDOW_FILE_LIMIT, files);
+    }
+
+    public static long getMwindowFileLimit() {
+        return getSize(GET_MWINDOW_FILE_LIMIT);
+    }
+}
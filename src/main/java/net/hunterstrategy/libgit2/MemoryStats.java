@@ -0,0 +1,226 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.util.concurrent.atomic.LongAdder;
+import jnr.ffi.Memory;
+import jnr.ffi.Pointer;
+import jnr.ffi.Runtime;
+
+/**
+ * Live counts of the native resources held by a repository, or by every
+ * repository in the process.
+ *
+ * A resource is counted from the moment it is created until it is freed,
+ * either individually (a blob released by its last channel) or along with
+ * its repository. Byte counts are kept for resources whose native size is
+ * known up front: inflated blobs, objects read whole from the ODB, and the
+ * chunk buffers of streaming reads. They don't include libgit2's own
+ * object cache, see libgit2Cache().
+ */
+public final class MemoryStats {
+    private static final MemoryStats PROCESS = new MemoryStats(null);
+
+    public static enum Kind {
+        REPOSITORY,
+        OBJECT,
+        COMMIT,
+        TREE,
+        TREE_ENTRY,
+        BLOB,
+        CONFIG,
+        ODB,
+        /** a streaming read, see Odb.newReadChannel */
+        ODB_STREAM,
+        /** an object read whole from the ODB, see Odb.newReadChannel */
+        ODB_OBJECT,
+        REVWALK,
+        DIFF,
+        /** the text diff of one file, see Diff.Delta.newPatch */
+        PATCH,
+        /** a blob with its gitattributes filters applied, see Blob.newFilteredChannel */
+        FILTERED_BUFFER
+    }
+
+    private final MemoryStats parent;
+    private final LongAdder[] counts = adders();
+    private final LongAdder[] bytes = adders();
+
+    MemoryStats(MemoryStats parent) {
+        this.parent = parent;
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[Kind.values().length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * A new repository's stats, which also roll up into the process stats.
+     */
+    static MemoryStats forRepository() {
+        return new MemoryStats(PROCESS);
+    }
+
+    /**
+     * @return the stats for every open repository in this process
+     */
+    public static MemoryStats process() {
+        return PROCESS;
+    }
+
+    void opened(Kind kind) {
+        opened(kind, 0);
+    }
+
+    void opened(Kind kind, long nativeBytes) {
+        counts[kind.ordinal()].increment();
+        bytes[kind.ordinal()].add(nativeBytes);
+        if (parent != null) {
+            parent.opened(kind, nativeBytes);
+        }
+    }
+
+    void closed(Kind kind) {
+        closed(kind, 0);
+    }
+
+    void closed(Kind kind, long nativeBytes) {
+        counts[kind.ordinal()].decrement();
+        bytes[kind.ordinal()].add(-nativeBytes);
+        if (parent != null) {
+            parent.closed(kind, nativeBytes);
+        }
+    }
+
+    /**
+     * The repository was freed, and everything it held with it.
+     */
+    void clear() {
+        for (Kind kind : Kind.values()) {
+            long count = counts[kind.ordinal()].sumThenReset();
+            long size = bytes[kind.ordinal()].sumThenReset();
+            if (parent != null) {
+                parent.counts[kind.ordinal()].add(-count);
+                parent.bytes[kind.ordinal()].add(-size);
+            }
+        }
+    }
+
+    /**
+     * @return live resources of this kind
+     */
+    public long getCount(Kind kind) {
+        return counts[kind.ordinal()].sum();
+    }
+
+    /**
+     * @return native bytes held by live resources of this kind
+     */
+    public long getBytes(Kind kind) {
+        return bytes[kind.ordinal()].sum();
+    }
+
+    /**
+     * @return native bytes held by all live resources
+     */
+    public long getTotalBytes() {
+        long total = 0;
+        for (LongAdder adder : bytes) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    /**
+     * libgit2's decompressed object cache, which is shared by every
+     * repository in the process (GIT_OPT_GET_CACHED_MEMORY).
+     *
+     * @return usage, all zero when no repository is open
+     */
+    public static CacheUsage libgit2Cache() {
+        return NativeRuntime.ifInitialized(
+                git -> {
+                    Runtime runtime = Runtime.getRuntime(git);
+                    Pointer out = Memory.allocateDirect(runtime, runtime.addressSize() * 2);
+                    int code = git.git_libgit2_opts(
+                            Libgit2Options.GET_CACHED_MEMORY,
+                            out,
+                            out.slice(runtime.addressSize(), runtime.addressSize()));
+                    if (code < 0) {
+                        throw new GitCallException(code, GitOperations.lastError(git));
+                    }
+                    return new CacheUsage(out.getAddress(0), out.getAddress(runtime.addressSize()));
+                },
+                new CacheUsage(0, 0));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("MemoryStats[");
+        for (Kind kind : Kind.values()) {
+            long count = getCount(kind);
+            if (count != 0) {
+                sb.append(kind).append('=').append(count);
+                long size = getBytes(kind);
+                if (size != 0) {
+                    sb.append(" (").append(size).append(" bytes)");
+                }
+                sb.append(", ");
+            }
+        }
+        return sb.append("total bytes=").append(getTotalBytes()).append(']').toString();
+    }
+
+    public static final class CacheUsage {
+        private final long current;
+        private final long allowed;
+
+        CacheUsage(long current, long allowed) {
+            this.current = current;
+            this.allowed = allowed;
+        }
+
+        /**
+         * @return bytes currently held by the cache
+         */
+        public long getCurrent() {
+            return current;
+        }
+
+        /**
+         * @return the cache's maximum size, see Libgit2Options.setCacheMaxSize
+         */
+        public long getAllowed() {
+            return allowed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("libgit2 cache: %d/%d bytes", current, allowed);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import com.kenai.jffi.MemoryIO;
+import java.nio.ByteBuffer;
+import jnr.ffi.Pointer;
+
+/**
+ * The blob read path and native memory views, JNR version.
+ *
+ * The jar is multi-release: on Java 22 and later, the class of the same
+ * name under src/main/java22 replaces this one and makes these calls
+ * through java.lang.foreign instead. Everything else still goes through
+ * the Libgit2 JNR binding.
+ */
+final class NativeBackend {
+    private NativeBackend() {}
+
+    /**
+     * @return "jnr", or "ffm" for the Java 22 version
+     */
+    static String name() {
+        return "jnr";
+    }
+
+    static long blobRawSize(Libgit2 git, Pointer blob) {
+        return git.git_blob_rawsize(blob);
+    }
+
+    /**
+     * @return a direct buffer over the blob's content, valid until the blob is freed
+     */
+    static ByteBuffer blobContent(Libgit2 git, Pointer blob, int size) {
+        return view(git.git_blob_rawcontent(blob).address(), size);
+    }
+
+    /**
+     * A direct buffer over native memory that someone else owns and frees.
+     */
+    static ByteBuffer view(long address, int length) {
+        return MemoryIO.getInstance().newDirectByteBuffer(address, length);
+    }
+}
@@ -0,0 +1,112 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.util.function.Function;
+import jnr.ffi.LibraryLoader;
+
+/**
+ * Process-wide libgit2 runtime.
+ *
+ * Loading the library through JNR generates a proxy for the entire Libgit2
+ * interface, which is by far the most expensive part of opening a repository.
+ * The proxy is created once, on first use, and shared by every GitOperations.
+ *
+ * libgit2's global state is reference counted separately: each acquire calls
+ * git_libgit2_init and each release calls git_libgit2_shutdown, so the native
+ * library is torn down when the last GitOperations closes. Per-repository state
+ * (owned resources, closed flag) stays in GitOperations.
+ */
+final class NativeRuntime {
+    private static final Object LOCK = new Object();
+    private static int references = 0;
+
+    private NativeRuntime() {}
+
+    /**
+     * Lazy holder so the library is only loaded when a repository is
+     * actually opened, not when this class is initialized.
+     */
+    private static final class Holder {
+        private static final Libgit2 LIBGIT =
+                LibraryLoader.create(Libgit2.class).load("git2");
+    }
+
+    /**
+     * The shared binding. Does not initialize libgit2; callers that make
+     * library calls must hold a reference via acquire().
+     */
+    static Libgit2 library() {
+        return Holder.LIBGIT;
+    }
+
+    static Libgit2 acquire() {
+        Libgit2 libgit = library();
+        synchronized (LOCK) {
+            int code = libgit.git_libgit2_init();
+            if (code < 0) {
+                throw new GitCallException(code, GitOperations.lastError(libgit));
+            }
+            int javacount = ++references;
+            if (code != javacount) {
+                System.err.printf(
+                        "libgit2/binding initialization count mismatch! java/libgit2 %d/%d%n", javacount, code);
+            }
+            return libgit;
+        }
+    }
+
+    static void release() {
+        Libgit2 libgit = library();
+        synchronized (LOCK) {
+            int code = libgit.git_libgit2_shutdown();
+            if (code < 0) {
+                throw new GitCallException(code, GitOperations.lastError(libgit));
+            }
+            int javacount = --references;
+            if (javacount != code) {
+                System.err.println("libgit2/binding shutdown count mismatch!");
+            }
+        }
+    }
+
+    /**
+     * Call into libgit2 only if something already holds it initialized,
+     * without taking a reference of our own. Holds the lock, so the library
+     * can't be shut down during the call.
+     */
+    static <T> T ifInitialized(Function<Libgit2, T> func, T otherwise) {
+        synchronized (LOCK) {
+            return references > 0 ? func.apply(library()) : otherwise;
+        }
+    }
+
+    /**
+     * @return the number of outstanding acquire() calls in this process.
+     */
+    static int references() {
+        synchronized (LOCK) {
+            return references;
+        }
+    }
+}
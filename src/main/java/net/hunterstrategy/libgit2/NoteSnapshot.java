@@ -0,0 +1,222 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+import jnr.ffi.Memory;
+import jnr.ffi.Pointer;
+import jnr.ffi.Runtime;
+import jnr.ffi.byref.PointerByReference;
+
+/**
+ * Every note under a notes reference, loaded in one pass, see
+ * Repository.noteSnapshot().
+ *
+ * Notes are kept ordered by the id of the object they annotate, with ids
+ * packed 20 bytes apiece, so looking one up is a binary search in memory
+ * and holds no native resources. Messages are decoded as UTF-8.
+ *
+ * The snapshot does not change when notes are added or removed; load a
+ * new one.
+ */
+public final class NoteSnapshot {
+    private final String notesRef;
+    private final byte[] annotated;
+    private final byte[] notes;
+    private final String[] messages;
+
+    private NoteSnapshot(String notesRef, byte[] annotated, byte[] notes, String[] messages) {
+        this.notesRef = notesRef;
+        this.annotated = annotated;
+        this.notes = notes;
+        this.messages = messages;
+    }
+
+    /**
+     * @param notesRef e.g. refs/notes/commits, null for the default
+     */
+    static NoteSnapshot load(GitOperations ops, Pointer repo, String notesRef) {
+        Libgit2 git = ops.git();
+        PointerByReference iterPtr = GitOperations.out();
+        int code = git.git_note_iterator_new(iterPtr, repo, notesRef);
+        if (code == GitCallException.GIT_ENOTFOUND) {
+            return new NoteSnapshot(notesRef, new byte[0], new byte[0], new String[0]);
+        }
+        ops.check(code);
+        Pointer iter = iterPtr.getValue();
+
+        Builder builder = new Builder(notesRef);
+        Pointer ids = Memory.allocateDirect(Runtime.getRuntime(git), Oid.RAW_SIZE * 2);
+        Pointer noteId = ids.slice(0, Oid.RAW_SIZE);
+        Pointer annotatedId = ids.slice(Oid.RAW_SIZE, Oid.RAW_SIZE);
+        try {
+            while (true) {
+                code = git.git_note_next(noteId, annotatedId, iter);
+                if (code == GitCallException.GIT_ITEROVER) {
+                    break;
+                }
+                ops.check(code);
+                builder.add(ops, repo, noteId, annotatedId);
+            }
+        } finally {
+            git.git_note_iterator_free(iter);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the notes reference this was loaded from, null for the default
+     */
+    public String getNotesRef() {
+        return notesRef;
+    }
+
+    public int size() {
+        return messages.length;
+    }
+
+    /**
+     * @return the index of the note on an object, or -1
+     */
+    public int indexOf(Oid object) {
+        byte[] raw = object.getRaw();
+        int low = 0;
+        int high = messages.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int offset = mid * Oid.RAW_SIZE;
+            int cmp = Arrays.compareUnsigned(annotated, offset, offset + Oid.RAW_SIZE, raw, 0, Oid.RAW_SIZE);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the note's message on an object, if it has one
+     */
+    public Optional<String> getMessage(Oid object) {
+        int index = indexOf(object);
+        return index < 0 ? Optional.empty() : Optional.of(messages[index]);
+    }
+
+    public boolean hasNote(Oid object) {
+        return indexOf(object) >= 0;
+    }
+
+    /**
+     * @return the object the note at index annotates
+     */
+    public Oid getAnnotatedId(int index) {
+        return Oid.fromRaw(annotated, index * Oid.RAW_SIZE);
+    }
+
+    /**
+     * @return the note's own blob id
+     */
+    public Oid getNoteId(int index) {
+        return Oid.fromRaw(notes, index * Oid.RAW_SIZE);
+    }
+
+    public String getMessage(int index) {
+        return messages[index];
+    }
+
+    /**
+     * Columns grow as notes are read, then are sorted by annotated id.
+     */
+    private static final class Builder {
+        private final String notesRef;
+        private byte[] annotated = new byte[64 * Oid.RAW_SIZE];
+        private byte[] notes = new byte[64 * Oid.RAW_SIZE];
+        private String[] messages = new String[64];
+        private int size;
+
+        private Builder(String notesRef) {
+            this.notesRef = notesRef;
+        }
+
+        private void add(GitOperations ops, Pointer repo, Pointer noteId, Pointer annotatedId) {
+            Libgit2 git = ops.git();
+            if (size == messages.length) {
+                grow();
+            }
+            int i = size;
+            noteId.get(0, notes, i * Oid.RAW_SIZE, Oid.RAW_SIZE);
+            annotatedId.get(0, annotated, i * Oid.RAW_SIZE, Oid.RAW_SIZE);
+
+            // a note is a blob; reading it directly skips git_note_read's second lookup
+            PointerByReference blobPtr = GitOperations.out();
+            ops.check(git.git_blob_lookup(blobPtr, repo, noteId));
+            Pointer blob = blobPtr.getValue();
+            try {
+                long length = git.git_blob_rawsize(blob);
+                byte[] content = new byte[(int) length];
+                git.git_blob_rawcontent(blob).get(0, content, 0, content.length);
+                messages[i] = new String(content, StandardCharsets.UTF_8);
+            } finally {
+                git.git_blob_free(blob);
+            }
+            size++;
+        }
+
+        private void grow() {
+            int capacity = messages.length * 2;
+            annotated = Arrays.copyOf(annotated, capacity * Oid.RAW_SIZE);
+            notes = Arrays.copyOf(notes, capacity * Oid.RAW_SIZE);
+            messages = Arrays.copyOf(messages, capacity);
+        }
+
+        private int compareAnnotated(int a, int b) {
+            int from = a * Oid.RAW_SIZE;
+            int to = b * Oid.RAW_SIZE;
+            return Arrays.compareUnsigned(annotated, from, from + Oid.RAW_SIZE, annotated, to, to + Oid.RAW_SIZE);
+        }
+
+        private NoteSnapshot build() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, this::compareAnnotated);
+
+            byte[] sortedAnnotated = new byte[size * Oid.RAW_SIZE];
+            byte[] sortedNotes = new byte[size * Oid.RAW_SIZE];
+            String[] sortedMessages = new String[size];
+            for (int i = 0; i < size; i++) {
+                int from = order[i];
+                System.arraycopy(annotated, from * Oid.RAW_SIZE, sortedAnnotated, i * Oid.RAW_SIZE, Oid.RAW_SIZE);
+                System.arraycopy(notes, from * Oid.RAW_SIZE, sortedNotes, i * Oid.RAW_SIZE, Oid.RAW_SIZE);
+                sortedMessages[i] = messages[from];
+            }
+            return new NoteSnapshot(notesRef, sortedAnnotated, sortedNotes, sortedMessages);
+        }
+    }
+}
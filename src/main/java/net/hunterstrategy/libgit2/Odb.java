@@ -0,0 +1,211 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import jnr.ffi.Memory;
+import jnr.ffi.Pointer;
+import jnr.ffi.Runtime;
+
+/**
+ * The repository's object database.
+ *
+ * Used to answer "how big is this object" from the object header alone.
+ * Looking up a Blob inflates the entire object, which is wasteful when a
+ * directory listing only needs sizes.
+ */
+public class Odb extends AbstractResource {
+    /** priority of the loose object backend, see addBackend */
+    public static final int LOOSE_PRIORITY = 1;
+    /** priority of the pack file backend, see addBackend */
+    public static final int PACKED_PRIORITY = 2;
+
+    /*
+     * Native out-parameters for header reads, one set per thread:
+     * [0, 8) size_t length, [8, 12) git_object_t type.
+     */
+    private static final ThreadLocal<HeaderScratch> SCRATCH = ThreadLocal.withInitial(HeaderScratch::new);
+
+    private GitOperations ops;
+    private Pointer odb;
+    // indexes of the repository's objects/pack, null if unknown
+    private final PackIndexes packIndexes;
+    // packs are only read directly while libgit2's own backends are the only ones
+    private volatile boolean hasBackends;
+
+    Odb(GitOperations ops, Pointer odb, File packDir) {
+        this.ops = ops;
+        this.odb = odb;
+        this.packIndexes = packDir == null ? null : new PackIndexes(packDir);
+        ops.stats().opened(MemoryStats.Kind.ODB);
+    }
+
+    @Override
+    public Pointer getPointer() {
+        return this.odb;
+    }
+
+    /**
+     * Read an object's size and type without inflating it.
+     *
+     * @param oid object id
+     * @return the header
+     * @throws GitCallException if the object does not exist
+     */
+    public Header readHeader(Oid oid) {
+        HeaderScratch scratch = SCRATCH.get();
+        read(scratch, GitOperations.nativeOid(oid));
+        return new Header(scratch.length(), GitObject.Type.valueOf(scratch.type.getInt(0)));
+    }
+
+    /**
+     * @param oid pointer to a native git_oid, e.g. from git_tree_entry_id
+     * @return the object's inflated size, in bytes
+     */
+    long readSize(Pointer oid) {
+        HeaderScratch scratch = SCRATCH.get();
+        read(scratch, oid);
+        return scratch.length();
+    }
+
+    /**
+     * Open a read-only channel over an object's content.
+     *
+     * Loose objects, and objects stored whole in the repository's packs, are
+     * inflated a chunk at a time as they are read, so memory use doesn't grow
+     * with the object's size. Anything else (deltified objects, objects from
+     * alternates, and every packed object once a backend has been added with
+     * addBackend, so that it is asked first) is inflated once and freed when
+     * the channel is closed; those are counted as ODB_OBJECT in MemoryStats,
+     * with their size, while streamed reads are ODB_STREAM. Either way
+     * positions are longs, so objects over 2 GB work.
+     *
+     * @param oid object id
+     * @return channel, which the caller must close
+     * @throws GitCallException if the object does not exist
+     */
+    public SeekableByteChannel newReadChannel(Oid oid) {
+        return newReadChannel(GitOperations.nativeOid(oid));
+    }
+
+    SeekableByteChannel newReadChannel(Pointer oid) {
+        SeekableByteChannel channel = OdbStreamChannel.open(ops, this.odb, oid);
+        if (channel == null) {
+            channel = openPacked(oid);
+        }
+        if (channel == null) {
+            channel = OdbObjectChannel.open(ops, this.odb, oid);
+        }
+        return channel;
+    }
+
+    private SeekableByteChannel openPacked(Pointer oid) {
+        if (this.packIndexes == null || this.hasBackends) {
+            return null;
+        }
+        byte[] raw = new byte[Oid.RAW_SIZE];
+        oid.get(0, raw, 0, Oid.RAW_SIZE);
+        try {
+            return PackedObjectChannel.open(ops, this.packIndexes, raw, Libgit2Options.isStrictHashVerification());
+        } catch (IOException e) {
+            // e.g. repacked meanwhile; libgit2 will find it wherever it went
+            return null;
+        }
+    }
+
+    /**
+     * Add a Java object store to this object database. It is consulted in
+     * priority order with the loose and packed backends, highest first, by
+     * every lookup through this repository, and closed when the repository
+     * is.
+     *
+     * @param priority e.g. above PACKED_PRIORITY to be asked first
+     */
+    public void addBackend(OdbBackend backend, int priority) {
+        this.hasBackends = true;
+        new OdbBackendAdapter(ops, backend).addTo(ops, this.odb, priority);
+    }
+
+    private void read(HeaderScratch scratch, Pointer oid) {
+        ops.check(ops.git().git_odb_read_header(scratch.length, scratch.type, this.odb, oid));
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (this.packIndexes != null) {
+            this.packIndexes.close();
+        }
+        if (!ops.isClosed()) {
+            ops.call_void(git -> git.git_odb_free(this.odb));
+            ops.stats().closed(MemoryStats.Kind.ODB);
+        }
+    }
+
+    public static final class Header {
+        private final long size;
+        private final GitObject.Type type;
+
+        Header(long size, GitObject.Type type) {
+            this.size = size;
+            this.type = type;
+        }
+
+        /**
+         * @return inflated object size, in bytes
+         */
+        public long getSize() {
+            return size;
+        }
+
+        public GitObject.Type getType() {
+            return type;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (%d bytes)", type, size);
+        }
+    }
+
+    private static final class HeaderScratch {
+        // slices don't keep the allocation reachable on their own
+        private final Pointer memory;
+        private final Pointer length;
+        private final Pointer type;
+
+        private HeaderScratch() {
+            this.memory = Memory.allocateDirect(Runtime.getRuntime(NativeRuntime.library()), 16);
+            this.length = this.memory.slice(0, 8);
+            this.type = this.memory.slice(8, 4);
+        }
+
+        /**
+         * size_t is pointer-sized on every platform libgit2 supports.
+         */
+        private long length() {
+            return length.getAddress(0);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * An object store implemented in Java, added to a repository's object
+ * database with Odb.addBackend().
+ *
+ * libgit2 asks its backends in priority order, highest first, and uses the
+ * first one that has the object. The on-disk backends are at
+ * Odb.LOOSE_PRIORITY and Odb.PACKED_PRIORITY; a backend above those serves
+ * the objects it has before the disk is read, one below is only asked for
+ * objects the repository doesn't have.
+ *
+ * Backends are called from whichever thread reads the repository, and must
+ * be thread safe. They are read-only: writes, lookups by abbreviated id and
+ * iteration go to the other backends.
+ */
+public interface OdbBackend {
+    /**
+     * @return the object, or null if this backend doesn't have it
+     */
+    RawObject read(Oid oid) throws Exception;
+
+    /**
+     * The default reads the whole object.
+     */
+    default boolean exists(Oid oid) throws Exception {
+        return read(oid) != null;
+    }
+
+    /**
+     * Called when libgit2 misses an object everywhere, before it gives up,
+     * in case the store has changed.
+     */
+    default void refresh() throws Exception {}
+
+    /**
+     * An object database the backend was added to was freed. Called once
+     * for each Odb.addBackend().
+     */
+    default void close() throws Exception {}
+
+    /**
+     * An object's inflated content. libgit2 verifies that it hashes to the
+     * id it was read for, unless strict hash verification is turned off.
+     */
+    public static final class RawObject {
+        private final GitObject.Type type;
+        private final ByteBuffer data;
+
+        /**
+         * @param data content from its position to its limit, not copied
+         */
+        public RawObject(GitObject.Type type, ByteBuffer data) {
+            this.type = Objects.requireNonNull(type);
+            this.data = Objects.requireNonNull(data);
+        }
+
+        public GitObject.Type getType() {
+            return type;
+        }
+
+        /**
+         * @return a view of the content
+         */
+        public ByteBuffer getData() {
+            return data.duplicate();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import jnr.ffi.Memory;
+import jnr.ffi.Pointer;
+import jnr.ffi.Runtime;
+import jnr.ffi.annotations.Delegate;
+
+/**
+ * A native git_odb_backend whose callbacks call an OdbBackend.
+ *
+ * libgit2 only holds native pointers to the struct and its callbacks, so
+ * adapters are kept reachable here until libgit2 frees them with the
+ * object database.
+ */
+final class OdbBackendAdapter {
+    private static final Set<OdbBackendAdapter> LIVE = ConcurrentHashMap.newKeySet();
+
+    private static final int GIT_ODB_BACKEND_VERSION = 1;
+    private static final int GIT_ERROR = -1;
+    private static final int GIT_ERROR_ODB = 9;
+
+    /*
+     * git_odb_backend, LP64: [0] version, [8] odb, then one function
+     * pointer per slot: [16] read, [24] read_prefix, [32] read_header,
+     * [40] write, [48] writestream, [56] readstream, [64] exists,
+     * [72] exists_prefix, [80] refresh, [88] foreach, [96] writepack,
+     * [104] writemidx (libgit2 1.2 and later), then freshen and free.
+     */
+    private static final int SIZE = 128;
+    private static final int READ = 16;
+    private static final int EXISTS = 64;
+    private static final int REFRESH = 80;
+
+    public interface ReadCallback {
+        @Delegate
+        int invoke(Pointer data, Pointer length, Pointer type, Pointer backend, Pointer oid);
+    }
+
+    public interface ExistsCallback {
+        @Delegate
+        int invoke(Pointer backend, Pointer oid);
+    }
+
+    public interface RefreshCallback {
+        @Delegate
+        int invoke(Pointer backend);
+    }
+
+    public interface FreeCallback {
+        @Delegate
+        void invoke(Pointer backend);
+    }
+
+    private final Libgit2 git;
+    private final OdbBackend backend;
+    private final Pointer struct;
+    // the closures must stay reachable as long as libgit2 may call them
+    private final ReadCallback read = this::read;
+    private final ExistsCallback exists = this::exists;
+    private final RefreshCallback refresh = this::refresh;
+    private final FreeCallback free = this::free;
+
+    OdbBackendAdapter(GitOperations ops, OdbBackend backend) {
+        this.git = ops.git();
+        this.backend = backend;
+        Runtime runtime = Runtime.getRuntime(git);
+        this.struct = Memory.allocateDirect(runtime, SIZE, true);
+        ops.check(git.git_odb_init_backend(struct, GIT_ODB_BACKEND_VERSION));
+
+        int freeSlot = hasWritemidx(git) ? 120 : 112;
+        struct.putPointer(READ, runtime.getClosureManager().getClosurePointer(ReadCallback.class, read));
+        struct.putPointer(EXISTS, runtime.getClosureManager().getClosurePointer(ExistsCallback.class, exists));
+        struct.putPointer(REFRESH, runtime.getClosureManager().getClosurePointer(RefreshCallback.class, refresh));
+        struct.putPointer(freeSlot, runtime.getClosureManager().getClosurePointer(FreeCallback.class, free));
+    }
+
+    private static boolean hasWritemidx(Libgit2 git) {
+        Pointer version = Memory.allocateDirect(Runtime.getRuntime(git), 12);
+        git.git_libgit2_version(version, version.slice(4), version.slice(8));
+        int major = version.getInt(0);
+        int minor = version.getInt(4);
+        return major > 1 || (major == 1 && minor >= 2);
+    }
+
+    /**
+     * Hand the struct to libgit2, which frees it with the odb.
+     */
+    void addTo(GitOperations ops, Pointer odb, int priority) {
+        LIVE.add(this);
+        int code = git.git_odb_add_backend(odb, struct, priority);
+        if (code < 0) {
+            LIVE.remove(this);
+            ops.check(code);
+        }
+    }
+
+    private int read(Pointer data, Pointer length, Pointer type, Pointer self, Pointer oid) {
+        try {
+            OdbBackend.RawObject object = backend.read(Oid.fromPointer(oid));
+            if (object == null) {
+                return GitCallException.GIT_ENOTFOUND;
+            }
+            ByteBuffer content = object.getData();
+            int size = content.remaining();
+            Pointer buffer = git.git_odb_backend_data_alloc(self, size);
+            if (buffer == null) {
+                return fail(new OutOfMemoryError("Unable to allocate " + size + " bytes"));
+            }
+            byte[] chunk = new byte[Math.min(size, 64 * 1024)];
+            for (long offset = 0; content.hasRemaining(); ) {
+                int n = Math.min(chunk.length, content.remaining());
+                content.get(chunk, 0, n);
+                buffer.put(offset, chunk, 0, n);
+                offset += n;
+            }
+            data.putPointer(0, buffer);
+            length.putAddress(0, size);
+            type.putInt(0, object.getType().intValue());
+            return 0;
+        } catch (Throwable t) {
+            return fail(t);
+        }
+    }
+
+    private int exists(Pointer self, Pointer oid) {
+        try {
+            return backend.exists(Oid.fromPointer(oid)) ? 1 : 0;
+        } catch (Throwable t) {
+            fail(t);
+            return 0;
+        }
+    }
+
+    private int refresh(Pointer self) {
+        try {
+            backend.refresh();
+            return 0;
+        } catch (Throwable t) {
+            return fail(t);
+        }
+    }
+
+    private void free(Pointer self) {
+        LIVE.remove(this);
+        try {
+            backend.close();
+        } catch (Throwable t) {
+            // nowhere to report it, libgit2 is freeing the odb
+        }
+    }
+
+    /**
+     * Exceptions can't cross into libgit2; report them as its last error.
+     */
+    private int fail(Throwable t) {
+        git.git_error_set_str(GIT_ERROR_ODB, backend.getClass().getName() + ": " + t);
+        return GIT_ERROR;
+    }
+}
@@ -0,0 +1,131 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import jnr.ffi.Pointer;
+import jnr.ffi.byref.PointerByReference;
+
+/**
+ * Reads an object inflated by git_odb_read, for objects the ODB can't stream
+ * (packed objects have to be resolved against their delta bases in full).
+ *
+ * Unlike Blob.getRawContent, positions are longs, so objects over 2 GB read
+ * correctly, and the inflated copy is freed as soon as the channel closes
+ * rather than when the repository does.
+ */
+class OdbObjectChannel implements SeekableByteChannel {
+    private final GitOperations ops;
+    private final long size;
+    private Pointer object;
+    private Pointer data;
+    private long position;
+
+    static OdbObjectChannel open(GitOperations ops, Pointer odb, Pointer oid) {
+        PointerByReference objectPtr = GitOperations.out();
+        ops.check(ops.git().git_odb_read(objectPtr, odb, oid));
+        return new OdbObjectChannel(ops, objectPtr.getValue());
+    }
+
+    private OdbObjectChannel(GitOperations ops, Pointer object) {
+        this.ops = ops;
+        this.object = object;
+        this.data = ops.git().git_odb_object_data(object);
+        this.size = ops.git().git_odb_object_size(object);
+        ops.stats().opened(MemoryStats.Kind.ODB_OBJECT, size);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return object != null;
+    }
+
+    private void checkClosed() throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        checkClosed();
+        if (position >= size) {
+            return -1;
+        }
+        int n = (int) Math.min(dst.remaining(), size - position);
+        if (dst.hasArray()) {
+            data.get(position, dst.array(), dst.arrayOffset() + dst.position(), n);
+            dst.position(dst.position() + n);
+        } else {
+            dst.put(NativeBackend.view(data.address() + position, n));
+        }
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        checkClosed();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        checkClosed();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position: " + newPosition);
+        }
+        this.position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        checkClosed();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (object != null && !ops.isClosed()) {
+            ops.git().git_odb_object_free(object);
+            ops.stats().closed(MemoryStats.Kind.ODB_OBJECT, size);
+        }
+        object = null;
+        data = null;
+    }
+}
@@ -0,0 +1,223 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import jnr.ffi.Memory;
+import jnr.ffi.Pointer;
+import jnr.ffi.Runtime;
+import jnr.ffi.byref.PointerByReference;
+
+/**
+ * Reads a loose object through a git_odb_stream, inflating one chunk at a
+ * time, so memory use is bounded by CHUNK_SIZE no matter how big the blob is.
+ *
+ * The native stream only reads forward. Seeking forward skips through the
+ * stream; seeking backward past the current chunk reopens it.
+ */
+class OdbStreamChannel implements SeekableByteChannel {
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private final GitOperations ops;
+    private final Pointer odb;
+    // len/type out-parameters and the oid copy; oid is a slice of it
+    private final Pointer scratch;
+    private final Pointer oid;
+    private final long size;
+
+    // native chunk and a ByteBuffer view of it: [0, limit) is what the last
+    // stream read produced, position is the next unread byte
+    private final Pointer chunk;
+    private final ByteBuffer window;
+
+    private Pointer stream;
+    private long streamPosition;
+    private long position;
+
+    /**
+     * @return the channel, or null if the object can't be streamed (e.g. it is packed)
+     */
+    static OdbStreamChannel open(GitOperations ops, Pointer odb, Pointer oid) {
+        Runtime runtime = Runtime.getRuntime(NativeRuntime.library());
+        Pointer scratch = Memory.allocateDirect(runtime, 16 + Oid.RAW_SIZE);
+        Pointer oidCopy = scratch.slice(16, Oid.RAW_SIZE);
+        oidCopy.put(0, readOid(oid), 0, Oid.RAW_SIZE);
+
+        Pointer stream = openStream(ops, odb, oidCopy, scratch);
+        if (stream == null) {
+            return null;
+        }
+        return new OdbStreamChannel(ops, odb, scratch, oidCopy, stream, scratch.getAddress(0));
+    }
+
+    private static byte[] readOid(Pointer oid) {
+        byte[] raw = new byte[Oid.RAW_SIZE];
+        oid.get(0, raw, 0, Oid.RAW_SIZE);
+        return raw;
+    }
+
+    private static Pointer openStream(GitOperations ops, Pointer odb, Pointer oid, Pointer scratch) {
+        PointerByReference streamPtr = GitOperations.out();
+        int code = ops.git().git_odb_open_rstream(streamPtr, scratch.slice(0, 8), scratch.slice(8, 4), odb, oid);
+        return code < 0 ? null : streamPtr.getValue();
+    }
+
+    private OdbStreamChannel(GitOperations ops, Pointer odb, Pointer scratch, Pointer oid, Pointer stream, long size) {
+        this.ops = ops;
+        this.odb = odb;
+        this.scratch = scratch;
+        this.oid = oid;
+        this.stream = stream;
+        this.size = size;
+        this.chunk = Memory.allocateDirect(Runtime.getRuntime(NativeRuntime.library()), CHUNK_SIZE);
+        this.window = NativeBackend.view(chunk.address(), CHUNK_SIZE);
+        this.window.limit(0);
+        ops.stats().opened(MemoryStats.Kind.ODB_STREAM, CHUNK_SIZE);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return stream != null;
+    }
+
+    private void checkClosed() throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        checkClosed();
+        if (position >= size) {
+            return -1;
+        }
+        seekStream();
+
+        int total = 0;
+        while (dst.hasRemaining() && position < size) {
+            if (!window.hasRemaining() && !fill()) {
+                break;
+            }
+            int n = Math.min(dst.remaining(), window.remaining());
+            int limit = window.limit();
+            window.limit(window.position() + n);
+            dst.put(window);
+            window.limit(limit);
+            position += n;
+            total += n;
+        }
+        return total == 0 ? -1 : total;
+    }
+
+    /**
+     * Line the stream up with position.
+     */
+    private void seekStream() throws IOException {
+        long windowStart = streamPosition - window.limit();
+        if (position >= windowStart && position <= streamPosition) {
+            window.position((int) (position - windowStart));
+            return;
+        }
+        if (position < windowStart) {
+            reopen();
+        }
+        while (streamPosition < position) {
+            if (!fill()) {
+                return;
+            }
+        }
+        window.position((int) (position - (streamPosition - window.limit())));
+    }
+
+    private void reopen() throws IOException {
+        ops.git().git_odb_stream_free(stream);
+        stream = openStream(ops, odb, oid, scratch);
+        if (stream == null) {
+            throw new IOException("Unable to reopen object stream: " + GitOperations.lastError(ops.git()));
+        }
+        streamPosition = 0;
+        window.limit(0);
+    }
+
+    /**
+     * Read the next chunk from the stream into the window.
+     *
+     * @return false at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        int read = ops.git().git_odb_stream_read(stream, chunk, CHUNK_SIZE);
+        if (read < 0) {
+            throw new IOException(new GitCallException(read, GitOperations.lastError(ops.git())));
+        }
+        window.position(0);
+        window.limit(read);
+        streamPosition += read;
+        return read > 0;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        checkClosed();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        checkClosed();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position: " + newPosition);
+        }
+        this.position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        checkClosed();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (stream != null && !ops.isClosed()) {
+            ops.git().git_odb_stream_free(stream);
+            ops.stats().closed(MemoryStats.Kind.ODB_STREAM, CHUNK_SIZE);
+        }
+        stream = null;
+    }
+}
@@ -0,0 +1,191 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.util.Arrays;
+import java.util.Locale;
+import jnr.ffi.Pointer;
+
+/**
+ * An immutable git object id (SHA-1, 20 bytes).
+ *
+ * Copied straight out of the native git_oid, so comparing and hashing never
+ * goes through hex Strings. The hex form is only built when toString() is
+ * first called, and then cached.
+ */
+public final class Oid implements Comparable<Oid> {
+    public static final int RAW_SIZE = 20;
+    public static final int HEX_SIZE = RAW_SIZE * 2;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final byte[] id;
+    private final int hash;
+    private String hex;
+
+    private Oid(byte[] id) {
+        this.id = id;
+        // ids are uniformly distributed already, so the leading bytes make a good hash
+        this.hash = ((id[0] & 0xff) << 24) | ((id[1] & 0xff) << 16) | ((id[2] & 0xff) << 8) | (id[3] & 0xff);
+    }
+
+    /**
+     * Copy a native git_oid.
+     *
+     * @param oid pointer to a git_oid, may be null
+     * @return the id, or null if the pointer was null
+     */
+    static Oid fromPointer(Pointer oid) {
+        if (oid == null) {
+            return null;
+        }
+        byte[] raw = new byte[RAW_SIZE];
+        oid.get(0, raw, 0, RAW_SIZE);
+        return new Oid(raw);
+    }
+
+    /**
+     * @param raw 20 raw id bytes, copied
+     */
+    public static Oid fromRaw(byte[] raw) {
+        return fromRaw(raw, 0);
+    }
+
+    /**
+     * @param raw array holding 20 raw id bytes starting at offset, copied
+     */
+    public static Oid fromRaw(byte[] raw, int offset) {
+        if (raw.length - offset < RAW_SIZE) {
+            throw new IllegalArgumentException("Object id must be " + RAW_SIZE + " bytes");
+        }
+        return new Oid(Arrays.copyOfRange(raw, offset, offset + RAW_SIZE));
+    }
+
+    /**
+     * @param hex full 40 character hexadecimal id
+     */
+    public static Oid fromString(String hex) {
+        if (hex == null || hex.length() != HEX_SIZE) {
+            throw new IllegalArgumentException("Not a full object id: " + hex);
+        }
+        byte[] raw = new byte[RAW_SIZE];
+        for (int i = 0; i < RAW_SIZE; i++) {
+            int hi = Character.digit(hex.charAt(i * 2), 16);
+            int lo = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("Not a full object id: " + hex);
+            }
+            raw[i] = (byte) ((hi << 4) | lo);
+        }
+        Oid oid = new Oid(raw);
+        oid.hex = hex.toLowerCase(Locale.ROOT);
+        return oid;
+    }
+
+    /**
+     * @return a copy of the raw id bytes
+     */
+    public byte[] getRaw() {
+        return id.clone();
+    }
+
+    /**
+     * Copy the raw id bytes into dst, without allocating.
+     */
+    public void copyTo(byte[] dst, int offset) {
+        System.arraycopy(id, 0, dst, offset, RAW_SIZE);
+    }
+
+    /**
+     * Copy the raw id bytes into native memory, e.g. a git_oid out-parameter.
+     */
+    void copyTo(Pointer dst) {
+        dst.put(0, id, 0, RAW_SIZE);
+    }
+
+    /**
+     * @return true when this id matches the raw bytes at offset, without allocating
+     */
+    public boolean equalsRaw(byte[] raw, int offset) {
+        return Arrays.equals(id, 0, RAW_SIZE, raw, offset, offset + RAW_SIZE);
+    }
+
+    /**
+     * @return true for the all-zero id libgit2 uses as "no object"
+     */
+    public boolean isZero() {
+        for (byte b : id) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param length number of hex characters, as in git's abbreviated ids
+     */
+    public String abbreviate(int length) {
+        return toString().substring(0, Math.min(length, HEX_SIZE));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj instanceof Oid) {
+            Oid other = (Oid) obj;
+            return hash == other.hash && Arrays.equals(id, other.id);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Unsigned byte order, which matches the order of the hex strings.
+     */
+    @Override
+    public int compareTo(Oid other) {
+        return Arrays.compareUnsigned(id, other.id);
+    }
+
+    @Override
+    public String toString() {
+        String h = this.hex;
+        if (h == null) {
+            char[] chars = new char[HEX_SIZE];
+            for (int i = 0; i < RAW_SIZE; i++) {
+                chars[i * 2] = HEX[(id[i] >> 4) & 0xf];
+                chars[i * 2 + 1] = HEX[id[i] & 0xf];
+            }
+            h = new String(chars);
+            this.hex = h;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,220 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The version 2 pack indexes of one pack directory, for
+ * PackedObjectChannel. Each index is opened once, with its fanout table
+ * read into memory, and searched with positional reads, so finding an
+ * object costs no file opens. The directory is listed again only when its
+ * modification time changes, as it does when packs are added or removed.
+ *
+ * Indexes are read, never mapped. A multi-pack-index doesn't replace the
+ * packs' own .idx files, so those packs are still found here; objects in
+ * alternates are not, and are left to libgit2.
+ */
+final class PackIndexes implements AutoCloseable {
+    private static final int IDX_MAGIC = 0xff744f63;
+    private static final int IDX_HEADER = 8 + 256 * 4;
+
+    private final File packDir;
+    private long modified = Long.MIN_VALUE;
+    // by .idx file name
+    private Map<String, Index> indexes = new HashMap<>();
+    private boolean closed;
+
+    /**
+     * Where an object is in a pack.
+     */
+    static final class Location {
+        final File pack;
+        final long offset;
+
+        private Location(File pack, long offset) {
+            this.pack = pack;
+            this.offset = offset;
+        }
+    }
+
+    private static final class Index {
+        private final File pack;
+        private final FileChannel idx;
+        private final int[] fanout;
+
+        private Index(File pack, FileChannel idx, int[] fanout) {
+            this.pack = pack;
+            this.idx = idx;
+            this.fanout = fanout;
+        }
+
+        /**
+         * @return the object's offset in the pack, or -1 if this index doesn't list it
+         */
+        private long find(byte[] oid) throws IOException {
+            int first = oid[0] & 0xff;
+            int low = first == 0 ? 0 : fanout[first - 1];
+            int high = fanout[first] - 1;
+            long count = fanout[255] & 0xffffffffL;
+
+            ByteBuffer id = ByteBuffer.allocate(Oid.RAW_SIZE);
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                id.clear();
+                readFully(idx, id, IDX_HEADER + (long) mid * Oid.RAW_SIZE);
+                int cmp = Arrays.compareUnsigned(id.array(), oid);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    long offsets = IDX_HEADER + count * (Oid.RAW_SIZE + 4);
+                    int offset = readFully(idx, offsets + (long) mid * 4, 4).getInt(0);
+                    if (offset >= 0) {
+                        return offset;
+                    }
+                    long large = offsets + count * 4 + (long) (offset & 0x7fffffff) * 8;
+                    return readFully(idx, large, 8).getLong(0);
+                }
+            }
+            return -1;
+        }
+    }
+
+    PackIndexes(File packDir) {
+        this.packDir = packDir;
+    }
+
+    /**
+     * @param oid raw object id
+     * @return every pack listing the object, usually one
+     */
+    synchronized List<Location> find(byte[] oid) throws IOException {
+        if (closed) {
+            return List.of();
+        }
+        refresh();
+        List<Location> found = new ArrayList<>(1);
+        for (Index index : indexes.values()) {
+            long offset = index.find(oid);
+            if (offset >= 0) {
+                found.add(new Location(index.pack, offset));
+            }
+        }
+        return found;
+    }
+
+    private void refresh() throws IOException {
+        long lastModified = packDir.lastModified();
+        if (lastModified == modified) {
+            return;
+        }
+        File[] files = packDir.listFiles((dir, name) -> name.endsWith(".idx"));
+        Map<String, Index> current = new HashMap<>();
+        for (File file : files == null ? new File[0] : files) {
+            Index index = indexes.remove(file.getName());
+            if (index == null) {
+                index = open(file);
+            }
+            if (index != null) {
+                current.put(file.getName(), index);
+            }
+        }
+        // packs that went away, e.g. in a repack
+        for (Index gone : indexes.values()) {
+            gone.idx.close();
+        }
+        this.indexes = current;
+        this.modified = lastModified;
+    }
+
+    /**
+     * @return the index, or null if it isn't a version 2 index or has no pack
+     */
+    private Index open(File file) throws IOException {
+        String name = file.getName();
+        File pack = new File(packDir, name.substring(0, name.length() - 4) + ".pack");
+        if (!pack.isFile()) {
+            return null;
+        }
+        FileChannel idx = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = readFully(idx, 0, IDX_HEADER);
+            if (header.getInt(0) != IDX_MAGIC || header.getInt(4) != 2) {
+                idx.close();
+                return null;
+            }
+            int[] fanout = new int[256];
+            header.position(8);
+            header.asIntBuffer().get(fanout);
+            return new Index(pack, idx, fanout);
+        } catch (IOException | RuntimeException e) {
+            idx.close();
+            throw e;
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel file, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        readFully(file, buf, position);
+        return buf;
+    }
+
+    private static void readFully(FileChannel file, ByteBuffer buf, long position) throws IOException {
+        int start = buf.position();
+        while (buf.hasRemaining()) {
+            int read = file.read(buf, position + buf.position() - start);
+            if (read < 0) {
+                throw new EOFException("Truncated pack index");
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        IOException failure = null;
+        for (Index index : indexes.values()) {
+            try {
+                index.idx.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        indexes.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads an object stored whole in a pack file, inflating it one chunk at a
+ * time straight from the pack, so memory use is bounded by CHUNK_SIZE plus
+ * zlib's window no matter how big the object is. libgit2 can only stream
+ * loose objects; git stores large blobs whole (not as deltas), so this
+ * covers the objects where it matters.
+ *
+ * Packs are found through the Odb's PackIndexes. Deltified objects, and
+ * anything else this can't find, are left to git_odb_read, see
+ * OdbObjectChannel. With strict hash verification on, as it is by default,
+ * the content is hashed as it is inflated, and the read that reaches the
+ * end of an object that doesn't match its id fails, as libgit2's own reads
+ * would.
+ *
+ * Like OdbStreamChannel, seeking backward restarts inflation from the start
+ * of the object.
+ */
+class PackedObjectChannel implements SeekableByteChannel {
+    static final int CHUNK_SIZE = OdbStreamChannel.CHUNK_SIZE;
+
+    // OBJ_COMMIT, OBJ_TREE, OBJ_BLOB and OBJ_TAG; 6 and 7 are deltas
+    private static final int MAX_WHOLE_TYPE = 4;
+    private static final String[] TYPE_NAMES = {null, "commit", "tree", "blob", "tag"};
+
+    private final GitOperations ops;
+    private final FileChannel pack;
+    private final long dataStart;
+    private final long size;
+    private final Inflater inflater = new Inflater();
+    private final ByteBuffer input = ByteBuffer.allocate(CHUNK_SIZE);
+    private ByteBuffer skip;
+
+    // null unless hashes are verified
+    private final byte[] oid;
+    private final byte[] hashHeader;
+    private final MessageDigest digest;
+    private boolean verified;
+    // stays set, every later read fails too
+    private boolean corrupt;
+
+    // next pack offset to read compressed input from
+    private long inputPosition;
+    // bytes inflated so far
+    private long inflated;
+    private long position;
+    private boolean closed;
+
+    /**
+     * @param oid raw object id
+     * @param verify whether to check the content against oid
+     * @return the channel, or null if the object isn't stored whole in one of the packs
+     */
+    static PackedObjectChannel open(GitOperations ops, PackIndexes indexes, byte[] oid, boolean verify)
+            throws IOException {
+        for (PackIndexes.Location location : indexes.find(oid)) {
+            FileChannel pack = FileChannel.open(location.pack.toPath(), StandardOpenOption.READ);
+            try {
+                PackedObjectChannel channel = open(ops, pack, location.offset, verify ? oid : null);
+                if (channel != null) {
+                    return channel;
+                }
+            } catch (IOException | RuntimeException e) {
+                pack.close();
+                throw e;
+            }
+            // a delta here, another pack may still hold it whole
+            pack.close();
+        }
+        return null;
+    }
+
+    private static PackedObjectChannel open(GitOperations ops, FileChannel pack, long offset, byte[] oid)
+            throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(16);
+        pack.read(header, offset);
+        header.flip();
+        int c = header.get() & 0xff;
+        int type = (c >> 4) & 7;
+        long size = c & 0x0f;
+        int shift = 4;
+        while ((c & 0x80) != 0) {
+            if (!header.hasRemaining()) {
+                throw new EOFException("Truncated pack entry header at " + offset);
+            }
+            c = header.get() & 0xff;
+            size |= (long) (c & 0x7f) << shift;
+            shift += 7;
+        }
+        if (type < 1 || type > MAX_WHOLE_TYPE) {
+            return null;
+        }
+        return new PackedObjectChannel(ops, pack, offset + header.position(), size, type, oid);
+    }
+
+    private PackedObjectChannel(GitOperations ops, FileChannel pack, long dataStart, long size, int type, byte[] oid) {
+        this.ops = ops;
+        this.pack = pack;
+        this.dataStart = dataStart;
+        this.size = size;
+        this.inputPosition = dataStart;
+        this.input.limit(0);
+        this.oid = oid;
+        if (oid != null) {
+            // git hashes "<type> <size>\0" followed by the content
+            this.hashHeader = (TYPE_NAMES[type] + " " + size + "\0").getBytes(StandardCharsets.US_ASCII);
+            this.digest = sha1();
+            this.digest.update(hashHeader);
+        } else {
+            this.hashHeader = null;
+            this.digest = null;
+        }
+        ops.stats().opened(MemoryStats.Kind.ODB_STREAM, CHUNK_SIZE);
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is always available", e);
+        }
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return !closed;
+    }
+
+    private void checkClosed() throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        checkClosed();
+        if (position >= size) {
+            return -1;
+        }
+        if (position < inflated) {
+            restart();
+        }
+        skipTo(position);
+
+        int total = 0;
+        while (dst.hasRemaining() && position < size) {
+            int n = inflate(dst);
+            if (n == 0) {
+                break;
+            }
+            position += n;
+            total += n;
+        }
+        if (digest != null && inflated == size && !verified) {
+            // run zlib to the end of the stream, so the hash is checked
+            // before the last of the content is handed out
+            if (inflate(ByteBuffer.allocate(1)) > 0) {
+                // more content than the entry header said
+                verify();
+            }
+        }
+        return total == 0 ? -1 : total;
+    }
+
+    private void restart() {
+        inflater.reset();
+        input.limit(0);
+        inputPosition = dataStart;
+        inflated = 0;
+        if (digest != null) {
+            digest.reset();
+            digest.update(hashHeader);
+            verified = false;
+        }
+    }
+
+    private void skipTo(long target) throws IOException {
+        if (inflated < target && skip == null) {
+            skip = ByteBuffer.allocate(CHUNK_SIZE);
+        }
+        while (inflated < target) {
+            skip.clear();
+            skip.limit((int) Math.min(CHUNK_SIZE, target - inflated));
+            if (inflate(skip) == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Inflate into out, reading compressed input from the pack as needed.
+     *
+     * @return bytes inflated, 0 at the end of the object
+     */
+    private int inflate(ByteBuffer out) throws IOException {
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    input.clear();
+                    int read = pack.read(input, inputPosition);
+                    if (read < 0) {
+                        throw new EOFException("Truncated pack entry");
+                    }
+                    inputPosition += read;
+                    input.flip();
+                    inflater.setInput(input);
+                }
+                int n = inflater.inflate(out);
+                if (n > 0) {
+                    inflated += n;
+                    if (digest != null) {
+                        ByteBuffer produced = out.duplicate();
+                        produced.limit(out.position());
+                        produced.position(out.position() - n);
+                        digest.update(produced);
+                        if (inflater.finished()) {
+                            verify();
+                        }
+                    }
+                    return n;
+                }
+                if (inflater.needsDictionary()) {
+                    throw new IOException("Unexpected zlib dictionary in pack entry");
+                }
+            }
+            if (digest != null) {
+                verify();
+            }
+            return 0;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt pack entry", e);
+        }
+    }
+
+    private void verify() throws IOException {
+        if (!verified) {
+            corrupt = inflated != size || !Arrays.equals(digest.digest(), oid);
+            verified = true;
+        }
+        if (corrupt) {
+            throw new IOException("Object hash mismatch for " + Oid.fromRaw(oid, 0));
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        checkClosed();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        checkClosed();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position: " + newPosition);
+        }
+        this.position = newPosition;
+        return this;
+    }
+
+    @Override
+    public synchronized long size() throws IOException {
+        checkClosed();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        inflater.end();
+        pack.close();
+        ops.stats().closed(MemoryStats.Kind.ODB_STREAM, CHUNK_SIZE);
+    }
+}
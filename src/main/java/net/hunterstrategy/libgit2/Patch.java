@@ -0,0 +1,256 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import jnr.ffi.Pointer;
+import jnr.ffi.byref.PointerByReference;
+
+/**
+ * The text diff of one file in a Diff, see Diff.Delta.newPatch().
+ *
+ * Hunks and lines are read from libgit2 as they are iterated, and line
+ * content is copied out one line at a time, so a large change is never
+ * held on the Java heap as a whole.
+ */
+public class Patch extends AbstractResource implements Iterable<Patch.Hunk> {
+    /*
+     * git_diff_hunk: [0] old_start, [4] old_lines, [8] new_start,
+     * [12] new_lines, [16] header_len, [24] header.
+     * git_diff_line: [0] origin, [4] old_lineno, [8] new_lineno,
+     * [12] num_lines, [16] content_len, [24] content_offset, [32] content.
+     */
+    private static final int HUNK_HEADER = 24;
+
+    private final GitOperations ops;
+    private final Repository owner;
+    // null for an unmodified delta, which has no text diff
+    private final Pointer patch;
+    private boolean closed;
+
+    static Patch fromDiff(GitOperations ops, Diff diff, Repository owner, long index) {
+        PointerByReference patchPtr = GitOperations.out();
+        ops.check(ops.git().git_patch_from_diff(patchPtr, diff.getPointer(), index));
+        Patch patch = new Patch(ops, patchPtr.getValue(), owner);
+        owner.addOwnership(patch);
+        return patch;
+    }
+
+    private Patch(GitOperations ops, Pointer patch, Repository owner) {
+        this.ops = ops;
+        this.patch = patch;
+        this.owner = owner;
+        ops.stats().opened(MemoryStats.Kind.PATCH);
+    }
+
+    @Override
+    public Pointer getPointer() {
+        return this.patch;
+    }
+
+    public boolean isBinary() {
+        if (patch == null) {
+            return false;
+        }
+        return (ops.git().git_patch_get_delta(patch).getInt(4) & Diff.GIT_DIFF_FLAG_BINARY) != 0;
+    }
+
+    public long getHunkCount() {
+        return patch == null ? 0 : ops.git().git_patch_num_hunks(patch);
+    }
+
+    public Hunk getHunk(long index) {
+        if (index < 0 || index >= getHunkCount()) {
+            throw new IndexOutOfBoundsException("Hunk " + index);
+        }
+        PointerByReference hunkPtr = GitOperations.out();
+        ops.check(ops.git().git_patch_get_hunk(hunkPtr, null, patch, index));
+        return new Hunk(index, hunkPtr.getValue());
+    }
+
+    @Override
+    public Iterator<Hunk> iterator() {
+        return new Iterator<>() {
+            private final long count = getHunkCount();
+            private long index;
+
+            @Override
+            public boolean hasNext() {
+                return index < count;
+            }
+
+            @Override
+            public Hunk next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getHunk(index++);
+            }
+        };
+    }
+
+    @Override
+    public synchronized void close() throws Exception {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        owner.releaseOwnership(this);
+        if (!ops.isClosed()) {
+            if (patch != null) {
+                ops.call_void(git -> git.git_patch_free(this.patch));
+            }
+            ops.stats().closed(MemoryStats.Kind.PATCH);
+        }
+    }
+
+    public final class Hunk implements Iterable<Line> {
+        private final long index;
+        private final int oldStart;
+        private final int oldLines;
+        private final int newStart;
+        private final int newLines;
+        private final String header;
+
+        private Hunk(long index, Pointer hunk) {
+            this.index = index;
+            this.oldStart = hunk.getInt(0);
+            this.oldLines = hunk.getInt(4);
+            this.newStart = hunk.getInt(8);
+            this.newLines = hunk.getInt(12);
+            this.header = hunk.getString(HUNK_HEADER, Math.toIntExact(hunk.getAddress(16)), Charset.defaultCharset());
+        }
+
+        public int getOldStart() {
+            return oldStart;
+        }
+
+        public int getOldLines() {
+            return oldLines;
+        }
+
+        public int getNewStart() {
+            return newStart;
+        }
+
+        public int getNewLines() {
+            return newLines;
+        }
+
+        /**
+         * @return e.g. "@@ -1,2 +1,3 @@\n"
+         */
+        public String getHeader() {
+            return header;
+        }
+
+        public int getLineCount() {
+            int count = ops.git().git_patch_num_lines_in_hunk(patch, index);
+            ops.check(count);
+            return count;
+        }
+
+        public Line getLine(int line) {
+            if (line < 0 || line >= getLineCount()) {
+                throw new IndexOutOfBoundsException("Line " + line);
+            }
+            PointerByReference linePtr = GitOperations.out();
+            ops.check(ops.git().git_patch_get_line_in_hunk(linePtr, patch, index, line));
+            return new Line(linePtr.getValue());
+        }
+
+        @Override
+        public Iterator<Line> iterator() {
+            return new Iterator<>() {
+                private final int count = getLineCount();
+                private int line;
+
+                @Override
+                public boolean hasNext() {
+                    return line < count;
+                }
+
+                @Override
+                public Line next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return getLine(line++);
+                }
+            };
+        }
+    }
+
+    public static final class Line {
+        private final char origin;
+        private final int oldLineNumber;
+        private final int newLineNumber;
+        private final byte[] content;
+
+        private Line(Pointer line) {
+            this.origin = (char) line.getByte(0);
+            this.oldLineNumber = line.getInt(4);
+            this.newLineNumber = line.getInt(8);
+            this.content = new byte[Math.toIntExact(line.getAddress(16))];
+            if (content.length > 0) {
+                line.getPointer(32).get(0, content, 0, content.length);
+            }
+        }
+
+        /**
+         * @return ' ' context, '+' added, '-' deleted, or one of the
+         *     GIT_DIFF_LINE_* markers such as '=' and '&gt;' for end of
+         *     file newline changes
+         */
+        public char getOrigin() {
+            return origin;
+        }
+
+        /**
+         * @return line number in the old file, -1 for an added line
+         */
+        public int getOldLineNumber() {
+            return oldLineNumber;
+        }
+
+        /**
+         * @return line number in the new file, -1 for a deleted line
+         */
+        public int getNewLineNumber() {
+            return newLineNumber;
+        }
+
+        /**
+         * @return the line as stored, including its newline if it has one
+         */
+        public byte[] getRawContent() {
+            return content.clone();
+        }
+
+        public String getContent(Charset charset) {
+            return new String(content, charset);
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+import jnr.ffi.Pointer;
+import jnr.ffi.byref.PointerByReference;
+
+/**
+ * Every reference in a repository, loaded in one pass, see
+ * Repository.refSnapshot().
+ *
+ * Each reference is resolved and peeled once while loading: its target,
+ * and the commit and tree it ends up at through annotated tags. The
+ * results are kept in flat arrays ordered by name, with raw ids packed
+ * 20 bytes apiece, so that looking up a reference is a binary search
+ * and holds no native resources. Ids are only turned into Oid objects
+ * when asked for.
+ *
+ * The snapshot does not change when references are updated; load a new
+ * one.
+ */
+public final class RefSnapshot {
+    private static final byte SYMBOLIC = 1;
+    private static final byte ANNOTATED_TAG = 2;
+    private static final byte HAS_TARGET = 4;
+    private static final byte HAS_COMMIT = 8;
+    private static final byte HAS_TREE = 16;
+
+    private final String[] names;
+    // symbolic target name, null for direct references
+    private final String[] symbolicTargets;
+    private final byte[] flags;
+    private final byte[] targets;
+    private final byte[] commits;
+    private final byte[] trees;
+
+    private RefSnapshot(
+            String[] names, String[] symbolicTargets, byte[] flags, byte[] targets, byte[] commits, byte[] trees) {
+        this.names = names;
+        this.symbolicTargets = symbolicTargets;
+        this.flags = flags;
+        this.targets = targets;
+        this.commits = commits;
+        this.trees = trees;
+    }
+
+    /**
+     * @param glob fnmatch pattern on full reference names, null for all
+     */
+    static RefSnapshot load(GitOperations ops, Pointer repo, String glob) {
+        Libgit2 git = ops.git();
+        PointerByReference iterPtr = GitOperations.out();
+        if (glob == null) {
+            ops.check(git.git_reference_iterator_new(iterPtr, repo));
+        } else {
+            ops.check(git.git_reference_iterator_glob_new(iterPtr, repo, glob));
+        }
+        Pointer iter = iterPtr.getValue();
+
+        Builder builder = new Builder();
+        try {
+            while (true) {
+                PointerByReference refPtr = GitOperations.out();
+                int code = git.git_reference_next(refPtr, iter);
+                if (code == GitCallException.GIT_ITEROVER) {
+                    break;
+                }
+                ops.check(code);
+                Pointer ref = refPtr.getValue();
+                try {
+                    builder.add(ops, ref);
+                } finally {
+                    git.git_reference_free(ref);
+                }
+            }
+        } finally {
+            git.git_reference_iterator_free(iter);
+        }
+        return builder.build();
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @return the index of a full reference name, or -1
+     */
+    public int indexOf(String name) {
+        int index = Arrays.binarySearch(names, name);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * @param prefix e.g. "refs/tags/"
+     * @return indexes of the references under prefix, in name order
+     */
+    public IntStream indexesWithPrefix(String prefix) {
+        int from = lowerBound(prefix);
+        int to = lowerBound(prefix + Character.MAX_VALUE);
+        return IntStream.range(from, to);
+    }
+
+    /**
+     * @return indexes of the references that peel to this commit
+     */
+    public IntStream indexesOfCommit(Oid commit) {
+        return IntStream.range(0, names.length)
+                .filter(i -> (flags[i] & HAS_COMMIT) != 0 && commit.equalsRaw(commits, i * Oid.RAW_SIZE));
+    }
+
+    private int lowerBound(String key) {
+        int index = Arrays.binarySearch(names, key);
+        return index < 0 ? -index - 1 : index;
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    public boolean isSymbolic(int index) {
+        return (flags[index] & SYMBOLIC) != 0;
+    }
+
+    /**
+     * @return the reference a symbolic reference points to, null for a
+     *     direct reference
+     */
+    public String getSymbolicTarget(int index) {
+        return symbolicTargets[index];
+    }
+
+    /**
+     * @return true if the reference points at a tag object
+     */
+    public boolean isAnnotatedTag(int index) {
+        return (flags[index] & ANNOTATED_TAG) != 0;
+    }
+
+    /**
+     * @return the id the reference points at (resolving symbolic
+     *     references), null if it is dangling
+     */
+    public Oid getTarget(int index) {
+        return oid(targets, index, HAS_TARGET);
+    }
+
+    /**
+     * @return the commit the reference peels to, null if it isn't one
+     *     (e.g. a tag of a tree)
+     */
+    public Oid getCommit(int index) {
+        return oid(commits, index, HAS_COMMIT);
+    }
+
+    /**
+     * @return the tree the reference peels to: the commit's tree, or
+     *     the target itself for a tree tag
+     */
+    public Oid getTree(int index) {
+        return oid(trees, index, HAS_TREE);
+    }
+
+    /**
+     * @return the commit a full reference name peels to, null if there
+     *     is no such reference or it isn't a commit
+     */
+    public Oid getCommit(String name) {
+        int index = indexOf(name);
+        return index < 0 ? null : getCommit(index);
+    }
+
+    private Oid oid(byte[] column, int index, byte flag) {
+        if ((flags[index] & flag) == 0) {
+            return null;
+        }
+        return Oid.fromRaw(column, index * Oid.RAW_SIZE);
+    }
+
+    /**
+     * Columns grow as references are read, then are sorted by name.
+     */
+    private static final class Builder {
+        private String[] names = new String[64];
+        private String[] symbolicTargets = new String[64];
+        private byte[] flags = new byte[64];
+        private byte[] targets = new byte[64 * Oid.RAW_SIZE];
+        private byte[] commits = new byte[64 * Oid.RAW_SIZE];
+        private byte[] trees = new byte[64 * Oid.RAW_SIZE];
+        private int size;
+
+        private void add(GitOperations ops, Pointer ref) {
+            Libgit2 git = ops.git();
+            if (size == names.length) {
+                grow();
+            }
+            int i = size++;
+            int offset = i * Oid.RAW_SIZE;
+            names[i] = git.git_reference_name(ref);
+
+            Pointer target = git.git_reference_target(ref);
+            Pointer resolved = null;
+            if (target == null) {
+                flags[i] |= SYMBOLIC;
+                symbolicTargets[i] = git.git_reference_symbolic_target(ref);
+                PointerByReference resolvedPtr = GitOperations.out();
+                int code = git.git_reference_resolve(resolvedPtr, ref);
+                if (code == GitCallException.GIT_ENOTFOUND) {
+                    return; // dangling
+                }
+                ops.check(code);
+                resolved = resolvedPtr.getValue();
+                target = git.git_reference_target(resolved);
+            }
+
+            try {
+                target.get(0, targets, offset, Oid.RAW_SIZE);
+                flags[i] |= HAS_TARGET;
+                peel(ops, resolved == null ? ref : resolved, i);
+            } finally {
+                if (resolved != null) {
+                    git.git_reference_free(resolved);
+                }
+            }
+        }
+
+        private void peel(GitOperations ops, Pointer ref, int i) {
+            Libgit2 git = ops.git();
+            int offset = i * Oid.RAW_SIZE;
+            PointerByReference peeledPtr = GitOperations.out();
+            int code = git.git_reference_peel(peeledPtr, ref, GitObject.Type.ANY);
+            if (code == GitCallException.GIT_ENOTFOUND) {
+                return; // target missing, e.g. a shallow clone
+            }
+            ops.check(code);
+            Pointer peeled = peeledPtr.getValue();
+            try {
+                Pointer peeledId = git.git_object_id(peeled);
+                byte[] raw = new byte[Oid.RAW_SIZE];
+                peeledId.get(0, raw, 0, Oid.RAW_SIZE);
+                if (!Arrays.equals(raw, 0, Oid.RAW_SIZE, targets, offset, offset + Oid.RAW_SIZE)) {
+                    flags[i] |= ANNOTATED_TAG;
+                }
+
+                GitObject.Type type = git.git_object_type(peeled);
+                if (type == GitObject.Type.COMMIT) {
+                    System.arraycopy(raw, 0, commits, offset, Oid.RAW_SIZE);
+                    git.git_commit_tree_id(peeled).get(0, trees, offset, Oid.RAW_SIZE);
+                    flags[i] |= HAS_COMMIT | HAS_TREE;
+                } else if (type == GitObject.Type.TREE) {
+                    System.arraycopy(raw, 0, trees, offset, Oid.RAW_SIZE);
+                    flags[i] |= HAS_TREE;
+                }
+            } finally {
+                git.git_object_free(peeled);
+            }
+        }
+
+        private void grow() {
+            int capacity = names.length * 2;
+            names = Arrays.copyOf(names, capacity);
+            symbolicTargets = Arrays.copyOf(symbolicTargets, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            targets = Arrays.copyOf(targets, capacity * Oid.RAW_SIZE);
+            commits = Arrays.copyOf(commits, capacity * Oid.RAW_SIZE);
+            trees = Arrays.copyOf(trees, capacity * Oid.RAW_SIZE);
+        }
+
+        private RefSnapshot build() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparing(i -> names[i]));
+
+            String[] sortedNames = new String[size];
+            String[] sortedSymbolic = new String[size];
+            byte[] sortedFlags = new byte[size];
+            byte[] sortedTargets = new byte[size * Oid.RAW_SIZE];
+            byte[] sortedCommits = new byte[size * Oid.RAW_SIZE];
+            byte[] sortedTrees = new byte[size * Oid.RAW_SIZE];
+            for (int to = 0; to < size; to++) {
+                int from = order[to];
+                sortedNames[to] = names[from];
+                sortedSymbolic[to] = symbolicTargets[from];
+                sortedFlags[to] = flags[from];
+                System.arraycopy(targets, from * Oid.RAW_SIZE, sortedTargets, to * Oid.RAW_SIZE, Oid.RAW_SIZE);
+                System.arraycopy(commits, from * Oid.RAW_SIZE, sortedCommits, to * Oid.RAW_SIZE, Oid.RAW_SIZE);
+                System.arraycopy(trees, from * Oid.RAW_SIZE, sortedTrees, to * Oid.RAW_SIZE, Oid.RAW_SIZE);
+            }
+            return new RefSnapshot(sortedNames, sortedSymbolic, sortedFlags, sortedTargets, sortedCommits, sortedTrees);
+        }
+    }
+}
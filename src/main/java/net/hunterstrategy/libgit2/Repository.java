@@ -22,9 +22,13 @@
 package net.hunterstrategy.libgit2;
 
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import jnr.ffi.Pointer;
 import jnr.ffi.byref.PointerByReference;
@@ -32,25 +36,68 @@ import jnr.ffi.byref.PointerByReference;
 public class Repository extends AbstractResource implements ResourceOwner {
     private GitOperations ops;
     private Pointer repo;
-    private Set<Resource> ownedObjects = new HashSet<>();
+    // blobs are released from whichever thread closes their channel
+    // by identity: libgit2 hands out the same object to repeated lookups, and
+    // each Resource over it is closed on its own; guarded by itself
+    private final Set<Resource> ownedObjects =
+            Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+    private Odb odb;
+    private final TreeCache treeCache = new TreeCache();
+    // set on views, see newView()
+    private final Repository shared;
+    private volatile boolean viewClosed;
 
     public static Repository open(String repoPath) {
-        GitOperations ops = new GitOperations();
-        PointerByReference repoPointer = new PointerByReference();
-        ops.callCheck(git -> git.git_repository_open(repoPointer, repoPath));
-        return new Repository(ops, repoPointer.getValue());
+        return open(repoPath, false);
     }
 
     public static Repository openBare(String repoPath) {
+        return open(repoPath, true);
+    }
+
+    private static Repository open(String repoPath, boolean bare) {
         GitOperations ops = new GitOperations();
         PointerByReference repoPointer = new PointerByReference();
-        ops.callCheck(git -> git.git_repository_open_bare(repoPointer, repoPath));
+        try {
+            if (bare) {
+                ops.callCheck(git -> git.git_repository_open_bare(repoPointer, repoPath));
+            } else {
+                ops.callCheck(git -> git.git_repository_open(repoPointer, repoPath));
+            }
+        } catch (RuntimeException e) {
+            // release the native runtime reference taken by this GitOperations
+            try {
+                ops.close();
+            } catch (Exception suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
         return new Repository(ops, repoPointer.getValue());
     }
 
     private Repository(GitOperations ops, Pointer repo) {
         this.ops = ops;
         this.repo = repo;
+        this.shared = null;
+        ops.stats().opened(MemoryStats.Kind.REPOSITORY);
+    }
+
+    private Repository(Repository shared) {
+        this.ops = shared.ops;
+        this.repo = shared.repo;
+        this.shared = shared;
+    }
+
+    /**
+     * Another handle onto this repository, sharing its native repository,
+     * object cache and memory stats, but tracking the objects looked up
+     * through it on its own. Closing a view frees those objects and leaves
+     * the repository open, so one repository can serve many short-lived
+     * users, see RepositoryRegistry. Close views before the repository.
+     */
+    public Repository newView() {
+        return new Repository(shared != null ? shared : this);
     }
 
     public Config getConfig() {
@@ -64,17 +111,206 @@ public class Repository extends AbstractResource implements ResourceOwner {
         return config;
     }
 
+    /**
+     * The object database, opened on first use and owned by this repository.
+     */
+    public synchronized Odb getOdb() {
+        if (this.odb == null) {
+            PointerByReference odbPtr = new PointerByReference();
+            ops.callCheck(git -> git.git_repository_odb(odbPtr, repo));
+            if (odbPtr.getValue() == null) {
+                throw new NullPointerException();
+            }
+            // a worktree's objects are in the common directory
+            String commonDir = ops.call(git -> git.git_repository_commondir(repo));
+            this.odb = new Odb(ops, odbPtr.getValue(), new File(commonDir, "objects/pack"));
+            addOwnership(this.odb);
+        }
+        return this.odb;
+    }
+
+    /**
+     * The subtrees loaded through this repository, or this view of it, see
+     * TreeCache.
+     */
+    public TreeCache getTreeCache() {
+        return this.treeCache;
+    }
+
+    /**
+     * Look up a blob by id, outside of any tree. The caller frees it with
+     * Blob.release(), or it is freed along with this repository.
+     *
+     * @throws GitCallException if the blob does not exist
+     */
+    public Blob openBlob(Oid oid) {
+        PointerByReference blobPtr = GitOperations.out();
+        ops.check(ops.git().git_blob_lookup(blobPtr, repo, GitOperations.nativeOid(oid)));
+        Pointer blobPointer = blobPtr.getValue();
+        if (blobPointer == null) {
+            throw new NullPointerException("Unexpectedly unable to look up blob " + oid);
+        }
+        Blob blob = new Blob(ops, blobPointer);
+        addOwnership(blob);
+        blob.fromRepository(this);
+        return blob;
+    }
+
+    /**
+     * Whether any gitattributes filter applies to asPath on checkout, with
+     * attributes read from attributesCommit. Decided from the attributes
+     * alone, without reading the blob.
+     */
+    public boolean hasFilters(String asPath, Oid attributesCommit) {
+        return FilteredBlobSpool.applies(ops, repo, asPath, attributesCommit);
+    }
+
+    /**
+     * @throws GitCallException if the commit does not exist
+     */
+    public Commit lookupCommit(Oid oid) {
+        PointerByReference commitPtr = GitOperations.out();
+        ops.check(ops.git().git_commit_lookup(commitPtr, repo, GitOperations.nativeOid(oid)));
+        Pointer commitPointer = commitPtr.getValue();
+        if (commitPointer == null) {
+            throw new NullPointerException("Unexpectedly unable to look up commit " + oid);
+        }
+        Commit commit = new Commit(ops, commitPointer, this);
+        addOwnership(commit);
+        return commit;
+    }
+
+    /**
+     * Load every reference, resolved and peeled, in one pass.
+     */
+    public RefSnapshot refSnapshot() {
+        return RefSnapshot.load(ops, repo, null);
+    }
+
+    /**
+     * Load the references matching a glob, e.g. "refs/tags/*".
+     */
+    public RefSnapshot refSnapshot(String glob) {
+        return RefSnapshot.load(ops, repo, glob);
+    }
+
+    /**
+     * Load every note under the default notes reference (usually
+     * refs/notes/commits) in one pass.
+     */
+    public NoteSnapshot noteSnapshot() {
+        return NoteSnapshot.load(ops, repo, null);
+    }
+
+    /**
+     * Load every note under a notes reference, e.g. "refs/notes/build".
+     * Empty if the reference does not exist.
+     */
+    public NoteSnapshot noteSnapshot(String notesRef) {
+        return NoteSnapshot.load(ops, repo, notesRef);
+    }
+
+    /**
+     * Read one note. For many lookups, load a noteSnapshot instead.
+     *
+     * @param notesRef null for the default notes reference
+     * @return the note's message, empty if the object has none
+     */
+    public Optional<String> readNote(String notesRef, Oid object) {
+        PointerByReference notePtr = GitOperations.out();
+        int code = ops.git().git_note_read(notePtr, repo, notesRef, GitOperations.nativeOid(object));
+        if (code == GitCallException.GIT_ENOTFOUND) {
+            return Optional.empty();
+        }
+        ops.check(code);
+        Pointer note = notePtr.getValue();
+        try {
+            return Optional.of(ops.git().git_note_message(note));
+        } finally {
+            ops.git().git_note_free(note);
+        }
+    }
+
+    /**
+     * Diff two trees of this repository. Close the diff when done to free
+     * it early.
+     *
+     * @param oldTree may be null, everything in newTree is then added
+     * @param newTree may be null, everything in oldTree is then deleted
+     * @param options may be null for libgit2's defaults
+     */
+    public Diff diffTreeToTree(Tree oldTree, Tree newTree, Diff.Options options) {
+        List<Pointer> keepAlive = new ArrayList<>();
+        Pointer opts = options == null ? null : options.toNative(ops, keepAlive);
+        PointerByReference diffPtr = GitOperations.out();
+        // subtrees may be evicted, keep them loaded for the call
+        Pointer oldPointer = oldTree == null ? null : oldTree.acquire();
+        try {
+            Pointer newPointer = newTree == null ? null : newTree.acquire();
+            try {
+                ops.check(ops.git().git_diff_tree_to_tree(diffPtr, repo, oldPointer, newPointer, opts));
+            } finally {
+                if (newTree != null) {
+                    newTree.release();
+                }
+            }
+        } finally {
+            if (oldTree != null) {
+                oldTree.release();
+            }
+        }
+        Pointer diffPointer = diffPtr.getValue();
+        if (diffPointer == null) {
+            throw new NullPointerException();
+        }
+        Diff diff = new Diff(ops, diffPointer, this);
+        addOwnership(diff);
+        return diff;
+    }
+
+    /**
+     * A new history walk, owned by this repository. Close it when done to
+     * free it early.
+     */
+    public RevWalk newRevWalk() {
+        PointerByReference walkPtr = GitOperations.out();
+        ops.check(ops.git().git_revwalk_new(walkPtr, repo));
+        Pointer walkPointer = walkPtr.getValue();
+        if (walkPointer == null) {
+            throw new NullPointerException();
+        }
+        RevWalk walk = new RevWalk(ops, walkPointer, this);
+        addOwnership(walk);
+        return walk;
+    }
+
+    /**
+     * Live native resources held by this repository. See MemoryStats.process()
+     * for every repository in the process.
+     */
+    public MemoryStats getMemoryStats() {
+        return ops.stats();
+    }
+
+    /**
+     * @return the git directory, e.g. "/repo/.git/", or the repository itself when bare
+     */
+    public String getPath() {
+        return ops.call(git -> git.git_repository_path(repo));
+    }
+
     public String getWorkdir() {
         return ops.call(git -> git.git_repository_workdir(repo));
     }
 
     public GitObject revparseSingle(String spec) {
-        PointerByReference objectPointer = new PointerByReference();
-        ops.callCheck(git -> git.git_revparse_single(objectPointer, repo, spec));
-        if (objectPointer.getValue() == null) {
+        PointerByReference objectPointer = GitOperations.out();
+        ops.check(ops.git().git_revparse_single(objectPointer, repo, spec));
+        Pointer object = objectPointer.getValue();
+        if (object == null) {
             throw new NullPointerException("Invalid revision: " + spec);
         }
-        GitObject obj = new GitObject(ops, objectPointer.getValue(), this);
+        GitObject obj = new GitObject(ops, object, this);
         addOwnership(obj);
         return obj;
     }
@@ -84,6 +320,11 @@ public class Repository extends AbstractResource implements ResourceOwner {
         ownedObjects.add(obj);
     }
 
+    @Override
+    public void releaseOwnership(Resource obj) {
+        ownedObjects.remove(obj);
+    }
+
     @Override
     public Pointer getPointer() {
         return this.repo;
@@ -91,16 +332,25 @@ public class Repository extends AbstractResource implements ResourceOwner {
 
     @Override
     public Collection<Resource> getOwnedResources() {
-        return Collections.unmodifiableSet(ownedObjects);
+        // a copy, since closing them releases their ownership
+        synchronized (ownedObjects) {
+            return List.copyOf(ownedObjects);
+        }
     }
 
     public boolean isOpen() {
-        return !ops.isClosed();
+        return !viewClosed && !ops.isClosed();
     }
 
     @Override
     public void close() throws Exception {
-        if (ops.isClosed()) {
+        if (ops.isClosed() || viewClosed) {
+            return;
+        }
+        treeCache.clear();
+        if (shared != null) {
+            viewClosed = true;
+            closeOwnedResources();
             return;
         }
 
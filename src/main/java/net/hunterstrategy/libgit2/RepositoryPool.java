@@ -0,0 +1,257 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A bounded set of handles on the same repository, for readers on several
+ * threads. A git_repository is safe to share, but its object cache, ODB
+ * and pack windows are guarded by locks that every reader takes, so
+ * parallel reads through one handle serialize. Each handle here has its
+ * own.
+ *
+ * Handles are opened on demand up to maxSize; after that, borrow() waits
+ * for one to be given back. Objects read through a handle stay valid after
+ * it is given back, until the pool is closed. Closing the pool closes idle
+ * handles right away and borrowed ones when they are given back.
+ */
+public class RepositoryPool implements AutoCloseable {
+    private static final long WAIT_MILLIS = 100;
+
+    private final String repoPath;
+    private final boolean bare;
+    private final int maxSize;
+    private final Consumer<Repository> onOpen;
+    private final BlockingQueue<Repository> idle;
+    private final List<Repository> opened = new ArrayList<>();
+    // slots taken by handles being opened, outside the lock; guarded by this
+    private int opening;
+    // guarded by this
+    private final Set<Repository> borrowed = Collections.newSetFromMap(new IdentityHashMap<>());
+    private volatile boolean closed;
+
+    public RepositoryPool(String repoPath, boolean bare, int maxSize) {
+        this(repoPath, bare, maxSize, repo -> {});
+    }
+
+    /**
+     * @param onOpen run on each handle as it is opened, e.g. to add an
+     *     OdbBackend
+     */
+    public RepositoryPool(String repoPath, boolean bare, int maxSize, Consumer<Repository> onOpen) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1: " + maxSize);
+        }
+        this.repoPath = repoPath;
+        this.bare = bare;
+        this.maxSize = maxSize;
+        this.onOpen = onOpen;
+        this.idle = new ArrayBlockingQueue<>(maxSize);
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return handles opened so far
+     */
+    public synchronized int size() {
+        return opened.size();
+    }
+
+    /**
+     * Take a handle, opening one if none are idle and the pool isn't full,
+     * otherwise waiting for one to be given back.
+     *
+     * @throws IllegalStateException if the pool is closed, also while waiting
+     */
+    public Repository borrow() throws InterruptedException {
+        while (true) {
+            checkClosed();
+            Repository repo = idle.poll();
+            if (repo != null) {
+                return lend(repo);
+            }
+            if (reserve()) {
+                return open();
+            }
+            // wake up now and then to notice the pool closing
+            repo = idle.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            if (repo != null) {
+                return lend(repo);
+            }
+        }
+    }
+
+    private synchronized boolean reserve() {
+        checkClosed();
+        if (opened.size() + opening < maxSize) {
+            opening++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Open a handle into a slot taken with reserve(). Opening reads from
+     * disk, so it runs without the lock, and other borrowers can take idle
+     * handles meanwhile.
+     */
+    private Repository open() {
+        Repository repo;
+        try {
+            repo = bare ? Repository.openBare(repoPath) : Repository.open(repoPath);
+            try {
+                onOpen.accept(repo);
+            } catch (RuntimeException e) {
+                try {
+                    repo.close();
+                } catch (Exception suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                opening--;
+            }
+            throw e;
+        }
+        synchronized (this) {
+            opening--;
+            if (closed) {
+                closeQuietly(repo);
+                checkClosed();
+            }
+            opened.add(repo);
+            borrowed.add(repo);
+            return repo;
+        }
+    }
+
+    private synchronized Repository lend(Repository repo) {
+        if (closed) {
+            // taken from idle just before close() drained it
+            closeQuietly(repo);
+            checkClosed();
+        }
+        borrowed.add(repo);
+        return repo;
+    }
+
+    /**
+     * Give back a borrowed handle. Once the pool is closed, the handle is
+     * closed instead.
+     *
+     * @throws IllegalStateException if repo isn't borrowed from this pool
+     */
+    public synchronized void giveBack(Repository repo) {
+        if (!borrowed.remove(repo)) {
+            throw new IllegalStateException("Repository given back twice, or not from this pool");
+        }
+        if (closed) {
+            opened.remove(repo);
+            closeQuietly(repo);
+            return;
+        }
+        idle.offer(repo);
+    }
+
+    private static void closeQuietly(Repository repo) {
+        try {
+            repo.close();
+        } catch (Exception e) {
+            // swallow, same as closing with the pool
+        }
+    }
+
+    /**
+     * Run func with a borrowed handle, giving it back afterwards.
+     */
+    public <T> T with(Function<Repository, T> func) {
+        Repository repo;
+        try {
+            repo = borrow();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a repository", e);
+        }
+        try {
+            return func.apply(repo);
+        } finally {
+            giveBack(repo);
+        }
+    }
+
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    private void checkClosed() {
+        if (closed) {
+            throw new IllegalStateException("Repository pool is closed");
+        }
+    }
+
+    /**
+     * Close the idle handles now, and borrowed ones as they are given back,
+     * so borrowers never call into a freed repository. Threads waiting in
+     * borrow() get an IllegalStateException.
+     */
+    @Override
+    public synchronized void close() throws Exception {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Exception failure = null;
+        List<Repository> idleRepos = new ArrayList<>();
+        idle.drainTo(idleRepos);
+        for (Repository repo : idleRepos) {
+            opened.remove(repo);
+            try {
+                repo.close();
+            } catch (Exception e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Shared, reference counted repository handles, one per repository
+ * directory. Everyone who acquires the same directory gets the same
+ * Repository, with one native handle and one object cache, and it is
+ * closed when the last of them releases it.
+ *
+ * Directories are compared by their canonical path, so symlinks and
+ * relative paths to the same repository share a handle. A directory opened
+ * bare and non-bare gets one handle for each, as do acquirers asking for
+ * the handle to be set up differently, e.g. with another object database
+ * backend.
+ */
+public class RepositoryRegistry {
+    private final Map<List<Object>, Handle> byPath = new HashMap<>();
+    private final Map<Repository, Handle> byRepository = new IdentityHashMap<>();
+
+    private static final class Handle {
+        private final List<Object> key;
+        private final Repository repo;
+        private int references;
+
+        private Handle(List<Object> key, Repository repo) {
+            this.key = key;
+            this.repo = repo;
+        }
+    }
+
+    /**
+     * Take a reference to the repository at repoPath, opening it if no one
+     * holds it yet with the same settings.
+     *
+     * @param settings what onOpen sets up, compared with equals; acquirers
+     *     only share a handle when their settings are equal, null for none
+     * @param onOpen run once, when the handle is opened
+     * @throws GitCallException if there is no repository at repoPath
+     */
+    public synchronized Repository acquire(
+            String repoPath, boolean bare, Object settings, Consumer<Repository> onOpen) {
+        List<Object> key = Arrays.asList(canonical(repoPath), bare, settings);
+        Handle handle = byPath.get(key);
+        if (handle == null) {
+            Repository repo = bare ? Repository.openBare(repoPath) : Repository.open(repoPath);
+            try {
+                onOpen.accept(repo);
+            } catch (RuntimeException e) {
+                try {
+                    repo.close();
+                } catch (Exception suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+            handle = new Handle(key, repo);
+            byPath.put(key, handle);
+            byRepository.put(repo, handle);
+        }
+        handle.references++;
+        return handle.repo;
+    }
+
+    public Repository acquire(String repoPath, boolean bare) {
+        return acquire(repoPath, bare, null, repo -> {});
+    }
+
+    /**
+     * Drop a reference taken with acquire, closing the repository once no
+     * one holds it.
+     *
+     * @throws IllegalArgumentException if repo isn't held through this registry
+     */
+    public void release(Repository repo) throws Exception {
+        Handle handle;
+        synchronized (this) {
+            handle = byRepository.get(repo);
+            if (handle == null) {
+                throw new IllegalArgumentException("Repository is not held through this registry");
+            }
+            if (--handle.references > 0) {
+                return;
+            }
+            byRepository.remove(repo);
+            byPath.remove(handle.key);
+        }
+        repo.close();
+    }
+
+    /**
+     * @return the number of references to repo, 0 if it isn't held here
+     */
+    public synchronized int references(Repository repo) {
+        Handle handle = byRepository.get(repo);
+        return handle == null ? 0 : handle.references;
+    }
+
+    /**
+     * @return open repositories
+     */
+    public synchronized int size() {
+        return byPath.size();
+    }
+
+    private static String canonical(String repoPath) {
+        Path path = Paths.get(repoPath);
+        try {
+            return path.toRealPath().toString();
+        } catch (IOException e) {
+            // doesn't exist; opening it will fail with libgit2's error
+            return path.toAbsolutePath().normalize().toString();
+        }
+    }
+}
@@ -29,6 +29,11 @@ interface ResourceOwner extends AutoCloseable {
 
     void addOwnership(Resource resource);
 
+    /**
+     * Stop tracking a resource that was freed before its owner closed.
+     */
+    void releaseOwnership(Resource resource);
+
     default void closeOwnedResources() throws Exception {
         for (Resource r : getOwnedResources()) {
             try {
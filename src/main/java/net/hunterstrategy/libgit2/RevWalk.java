@@ -0,0 +1,373 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import jnr.ffi.Memory;
+import jnr.ffi.Pointer;
+import jnr.ffi.Runtime;
+import jnr.ffi.byref.PointerByReference;
+
+/**
+ * A walk over commit history, see Repository.newRevWalk().
+ *
+ * Commits come out as ids; use Repository.lookupCommit() for the ones you
+ * need in full. Filters are checked as the walk goes, so commits that don't
+ * match are never handed out or kept: each is looked up, checked and freed
+ * in turn. Cheaper filters run first (time, then author, then paths).
+ *
+ * Iterating continues the walk from where it is, it doesn't restart it;
+ * call reset() and push again for another pass. A walk is not safe to use
+ * from several threads at once.
+ */
+public class RevWalk extends AbstractResource implements Iterable<Oid> {
+    /*
+     * With time sorting, once this many commits in a row are older than
+     * the "since" filter, the walk ends. A few are allowed through in case
+     * of clock skew between commits, like git log does.
+     */
+    private static final int SINCE_SLOP = 5;
+
+    public static enum Sort {
+        NONE(0),
+        TOPOLOGICAL(1),
+        TIME(2),
+        REVERSE(4);
+
+        private final int value;
+
+        private Sort(int value) {
+            this.value = value;
+        }
+    }
+
+    private final GitOperations ops;
+    private final Repository owner;
+    private final Pointer walk;
+    private final Pointer oidOut;
+
+    private boolean timeSorted;
+    private boolean firstParent;
+    private long since = Long.MIN_VALUE;
+    private long until = Long.MAX_VALUE;
+    private Pattern author;
+    private List<String> paths = List.of();
+    private int olderThanSince;
+    private boolean done;
+    private boolean closed;
+
+    RevWalk(GitOperations ops, Pointer walk, Repository owner) {
+        this.ops = ops;
+        this.walk = walk;
+        this.owner = owner;
+        this.oidOut = Memory.allocateDirect(Runtime.getRuntime(ops.git()), Oid.RAW_SIZE);
+        ops.stats().opened(MemoryStats.Kind.REVWALK);
+    }
+
+    @Override
+    public Pointer getPointer() {
+        return this.walk;
+    }
+
+    public RevWalk push(Oid oid) {
+        ops.check(ops.git().git_revwalk_push(walk, GitOperations.nativeOid(oid)));
+        this.done = false;
+        return this;
+    }
+
+    /**
+     * @param refname a full reference name, e.g. refs/heads/main
+     */
+    public RevWalk pushRef(String refname) {
+        ops.check(ops.git().git_revwalk_push_ref(walk, refname));
+        this.done = false;
+        return this;
+    }
+
+    public RevWalk pushHead() {
+        ops.check(ops.git().git_revwalk_push_head(walk));
+        this.done = false;
+        return this;
+    }
+
+    /**
+     * Leave out this commit and its ancestors.
+     */
+    public RevWalk hide(Oid oid) {
+        ops.check(ops.git().git_revwalk_hide(walk, GitOperations.nativeOid(oid)));
+        return this;
+    }
+
+    public RevWalk hideRef(String refname) {
+        ops.check(ops.git().git_revwalk_hide_ref(walk, refname));
+        return this;
+    }
+
+    /**
+     * Changing the sorting resets the walk.
+     */
+    public RevWalk sorting(Sort... modes) {
+        int mode = 0;
+        for (Sort sort : modes) {
+            mode |= sort.value;
+        }
+        ops.check(ops.git().git_revwalk_sorting(walk, mode));
+        this.timeSorted = Arrays.asList(modes).contains(Sort.TIME)
+                && !Arrays.asList(modes).contains(Sort.REVERSE);
+        this.done = false;
+        return this;
+    }
+
+    /**
+     * Follow only the first parent of merges, like git log --first-parent.
+     * Path filters then also compare against the first parent only.
+     */
+    public RevWalk simplifyFirstParent() {
+        ops.check(ops.git().git_revwalk_simplify_first_parent(walk));
+        this.firstParent = true;
+        return this;
+    }
+
+    /**
+     * Only commits whose committer time is within [since, until].
+     * Either may be null for an open end.
+     */
+    public RevWalk filterCommitTime(Instant since, Instant until) {
+        this.since = since == null ? Long.MIN_VALUE : since.getEpochSecond();
+        this.until = until == null ? Long.MAX_VALUE : until.getEpochSecond();
+        return this;
+    }
+
+    /**
+     * Only commits whose author, as "Name &lt;email&gt;", contains a match
+     * for the pattern, like git log --author.
+     */
+    public RevWalk filterAuthor(Pattern pattern) {
+        this.author = pattern;
+        return this;
+    }
+
+    /**
+     * Only commits that change one of these paths (a file or a whole
+     * directory) relative to their parents. A merge is kept unless one of
+     * its parents has the same content at every path, like git log does
+     * by default. The root, "/" or "", covers every path, so it turns the
+     * path filter off.
+     */
+    public RevWalk filterPaths(String... paths) {
+        List<String> stripped = new ArrayList<>();
+        for (String path : paths) {
+            String p = path;
+            while (p.startsWith("/")) {
+                p = p.substring(1);
+            }
+            while (p.endsWith("/")) {
+                p = p.substring(0, p.length() - 1);
+            }
+            if (p.isEmpty()) {
+                stripped.clear();
+                break;
+            }
+            stripped.add(p);
+        }
+        this.paths = List.copyOf(stripped);
+        return this;
+    }
+
+    /**
+     * Clear pushed and hidden commits, so the walk can be started again.
+     * Sorting and filters are kept.
+     */
+    public RevWalk reset() {
+        ops.check(ops.git().git_revwalk_reset(walk));
+        this.olderThanSince = 0;
+        this.done = false;
+        return this;
+    }
+
+    /**
+     * @return the next matching commit, empty at the end of the walk
+     */
+    public Optional<Oid> next() {
+        Libgit2 git = ops.git();
+        while (!done) {
+            int code = git.git_revwalk_next(oidOut, walk);
+            if (code == GitCallException.GIT_ITEROVER) {
+                done = true;
+                break;
+            }
+            ops.check(code);
+            if (!hasFilters()) {
+                return Optional.of(Oid.fromPointer(oidOut));
+            }
+
+            PointerByReference commitPtr = GitOperations.out();
+            ops.check(git.git_commit_lookup(commitPtr, owner.getPointer(), oidOut));
+            Pointer commit = commitPtr.getValue();
+            try {
+                if (matches(git, commit)) {
+                    return Optional.of(Oid.fromPointer(oidOut));
+                }
+            } finally {
+                git.git_commit_free(commit);
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public Iterator<Oid> iterator() {
+        return new Iterator<>() {
+            private Oid next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    next = RevWalk.this.next().orElse(null);
+                }
+                return next != null;
+            }
+
+            @Override
+            public Oid next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Oid result = next;
+                next = null;
+                return result;
+            }
+        };
+    }
+
+    private boolean hasFilters() {
+        return since != Long.MIN_VALUE || until != Long.MAX_VALUE || author != null || !paths.isEmpty();
+    }
+
+    private boolean matches(Libgit2 git, Pointer commit) {
+        long time = git.git_commit_time(commit);
+        if (time < since) {
+            if (timeSorted && ++olderThanSince >= SINCE_SLOP) {
+                done = true;
+            }
+            return false;
+        }
+        olderThanSince = 0;
+        if (time > until) {
+            return false;
+        }
+
+        if (author != null) {
+            Structs.GitSignature sig = git.git_commit_author(commit);
+            String who = sig.name.toString() + " <" + sig.email.toString() + ">";
+            if (!author.matcher(who).find()) {
+                return false;
+            }
+        }
+
+        return paths.isEmpty() || changesPaths(git, commit);
+    }
+
+    private boolean changesPaths(Libgit2 git, Pointer commit) {
+        int parents = git.git_commit_parentcount(commit);
+        if (firstParent) {
+            parents = Math.min(parents, 1);
+        }
+
+        Oid treeId = Oid.fromPointer(git.git_commit_tree_id(commit));
+        Oid[] ids = pathIds(git, commit);
+        if (parents == 0) {
+            for (Oid id : ids) {
+                if (id != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        for (int i = 0; i < parents; i++) {
+            PointerByReference parentPtr = GitOperations.out();
+            ops.check(git.git_commit_parent(parentPtr, commit, i));
+            Pointer parent = parentPtr.getValue();
+            try {
+                // same root tree, nothing changed at all
+                if (treeId.equals(Oid.fromPointer(git.git_commit_tree_id(parent)))
+                        || Arrays.equals(ids, pathIds(git, parent))) {
+                    return false;
+                }
+            } finally {
+                git.git_commit_free(parent);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the id at each filtered path, null where the path doesn't exist
+     */
+    private Oid[] pathIds(Libgit2 git, Pointer commit) {
+        PointerByReference treePtr = GitOperations.out();
+        ops.check(git.git_commit_tree(treePtr, commit));
+        Pointer tree = treePtr.getValue();
+        try {
+            Oid[] ids = new Oid[paths.size()];
+            for (int i = 0; i < ids.length; i++) {
+                PointerByReference entryPtr = GitOperations.out();
+                int code = git.git_tree_entry_bypath(entryPtr, tree, paths.get(i));
+                if (code == GitCallException.GIT_ENOTFOUND) {
+                    continue;
+                }
+                ops.check(code);
+                Pointer entry = entryPtr.getValue();
+                ids[i] = Oid.fromPointer(git.git_tree_entry_id(entry));
+                git.git_tree_entry_free(entry);
+            }
+            return ids;
+        } finally {
+            git.git_tree_free(tree);
+        }
+    }
+
+    /**
+     * Free the walk now, rather than with its repository.
+     */
+    @Override
+    public synchronized void close() throws Exception {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        owner.releaseOwnership(this);
+        if (!ops.isClosed()) {
+            ops.call_void(git -> git.git_revwalk_free(this.walk));
+            ops.stats().closed(MemoryStats.Kind.REVWALK);
+        }
+    }
+}
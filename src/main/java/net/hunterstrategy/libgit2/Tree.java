@@ -22,30 +22,66 @@
 package net.hunterstrategy.libgit2;
 
 
-import java.util.EnumSet;
+import java.nio.channels.SeekableByteChannel;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 import jnr.ffi.Pointer;
 import jnr.ffi.byref.PointerByReference;
 import jnr.ffi.util.EnumMapper;
 
+/**
+ * A tree and the entries read from it so far.
+ *
+ * Root trees, from commits and revparse, are loaded until they are closed.
+ * Subtrees, from Entry.toTree(), are loaded on first use and kept in their
+ * repository's TreeCache, which frees them and their entries when it runs
+ * over its limit. An evicted subtree is loaded again by id the next time
+ * it is read, so callers never see the difference, but entries read
+ * before the eviction are no longer the ones this tree returns.
+ */
 @PeelableType(GitObject.Type.TREE)
 public class Tree extends AbstractResource implements Peelable, TreeItem {
-    private GitOperations ops;
-    private Pointer tree;
-    private Repository owner;
+    private final GitOperations ops;
+    // null while a subtree is evicted
+    private volatile Pointer tree;
+    private final Repository owner;
+    private final boolean evictable;
 
     private final Map<String, Entry> entries = new ConcurrentHashMap<>();
-    private final Map<Long, String> entryNames = new ConcurrentHashMap<>();
+    private volatile Entry[] entriesByIndex;
+    private volatile long entryCount = -1;
+
+    // native calls and pins in progress, and whether the cache evicted this meanwhile; guarded by this
+    private int users;
+    private boolean evicted;
+
+    // guarded by the owner's TreeCache, 0 when not in it
+    long cacheWeight;
+    Tree lruPrev;
+    Tree lruNext;
 
     private String name = "/";
     private Tree.Entry self = null;
+    private Oid oid;
 
     Tree(GitOperations ops, Pointer tree, Repository owner) {
         this.ops = ops;
         this.tree = tree;
         this.owner = owner;
+        this.evictable = false;
+        ops.stats().opened(MemoryStats.Kind.TREE);
+    }
+
+    /**
+     * A subtree, loaded on first use.
+     */
+    private Tree(GitOperations ops, Repository owner, Oid oid) {
+        this.ops = ops;
+        this.owner = owner;
+        this.oid = oid;
+        this.evictable = true;
     }
 
     void fromEntry(Tree.Entry self) {
@@ -53,14 +89,36 @@ public class Tree extends AbstractResource implements Peelable, TreeItem {
         this.self = self;
     }
 
+    /**
+     * @return the native tree, null while this subtree is evicted
+     */
     @Override
     public Pointer getPointer() {
         return this.tree;
     }
 
-    public String getId() {
-        Pointer oid = ops.call(git -> git.git_tree_id(this.tree));
-        return ops.call(git -> git.git_oid_tostr_s(oid));
+    /*
+     * The native handle changes as a subtree is evicted and loaded again,
+     * so trees are only equal to themselves.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        return this == obj;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+
+    @Override
+    public Oid getOid() {
+        Oid id = this.oid;
+        if (id == null) {
+            id = Oid.fromPointer(ops.git().git_tree_id(this.tree));
+            this.oid = id;
+        }
+        return id;
     }
 
     @Override
@@ -99,35 +157,220 @@ public class Tree extends AbstractResource implements Peelable, TreeItem {
         return this.owner;
     }
 
+    /**
+     * Keep this tree loaded until unpin(), e.g. while listing it entry by
+     * entry. The cache may still pick it for eviction; it is freed at the
+     * last unpin().
+     */
+    public void pin() {
+        acquire();
+    }
+
+    public void unpin() {
+        release();
+    }
+
+    /**
+     * Take the native tree for a call, loading it if it was evicted. Pair
+     * with release().
+     */
+    Pointer acquire() {
+        if (!evictable) {
+            return this.tree;
+        }
+        Pointer handle;
+        boolean loaded = false;
+        synchronized (this) {
+            handle = this.tree;
+            if (handle == null) {
+                handle = load();
+                loaded = true;
+            }
+            this.users++;
+        }
+        if (loaded) {
+            // outside this lock, admitting may evict other trees
+            owner.getTreeCache().admit(this, this.entryCount + 1);
+        }
+        return handle;
+    }
+
+    void release() {
+        if (!evictable) {
+            return;
+        }
+        synchronized (this) {
+            if (--this.users == 0 && this.evicted) {
+                free();
+            }
+        }
+    }
+
+    // callers hold the lock
+    private Pointer load() {
+        if (!owner.isOpen()) {
+            throw new IllegalStateException("Repository is closed");
+        }
+        PointerByReference treePtr = GitOperations.out();
+        ops.check(ops.git().git_tree_lookup(treePtr, owner.getPointer(), GitOperations.nativeOid(this.oid)));
+        Pointer handle = treePtr.getValue();
+        if (handle == null) {
+            throw new NullPointerException("Unexpectedly unable to look up tree " + this.oid);
+        }
+        this.entryCount = ops.git().git_tree_entrycount(handle);
+        this.tree = handle;
+        ops.stats().opened(MemoryStats.Kind.TREE);
+        owner.addOwnership(this);
+        return handle;
+    }
+
+    /**
+     * Mark a subtree as recently used, see TreeCache.
+     */
+    private void touch() {
+        if (this.tree != null) {
+            owner.getTreeCache().touch(this);
+        }
+    }
+
+    /**
+     * Free this subtree now, or after its last user if it is in use.
+     */
+    synchronized void evict() {
+        if (this.tree == null) {
+            return;
+        }
+        if (this.users > 0) {
+            this.evicted = true;
+        } else {
+            free();
+        }
+    }
+
+    // callers hold the lock
+    private void free() {
+        Pointer handle = this.tree;
+        for (Entry e : entries.values()) {
+            e.close();
+        }
+        entries.clear();
+        this.entriesByIndex = null;
+        owner.releaseOwnership(this);
+        this.tree = null;
+        this.evicted = false;
+        if (!ops.isClosed()) {
+            ops.call_void(git -> git.git_tree_free(handle));
+            ops.stats().closed(MemoryStats.Kind.TREE);
+        }
+    }
+
     @Override
     public void close() throws Exception {
-        if (!ops.isClosed()) {
-            for (Entry e : entries.values()) {
-                e.close();
+        if (evictable) {
+            owner.getTreeCache().remove(this);
+        }
+        synchronized (this) {
+            if (this.tree != null) {
+                free();
             }
-            ops.call_void(git -> git.git_tree_free(this.tree));
+        }
+    }
+
+    /**
+     * List everything under this tree in one native traversal.
+     */
+    public TreeListing walk(TreeListing.Order order) {
+        Pointer handle = acquire();
+        try {
+            return TreeListing.walk(ops, handle, order, null);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * List everything under this tree, giving up as soon as the listing
+     * outgrows limit, without reading the rest of the tree.
+     *
+     * @return the listing, empty if limit stopped the walk
+     */
+    public Optional<TreeListing> walk(TreeListing.Order order, TreeListing.Limit limit) {
+        Pointer handle = acquire();
+        try {
+            return Optional.ofNullable(TreeListing.walk(ops, handle, order, null, limit));
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * List everything under this tree in pre-order, skipping the entries of
+     * directories that descend rejects.
+     *
+     * @param descend given a directory's path relative to this tree
+     */
+    public TreeListing walk(Predicate<String> descend) {
+        Pointer handle = acquire();
+        try {
+            return TreeListing.walk(ops, handle, TreeListing.Order.PRE, descend);
+        } finally {
+            release();
         }
     }
 
     public long getEntryCount() {
-        return ops.call(git -> git.git_tree_entrycount(this.tree));
+        long count = this.entryCount;
+        if (count < 0) {
+            Pointer handle = acquire();
+            try {
+                count = ops.git().git_tree_entrycount(handle);
+            } finally {
+                release();
+            }
+            this.entryCount = count;
+        }
+        return count;
     }
 
-    public Entry getByIndex(long index) {
-        if (entryNames.containsKey(index)) {
-            return entries.get(entryNames.get(index));
+    private Entry[] entriesByIndex() {
+        Entry[] byIndex = this.entriesByIndex;
+        if (byIndex == null) {
+            // racing threads may each allocate; entries are canonical either way
+            byIndex = new Entry[(int) getEntryCount()];
+            this.entriesByIndex = byIndex;
         }
+        return byIndex;
+    }
 
-        Pointer entryPtr = ops.call(git -> git.git_tree_entry_byindex(this.tree, index));
-        if (entryPtr == null) {
+    public Entry getByIndex(long index) {
+        Entry[] byIndex = entriesByIndex();
+        if (index < 0 || index >= byIndex.length) {
             return null;
         }
+        Entry cached = byIndex[(int) index];
+        if (cached != null) {
+            return cached;
+        }
+
+        Pointer handle = acquire();
+        try {
+            Pointer entryPtr = ops.git().git_tree_entry_byindex(handle, index);
+            if (entryPtr == null) {
+                return null;
+            }
 
-        Entry entry = new Entry(entryPtr, false);
-        String entryName = entry.getName();
-        entries.putIfAbsent(entryName, entry);
-        entryNames.putIfAbsent(index, entryName);
-        return entry;
+            Entry entry = new Entry(entryPtr, null);
+            Entry existing = entries.putIfAbsent(entry.getName(), entry);
+            if (existing != null) {
+                entry.close();
+                entry = existing;
+            }
+            // an eviction before acquire() may have dropped the array
+            entriesByIndex()[(int) index] = entry;
+            return entry;
+        } finally {
+            release();
+        }
     }
 
     private String strippedPath(String path) {
@@ -144,12 +387,9 @@ public class Tree extends AbstractResource implements Peelable, TreeItem {
      * entry under foo's Tree entry, and then load the
      * Blob entry for file.txt under bar.
      *
-     * This is different than getByPath which caches the full
-     * path to the item under the current Tree.
-     *
-     * Clients may choose what makes the most sense for their
-     * implementation use case - caching everything under the
-     * root node, or walking the object/memory tree.
+     * Each entry is cached in its own subtree, so the entries
+     * looked up this way are bounded by the repository's
+     * TreeCache like any others.
      *
      * This is not part of libgit2.
      */
@@ -177,60 +417,105 @@ public class Tree extends AbstractResource implements Peelable, TreeItem {
         return finalEntry;
     }
 
+    /**
+     * Look up a path under this tree. This used to cache every path
+     * looked up in this tree's own entries, without bound; it now resolves
+     * the path like getByNameRecursive.
+     */
     public Entry getByPath(String path) {
-        final String gitPath = strippedPath(path);
-        return entries.computeIfAbsent(gitPath, p -> {
-            PointerByReference entryPtr = new PointerByReference();
-            try {
-                ops.callCheck(git -> git.git_tree_entry_bypath(entryPtr, this.tree, gitPath));
-                if (entryPtr.getValue() == null) {
-                    return null;
-                }
-
-                return new Entry(entryPtr.getValue(), true);
-            } catch (GitCallException ise) {
-                return null;
-            }
-        });
+        return getByNameRecursive(path);
     }
 
     public Entry getByName(String filename) {
         String gitPath = strippedPath(filename);
-        return entries.computeIfAbsent(gitPath, p -> {
-            Pointer entry = ops.call(git -> git.git_tree_entry_byname(this.tree, gitPath));
-            return (entry == null) ? null : new Entry(entry, false);
-        });
+        Entry cached = entries.get(gitPath);
+        if (cached != null) {
+            return cached;
+        }
+        Pointer handle = acquire();
+        try {
+            return entries.computeIfAbsent(gitPath, p -> {
+                Pointer entry = ops.git().git_tree_entry_byname(handle, p);
+                return (entry == null) ? null : new Entry(entry, p);
+            });
+        } finally {
+            release();
+        }
     }
 
     public class Entry extends AbstractResource implements TreeItem {
-        private Pointer entry;
-        private boolean must_free;
-
-        private Optional<Tree> treeView = null;
-        private Optional<Blob> blob = null;
-
-        Entry(Pointer entry, boolean must_free) {
+        // borrowed from the tree, only valid while it is loaded
+        private final Pointer entry;
+        // set as the tree is freed, after which the pointer dangles
+        private volatile boolean closed;
+
+        // read when the entry is created, so that it stays usable after
+        // its tree is evicted and never goes back to native memory
+        private final String name;
+        private final FileMode mode;
+        private final Oid oid;
+        private long size = -1;
+
+        private volatile Optional<Tree> treeView = null;
+
+        // the loaded blob, shared by everyone reading this entry; guarded by this
+        private Blob blob;
+        private int blobReferences;
+        private boolean blobPinned;
+
+        /**
+         * @param name the entry's name if the caller already has it
+         */
+        Entry(Pointer entry, String name) {
+            Libgit2 git = ops.git();
             this.entry = entry;
-            this.must_free = must_free;
+            this.name = name != null ? name : git.git_tree_entry_name(entry);
+            this.mode = FileMode.valueOf(git.git_tree_entry_filemode(entry));
+            this.oid = Oid.fromPointer(git.git_tree_entry_id(entry));
+            ops.stats().opened(MemoryStats.Kind.TREE_ENTRY);
         }
 
+        /**
+         * @return the native entry, only valid while its tree is loaded
+         * @throws IllegalStateException once the tree is evicted or freed
+         */
         @Override
         public Pointer getPointer() {
+            if (this.closed) {
+                throw new IllegalStateException("Tree of entry " + this.name + " was freed");
+            }
             return this.entry;
         }
 
-        public String getId() {
-            Pointer oid = ops.call(git -> git.git_tree_entry_id(this.entry));
-            return ops.call(git -> git.git_oid_tostr_s(oid));
+        @Override
+        public boolean equals(Object obj) {
+            return this == obj;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+
+        /**
+         * @return the repository this entry's tree was read from
+         */
+        public Repository getOwner() {
+            return Tree.this.owner;
+        }
+
+        @Override
+        public Oid getOid() {
+            return this.oid;
         }
 
         public String getName() {
-            return ops.call(git -> git.git_tree_entry_name(this.entry));
+            return this.name;
         }
 
         @Override
         public boolean isTree() {
-            return getType() == GitObject.Type.TREE;
+            return this.mode == FileMode.TREE;
         }
 
         @SuppressWarnings("unchecked")
@@ -247,32 +532,121 @@ public class Tree extends AbstractResource implements Peelable, TreeItem {
         }
 
         public FileMode getFileMode() {
-            return ops.call(git -> git.git_tree_entry_filemode(this.entry));
+            return this.mode;
         }
 
+        /**
+         * @return the type of object this entry points to, as git_tree_entry_type
+         *     would report it from the mode
+         */
         public GitObject.Type getType() {
-            return ops.call(git -> git.git_tree_entry_type(this.entry));
+            switch (this.mode) {
+                case TREE:
+                    return GitObject.Type.TREE;
+                case COMMIT:
+                    return GitObject.Type.COMMIT;
+                case UNREADABLE:
+                    return GitObject.Type.INVALID;
+                default:
+                    return GitObject.Type.BLOB;
+            }
         }
 
-        private GitObject toObject() {
-            PointerByReference object = new PointerByReference();
-            ops.callCheck(git -> git.git_tree_entry_to_object(object, Tree.this.owner.getPointer(), this.entry));
-            if (object.getValue() == null) {
-                throw new NullPointerException("Unexpectedly unable to resolve tree entry to tree.");
+        /**
+         * Size of the blob this entry points to, read from the object
+         * header so the blob is never inflated. Trees and submodules are 0.
+         *
+         * @return size in bytes
+         */
+        public long getSize() {
+            long s = this.size;
+            if (s < 0) {
+                if (isBlob()) {
+                    s = Tree.this.owner.getOdb().readSize(GitOperations.nativeOid(this.oid));
+                } else {
+                    s = 0;
+                }
+                this.size = s;
             }
-            GitObject obj = new GitObject(ops, object.getValue(), Tree.this.owner);
-            Tree.this.owner.addOwnership(obj);
-            return obj;
+            return s;
         }
 
-        public Optional<Blob> toBlob() {
-            if (this.blob != null) {
-                return this.blob;
+        /**
+         * Open a channel over the blob's content that doesn't hold the whole
+         * inflated blob in memory, see Odb.newReadChannel.
+         *
+         * @return channel, which the caller must close
+         * @throws IllegalStateException if this entry is not a blob
+         */
+        public SeekableByteChannel newReadChannel() {
+            if (!isBlob()) {
+                throw new IllegalStateException("Not a blob: " + getName());
             }
+            return Tree.this.owner.getOdb().newReadChannel(GitOperations.nativeOid(this.oid));
+        }
 
+        // a symbolic link's target is stored as a blob too
+        private boolean isBlob() {
             FileMode mode = getFileMode();
-            if (!EnumSet.of(FileMode.BLOB, FileMode.BLOB_EXECUTABLE).contains(mode)) {
-                this.blob = Optional.empty();
+            return mode == FileMode.BLOB || mode == FileMode.BLOB_EXECUTABLE || mode == FileMode.LINK;
+        }
+
+        /**
+         * The blob for this entry, kept loaded until the repository closes.
+         *
+         * Prefer openBlob() for reads that have an end, so that the blob's
+         * memory can be given back.
+         */
+        public Optional<Blob> toBlob() {
+            if (!isBlob()) {
+                return Optional.empty();
+            }
+            synchronized (this) {
+                Blob result = loadBlob();
+                this.blobPinned = true;
+                return Optional.of(result);
+            }
+        }
+
+        /**
+         * Take a reference to the blob for this entry, loading it if needed.
+         * Callers reading the same entry share one native blob, which is
+         * freed when the last of them calls Blob.release(), and loaded again
+         * by the next openBlob().
+         *
+         * @return blob, holding the target for a symbolic link, empty if this
+         *     entry isn't one
+         */
+        public Optional<Blob> openBlob() {
+            if (!isBlob()) {
+                return Optional.empty();
+            }
+            synchronized (this) {
+                Blob result = loadBlob();
+                this.blobReferences++;
+                return Optional.of(result);
+            }
+        }
+
+        synchronized void releaseBlob(Blob released) {
+            if (released != this.blob || this.blobReferences == 0) {
+                return; // stale or unbalanced release
+            }
+            this.blobReferences--;
+            if (this.blobReferences == 0 && !this.blobPinned) {
+                this.blob = null;
+                Tree.this.owner.releaseOwnership(released);
+                try {
+                    released.close();
+                } catch (Exception e) {
+                    // swallow, same as closing with the repository
+                }
+            }
+        }
+
+        // callers hold the lock
+        private Blob loadBlob() {
+            if (this.blob != null) {
                 return this.blob;
             }
 
@@ -280,39 +654,59 @@ public class Tree extends AbstractResource implements Peelable, TreeItem {
              * Going back to git object and then peeling to BLOB doesn't work,
              * but we can just do a direct blob lookup with the entry OID.
              */
-            Pointer oid = ops.call(git -> git.git_tree_entry_id(this.entry));
-            PointerByReference blobPtr = new PointerByReference();
-            ops.callCheck(git -> git.git_blob_lookup(blobPtr, Tree.this.owner.getPointer(), oid));
-            if (blobPtr.getValue() == null) {
-                return Optional.empty();
+            PointerByReference blobPtr = GitOperations.out();
+            ops.check(ops.git()
+                    .git_blob_lookup(blobPtr, Tree.this.owner.getPointer(), GitOperations.nativeOid(this.oid)));
+            Pointer blobPointer = blobPtr.getValue();
+            if (blobPointer == null) {
+                throw new NullPointerException("Unexpectedly unable to resolve tree entry to blob.");
             }
-            Blob result = new Blob(ops, blobPtr.getValue());
+            Blob result = new Blob(ops, blobPointer);
             Tree.this.owner.addOwnership(result);
             result.fromEntry(this);
-            return Optional.of(result);
+            this.blob = result;
+            return result;
         }
 
+        /**
+         * The subtree this entry points to. It is loaded when first read
+         * and may be evicted and loaded again later, see TreeCache.
+         */
         public Optional<Tree> toTree() {
-            if (this.treeView != null) {
-                return this.treeView;
+            Optional<Tree> view = this.treeView;
+            if (view == null) {
+                synchronized (this) {
+                    view = this.treeView;
+                    if (view == null) {
+                        if (isTree()) {
+                            Tree subtree = new Tree(ops, Tree.this.owner, this.oid);
+                            subtree.fromEntry(this);
+                            view = Optional.of(subtree);
+                        } else {
+                            view = Optional.empty();
+                        }
+                        this.treeView = view;
+                    }
+                }
             }
-
-            if (!isTree()) {
-                this.treeView = Optional.empty();
-                return this.treeView;
+            if (view.isPresent()) {
+                view.get().touch();
             }
-
-            GitObject obj = toObject();
-            Optional<Tree> result = obj.peel(Tree.class);
-            result.ifPresent(t -> t.fromEntry(this));
-            this.treeView = result;
-            return result;
+            return view;
         }
 
+        /**
+         * Called as this entry's tree is freed. The entry stays readable,
+         * and its subtree, if loaded, is left for the cache to evict.
+         */
         @Override
-        public void close() throws Exception {
-            if (!ops.isClosed() && this.must_free) {
-                ops.call_void(git -> git.git_tree_entry_free(entry));
+        public void close() {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            if (!ops.isClosed()) {
+                ops.stats().closed(MemoryStats.Kind.TREE_ENTRY);
             }
         }
 
@@ -340,5 +734,25 @@ public class Tree extends AbstractResource implements Peelable, TreeItem {
         public int intValue() {
             return this.value;
         }
+
+        /**
+         * Map raw git_filemode_t bits without boxing.
+         */
+        public static FileMode valueOf(int value) {
+            switch (value) {
+                case 0040000:
+                    return TREE;
+                case 0100644:
+                    return BLOB;
+                case 0100755:
+                    return BLOB_EXECUTABLE;
+                case 0120000:
+                    return LINK;
+                case 0160000:
+                    return COMMIT;
+                default:
+                    return UNREADABLE;
+            }
+        }
     }
 }
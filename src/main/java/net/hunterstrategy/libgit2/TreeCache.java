@@ -0,0 +1,209 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+/**
+ * The subtrees a repository keeps loaded, bounded by weight and evicted
+ * least recently used first.
+ *
+ * A subtree is loaded when Tree.Entry.toTree() first needs it and weighs
+ * one more than its entry count, roughly what it and its cached entries
+ * hold. Once the total passes the limit, the least recently used subtrees
+ * are freed along with their entries. The Tree objects stay valid: the
+ * next lookup in one loads it again by id. A subtree in use by a native
+ * call, or pinned with Tree.pin(), is freed when that ends. Root trees,
+ * from commits and revparse, are never evicted.
+ *
+ * Recency is kept in a list threaded through the trees themselves, so
+ * hits don't allocate.
+ */
+public final class TreeCache {
+    public static final long DEFAULT_MAX_WEIGHT = 100_000;
+
+    private long maxWeight = DEFAULT_MAX_WEIGHT;
+    private long weight;
+    private int size;
+    // least recently used first
+    private Tree head;
+    private Tree tail;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    TreeCache() {}
+
+    /**
+     * @param maxWeight total weight of subtrees kept loaded, at least 1
+     */
+    public void setMaxWeight(long maxWeight) {
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("Tree cache weight must be at least 1: " + maxWeight);
+        }
+        Tree victims;
+        synchronized (this) {
+            this.maxWeight = maxWeight;
+            victims = overflow(null);
+        }
+        evict(victims);
+    }
+
+    public synchronized long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return subtrees loaded
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return lookups of a subtree that was already loaded
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return lookups that loaded a subtree, the first time or after it was evicted
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Add a subtree that was just loaded, evicting others to make room.
+     */
+    void admit(Tree tree, long treeWeight) {
+        Tree victims;
+        synchronized (this) {
+            misses++;
+            if (tree.cacheWeight > 0) {
+                unlink(tree);
+            }
+            tree.cacheWeight = treeWeight;
+            link(tree);
+            victims = overflow(tree);
+        }
+        evict(victims);
+    }
+
+    /**
+     * Mark a loaded subtree as most recently used.
+     */
+    synchronized void touch(Tree tree) {
+        hits++;
+        if (tree.cacheWeight > 0 && tree != tail) {
+            unlink(tree);
+            link(tree);
+        }
+    }
+
+    /**
+     * Forget a subtree that is being freed for another reason.
+     */
+    synchronized void remove(Tree tree) {
+        if (tree.cacheWeight > 0) {
+            unlink(tree);
+        }
+    }
+
+    /**
+     * Forget every subtree, when the repository closes and frees them.
+     */
+    synchronized void clear() {
+        while (head != null) {
+            unlink(head);
+        }
+    }
+
+    private void link(Tree tree) {
+        tree.lruPrev = tail;
+        tree.lruNext = null;
+        if (tail == null) {
+            head = tree;
+        } else {
+            tail.lruNext = tree;
+        }
+        tail = tree;
+        weight += tree.cacheWeight;
+        size++;
+    }
+
+    private void unlink(Tree tree) {
+        if (tree.lruPrev == null) {
+            head = tree.lruNext;
+        } else {
+            tree.lruPrev.lruNext = tree.lruNext;
+        }
+        if (tree.lruNext == null) {
+            tail = tree.lruPrev;
+        } else {
+            tree.lruNext.lruPrev = tree.lruPrev;
+        }
+        weight -= tree.cacheWeight;
+        size--;
+        tree.cacheWeight = 0;
+        tree.lruPrev = null;
+        tree.lruNext = null;
+    }
+
+    /**
+     * Unlink least recently used subtrees until the rest fit, keeping keep.
+     * Trees are freed outside this lock, since freeing takes each tree's
+     * own lock and waits out its native calls. Neither lock is ever taken
+     * while holding the other: Tree.acquire() admits after leaving its lock.
+     *
+     * @return victims, chained through lruNext
+     */
+    private Tree overflow(Tree keep) {
+        Tree victims = null;
+        while (weight > maxWeight && head != null && head != keep) {
+            Tree victim = head;
+            unlink(victim);
+            victim.lruNext = victims;
+            victims = victim;
+            evictions++;
+        }
+        return victims;
+    }
+
+    private static void evict(Tree victims) {
+        while (victims != null) {
+            Tree next = victims.lruNext;
+            victims.lruNext = null;
+            victims.evict();
+            victims = next;
+        }
+    }
+}
@@ -42,7 +42,15 @@ public interface TreeItem {
      * The git object ID of this item.
      * @return oid
      */
-    String getId();
+    Oid getOid();
+
+    /**
+     * The git object ID of this item, as hex.
+     * @return oid
+     */
+    default String getId() {
+        return getOid().toString();
+    }
 
     /**
      * The name of the item in the tree. "/" is the root entry.
@@ -0,0 +1,220 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+import jnr.ffi.Pointer;
+
+/**
+ * Every entry under a tree, from one git_tree_walk, see Tree.walk().
+ *
+ * Walking a Tree entry by entry creates an Entry per file and a Tree per
+ * directory, and makes several native calls for each. A listing is read
+ * in a single native traversal and kept in flat arrays: paths, raw modes
+ * and ids packed 20 bytes apiece. It holds no native resources.
+ */
+public final class TreeListing {
+    public static enum Order {
+        /** a directory comes before its entries */
+        PRE(0),
+        /** a directory comes after its entries */
+        POST(1);
+
+        private final int value;
+
+        private Order(int value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * Decides, as a walk goes, whether its listing is still wanted.
+     */
+    @FunctionalInterface
+    public interface Limit {
+        /**
+         * @param size entries listed so far
+         * @param chars total length of their paths
+         * @return false to stop the walk
+         */
+        boolean allows(int size, long chars);
+    }
+
+    private static final int SKIP = 1;
+    private static final int STOP = -1;
+
+    private final String[] paths;
+    private final int[] modes;
+    private final byte[] oids;
+
+    private TreeListing(String[] paths, int[] modes, byte[] oids) {
+        this.paths = paths;
+        this.modes = modes;
+        this.oids = oids;
+    }
+
+    /**
+     * @param descend for pre-order walks, whether to list a directory's
+     *     entries (the directory itself is listed either way); null for all
+     */
+    static TreeListing walk(GitOperations ops, Pointer tree, Order order, Predicate<String> descend) {
+        return walk(ops, tree, order, descend, null);
+    }
+
+    /**
+     * @param limit checked after each entry, null for none
+     * @return the listing, or null if limit stopped the walk
+     */
+    static TreeListing walk(GitOperations ops, Pointer tree, Order order, Predicate<String> descend, Limit limit) {
+        Walker walker = new Walker(ops.git(), order == Order.PRE ? descend : null, limit);
+        int code = ops.git().git_tree_walk(tree, order.value, walker, null);
+        if (walker.limited) {
+            return null;
+        }
+        if (walker.failure != null) {
+            if (walker.failure instanceof RuntimeException) {
+                throw (RuntimeException) walker.failure;
+            }
+            throw new IllegalStateException("Tree walk failed", walker.failure);
+        }
+        ops.check(code);
+        return walker.build();
+    }
+
+    public int size() {
+        return paths.length;
+    }
+
+    /**
+     * @return path relative to the walked tree, without a leading "/"
+     */
+    public String getPath(int index) {
+        return paths[index];
+    }
+
+    /**
+     * @return the entry's name, the last path component
+     */
+    public String getName(int index) {
+        String path = paths[index];
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    public Tree.FileMode getFileMode(int index) {
+        return Tree.FileMode.valueOf(modes[index]);
+    }
+
+    /**
+     * @return TREE, COMMIT for a submodule, or BLOB (files and links)
+     */
+    public GitObject.Type getType(int index) {
+        switch (getFileMode(index)) {
+            case TREE:
+                return GitObject.Type.TREE;
+            case COMMIT:
+                return GitObject.Type.COMMIT;
+            default:
+                return GitObject.Type.BLOB;
+        }
+    }
+
+    public boolean isTree(int index) {
+        return getFileMode(index) == Tree.FileMode.TREE;
+    }
+
+    public Oid getOid(int index) {
+        return Oid.fromRaw(oids, index * Oid.RAW_SIZE);
+    }
+
+    /**
+     * Collects entries from git_tree_walk callbacks.
+     */
+    private static final class Walker implements TreeOps.TreeWalkCallback {
+        private final Libgit2 git;
+        private final Predicate<String> descend;
+        private final Limit limit;
+        private String[] paths = new String[256];
+        private int[] modes = new int[256];
+        private byte[] oids = new byte[256 * Oid.RAW_SIZE];
+        private int size;
+        private long chars;
+        private boolean limited;
+        private Throwable failure;
+
+        // the root buffer is reused, but usually holds the same directory as the last entry
+        private String lastRoot = "";
+
+        private Walker(Libgit2 git, Predicate<String> descend, Limit limit) {
+            this.git = git;
+            this.descend = descend;
+            this.limit = limit;
+        }
+
+        @Override
+        public int invoke(Pointer root, Pointer entry, Pointer payload) {
+            try {
+                if (size == paths.length) {
+                    grow();
+                }
+                String dir = root.getString(0);
+                if (dir.equals(lastRoot)) {
+                    dir = lastRoot;
+                } else {
+                    lastRoot = dir;
+                }
+                String path = dir + git.git_tree_entry_name(entry);
+                int mode = git.git_tree_entry_filemode(entry);
+                git.git_tree_entry_id(entry).get(0, oids, size * Oid.RAW_SIZE, Oid.RAW_SIZE);
+                paths[size] = path;
+                modes[size] = mode;
+                size++;
+                chars += path.length();
+                if (limit != null && !limit.allows(size, chars)) {
+                    limited = true;
+                    return STOP;
+                }
+
+                if (descend != null && mode == Tree.FileMode.TREE.intValue() && !descend.test(path)) {
+                    return SKIP;
+                }
+                return 0;
+            } catch (Throwable t) {
+                failure = t;
+                return STOP;
+            }
+        }
+
+        private void grow() {
+            int capacity = paths.length * 2;
+            paths = Arrays.copyOf(paths, capacity);
+            modes = Arrays.copyOf(modes, capacity);
+            oids = Arrays.copyOf(oids, capacity * Oid.RAW_SIZE);
+        }
+
+        private TreeListing build() {
+            return new TreeListing(
+                    Arrays.copyOf(paths, size), Arrays.copyOf(modes, size), Arrays.copyOf(oids, size * Oid.RAW_SIZE));
+        }
+    }
+}
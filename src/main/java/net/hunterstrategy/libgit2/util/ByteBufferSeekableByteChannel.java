@@ -27,11 +27,26 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SeekableByteChannel;
 
+/**
+ * A read-only channel over a ByteBuffer, typically a direct buffer over
+ * libgit2's blob memory.
+ *
+ * Reads copy straight from the source buffer into the destination through a
+ * duplicate view narrowed to the bytes being read, so there is no
+ * intermediate array and the source buffer itself is never modified. The
+ * channel position is tracked separately from the source buffer,
+ * so it may be set past the end (reads then return -1), as SeekableByteChannel
+ * allows.
+ */
 public class ByteBufferSeekableByteChannel implements SeekableByteChannel {
     private volatile ByteBuffer buf;
+    private final int size;
+    private long position;
 
     public ByteBufferSeekableByteChannel(ByteBuffer buf) {
         this.buf = buf;
+        this.size = buf == null ? 0 : buf.limit();
+        this.position = buf == null ? 0 : buf.position();
     }
 
     @Override
@@ -39,33 +54,37 @@ public class ByteBufferSeekableByteChannel implements SeekableByteChannel {
         return buf != null;
     }
 
+    /**
+     * Waits for a read in progress, which may be copying from memory the
+     * caller frees once this returns.
+     */
     @Override
-    public void close() throws IOException {
+    public synchronized void close() throws IOException {
         buf = null;
     }
 
-    private void checkClosed() throws IOException {
-        if (!isOpen()) {
+    private ByteBuffer checkClosed() throws IOException {
+        ByteBuffer b = buf;
+        if (b == null) {
             throw new ClosedChannelException();
         }
+        return b;
     }
 
     @Override
-    public int read(ByteBuffer dst) throws IOException {
-        checkClosed();
-        if (buf.remaining() <= 0) {
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        ByteBuffer src = checkClosed();
+        if (position >= size) {
             return -1;
         }
 
-        int destinationRemaining = dst.remaining();
-        int remaining = buf.remaining();
-        int sizeToCopy = Math.min(destinationRemaining, remaining);
-
-        byte[] chunk = new byte[sizeToCopy];
-        buf.get(chunk);
-        int dstPos = dst.position();
-        dst.put(chunk);
-        dst.position(dstPos);
+        int start = (int) position;
+        int sizeToCopy = Math.min(dst.remaining(), size - start);
+        ByteBuffer view = src.duplicate();
+        view.limit(start + sizeToCopy);
+        view.position(start);
+        dst.put(view);
+        position = start + sizeToCopy;
         return sizeToCopy;
     }
 
@@ -77,22 +96,25 @@ public class ByteBufferSeekableByteChannel implements SeekableByteChannel {
     }
 
     @Override
-    public long position() throws IOException {
+    public synchronized long position() throws IOException {
         checkClosed();
-        return buf.position();
+        return position;
     }
 
     @Override
-    public SeekableByteChannel position(long newPosition) throws IOException {
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
         checkClosed();
-        buf.position((int) newPosition);
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position: " + newPosition);
+        }
+        this.position = newPosition;
         return this;
     }
 
     @Override
     public long size() throws IOException {
         checkClosed();
-        return buf.capacity();
+        return size;
     }
 
     @Override
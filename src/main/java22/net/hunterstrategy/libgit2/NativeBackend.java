@@ -0,0 +1,150 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+import java.io.File;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import jnr.ffi.Platform;
+import jnr.ffi.Pointer;
+
+/**
+ * The blob read path and native memory views, java.lang.foreign version.
+ *
+ * Downcalls are linked once, as critical functions: they are trivial
+ * getters that neither block nor call back into Java, so the thread state
+ * transition is skipped. Views are segments bounded to the exact size of
+ * the native buffer; the memory is libgit2's, so they use the global scope
+ * and are only valid until libgit2 frees it, just like the JNR version.
+ *
+ * If libgit2 can't be found through java.lang.foreign, every call falls
+ * back to JNR. Restricted methods are used, so run with
+ * --enable-native-access=ALL-UNNAMED to avoid the JDK's warning.
+ */
+final class NativeBackend {
+    private static final MethodHandle BLOB_RAWSIZE;
+    private static final MethodHandle BLOB_RAWCONTENT;
+
+    static {
+        SymbolLookup lookup = lookup();
+        Linker linker = Linker.nativeLinker();
+        Linker.Option critical = Linker.Option.critical(false);
+        BLOB_RAWSIZE = lookup == null
+                ? null
+                : lookup.find("git_blob_rawsize")
+                        .map(s -> linker.downcallHandle(s, FunctionDescriptor.of(JAVA_LONG, ADDRESS), critical))
+                        .orElse(null);
+        BLOB_RAWCONTENT = lookup == null
+                ? null
+                : lookup.find("git_blob_rawcontent")
+                        .map(s -> linker.downcallHandle(s, FunctionDescriptor.of(ADDRESS, ADDRESS), critical))
+                        .orElse(null);
+    }
+
+    private NativeBackend() {}
+
+    /**
+     * The library JNR loaded. JNR searches jnr.ffi.library.path (and the
+     * other library path properties) before the system's default search, so
+     * the same file is resolved here in the same order: a library located
+     * on those paths first, and only then the plain name on the default
+     * search path. Otherwise a user-configured libgit2 and a system one
+     * could end up mixed in one process.
+     */
+    private static SymbolLookup lookup() {
+        List<String> paths = new ArrayList<>();
+        for (String property : new String[] {"jnr.ffi.library.path", "jna.library.path", "java.library.path"}) {
+            String value = System.getProperty(property);
+            if (value != null) {
+                paths.addAll(List.of(value.split(File.pathSeparator)));
+            }
+        }
+        paths.addAll(List.of("/usr/local/lib", "/usr/lib", "/lib"));
+        try {
+            // the mapped name itself when nothing is found on the paths
+            String located = Platform.getNativePlatform().locateLibrary("git2", paths);
+            if (new File(located).isAbsolute()) {
+                return SymbolLookup.libraryLookup(Path.of(located), Arena.global());
+            }
+        } catch (RuntimeException e) {
+            // fall through to the default search path
+        }
+        try {
+            return SymbolLookup.libraryLookup(System.mapLibraryName("git2"), Arena.global());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return "ffm", or "jnr" if libgit2 couldn't be linked through java.lang.foreign
+     */
+    static String name() {
+        return BLOB_RAWSIZE != null && BLOB_RAWCONTENT != null ? "ffm" : "jnr";
+    }
+
+    static long blobRawSize(Libgit2 git, Pointer blob) {
+        if (BLOB_RAWSIZE == null) {
+            return git.git_blob_rawsize(blob);
+        }
+        try {
+            return (long) BLOB_RAWSIZE.invokeExact(MemorySegment.ofAddress(blob.address()));
+        } catch (Throwable t) {
+            throw new IllegalStateException("git_blob_rawsize failed", t);
+        }
+    }
+
+    /**
+     * @return a direct buffer over the blob's content, valid until the blob is freed
+     */
+    static ByteBuffer blobContent(Libgit2 git, Pointer blob, int size) {
+        if (BLOB_RAWCONTENT == null) {
+            return view(git.git_blob_rawcontent(blob).address(), size);
+        }
+        MemorySegment content;
+        try {
+            content = (MemorySegment) BLOB_RAWCONTENT.invokeExact(MemorySegment.ofAddress(blob.address()));
+        } catch (Throwable t) {
+            throw new IllegalStateException("git_blob_rawcontent failed", t);
+        }
+        return content.reinterpret(size).asByteBuffer();
+    }
+
+    /**
+     * A direct buffer over native memory that someone else owns and frees.
+     */
+    static ByteBuffer view(long address, int length) {
+        return MemorySegment.ofAddress(address).reinterpret(length).asByteBuffer();
+    }
+}
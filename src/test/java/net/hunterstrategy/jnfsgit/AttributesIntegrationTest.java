@@ -63,24 +63,19 @@ public class AttributesIntegrationTest implements GitRepoTestSupport {
     }
 
     @Test
-    public void cannot_follow_symlinks() throws Exception {
+    public void follow_symlinks() throws Exception {
         try (FileSystem fs = fs("HEAD", "attributes")) {
-            Throwable cause = Assertions.assertThrows(UnsupportedOperationException.class, () -> {
-                Files.readAttributes(fs.getPath("regular_file"), BasicFileAttributes.class, new LinkOption[0]);
-            });
-            assertLinkFollowException(cause);
+            BasicFileAttributes attr =
+                    Files.readAttributes(fs.getPath("regular_file"), BasicFileAttributes.class, new LinkOption[0]);
+            Assertions.assertTrue(attr.isRegularFile());
 
-            cause = Assertions.assertThrows(UnsupportedOperationException.class, () -> {
-                Files.readAttributes(fs.getPath("regular_file"), BasicFileAttributes.class, (LinkOption[]) null);
-            });
-            assertLinkFollowException(cause);
+            attr = Files.readAttributes(fs.getPath("symlink"), BasicFileAttributes.class, (LinkOption[]) null);
+            Assertions.assertTrue(attr.isRegularFile());
+            Assertions.assertFalse(attr.isSymbolicLink());
+            Assertions.assertEquals(fs.getPath("/regular_file").toUri(), attr.fileKey());
         }
     }
 
-    void assertLinkFollowException(Throwable cause) {
-        Assertions.assertEquals("Cannot follow symlinks.", cause.getMessage());
-    }
-
     @Test
     public void read_unsupported_attributes() throws Exception {
         try (FileSystem fs = fs("HEAD", "attributes")) {
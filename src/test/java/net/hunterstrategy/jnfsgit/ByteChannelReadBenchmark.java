@@ -0,0 +1,188 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.jnfsgit;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import net.hunterstrategy.libgit2.util.ByteBufferSeekableByteChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Reading a whole blob-sized direct buffer through a channel, 8 KiB at a time:
+ * the previous ByteBufferSeekableByteChannel (temporary byte[] per read),
+ * the current one (bulk put from a duplicate view of the source, which is
+ * left untouched), and the current one created through the
+ * JNFSGIT_IO_WRAPPER reflective hook.
+ *
+ * Pure Java, libgit2 is not needed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ByteChannelReadBenchmark {
+    @Param({"4096", "1048576"})
+    public int size;
+
+    private ByteBuffer blob;
+    private ByteBuffer heapDst;
+    private ByteBuffer directDst;
+    private Function<ByteBuffer, SeekableByteChannel> hook;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        blob = ByteBuffer.allocateDirect(size);
+        for (int i = 0; i < size; i++) {
+            blob.put(i, (byte) i);
+        }
+        heapDst = ByteBuffer.allocate(8192);
+        directDst = ByteBuffer.allocateDirect(8192);
+        hook = GitFileSystemProvider.initIoWrapper(ByteBufferSeekableByteChannel.class.getName());
+    }
+
+    private static long drain(SeekableByteChannel chan, ByteBuffer dst) throws IOException {
+        long total = 0;
+        int n;
+        dst.clear();
+        while ((n = chan.read(dst)) > 0) {
+            total += n;
+            dst.clear();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long legacy_heap() throws IOException {
+        return drain(new LegacyByteBufferSeekableByteChannel(blob.duplicate()), heapDst);
+    }
+
+    @Benchmark
+    public long legacy_direct() throws IOException {
+        return drain(new LegacyByteBufferSeekableByteChannel(blob.duplicate()), directDst);
+    }
+
+    @Benchmark
+    public long current_heap() throws IOException {
+        return drain(new ByteBufferSeekableByteChannel(blob.duplicate()), heapDst);
+    }
+
+    @Benchmark
+    public long current_direct() throws IOException {
+        return drain(new ByteBufferSeekableByteChannel(blob.duplicate()), directDst);
+    }
+
+    @Benchmark
+    public long io_wrapper_hook_direct() throws IOException {
+        return drain(hook.apply(blob.duplicate()), directDst);
+    }
+
+    /**
+     * The read path as it was before, kept for comparison.
+     */
+    static class LegacyByteBufferSeekableByteChannel implements SeekableByteChannel {
+        private volatile ByteBuffer buf;
+
+        LegacyByteBufferSeekableByteChannel(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return buf != null;
+        }
+
+        @Override
+        public void close() {
+            buf = null;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!isOpen()) {
+                throw new ClosedChannelException();
+            }
+            if (buf.remaining() <= 0) {
+                return -1;
+            }
+            int sizeToCopy = Math.min(dst.remaining(), buf.remaining());
+            byte[] chunk = new byte[sizeToCopy];
+            buf.get(chunk);
+            int dstPos = dst.position();
+            dst.put(chunk);
+            dst.position(dstPos);
+            return sizeToCopy;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            return 0;
+        }
+
+        @Override
+        public long position() {
+            return buf.position();
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) {
+            buf.position((int) newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() {
+            return buf.capacity();
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            return this;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                        .include(ByteChannelReadBenchmark.class.getSimpleName())
+                        .build())
+                .run();
+    }
+}
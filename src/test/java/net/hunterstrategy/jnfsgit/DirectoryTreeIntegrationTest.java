@@ -22,10 +22,12 @@
 package net.hunterstrategy.jnfsgit;
 
 
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -88,4 +90,38 @@ public class DirectoryTreeIntegrationTest implements GitRepoTestSupport {
             Assertions.assertTrue(pathNames.contains("baz"));
         }
     }
+
+    @Test
+    public void directory_stream_filters_lazily() throws Exception {
+        try (FileSystem fs = fs("main", "dirtree")) {
+            AtomicInteger accepted = new AtomicInteger(0);
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(fs.getPath("dir"), p -> {
+                accepted.incrementAndGet();
+                return true;
+            })) {
+                Iterator<Path> it = stream.iterator();
+                Assertions.assertEquals(0, accepted.get());
+                Assertions.assertEquals("bar", it.next().getFileName().toString());
+                Assertions.assertEquals(1, accepted.get());
+
+                stream.close();
+                Assertions.assertFalse(it.hasNext());
+                Assertions.assertEquals(1, accepted.get());
+            }
+        }
+    }
+
+    @Test
+    public void directory_stream_one_iterator() throws Exception {
+        try (FileSystem fs = fs("main", "dirtree")) {
+            DirectoryStream<Path> stream = Files.newDirectoryStream(fs.getPath("dir"));
+            stream.iterator();
+            Assertions.assertThrows(IllegalStateException.class, stream::iterator);
+            stream.close();
+
+            DirectoryStream<Path> closed = Files.newDirectoryStream(fs.getPath("dir"));
+            closed.close();
+            Assertions.assertThrows(IllegalStateException.class, closed::iterator);
+        }
+    }
 }
@@ -0,0 +1,125 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.jnfsgit;
+
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import net.hunterstrategy.libgit2.MemoryStats;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import net.hunterstrategy.util.IntegrationTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * filters.zip: .gitattributes has "*.txt text eol=crlf" and "*.c ident".
+ */
+@IntegrationTest
+public class FilteredReadIntegrationTest implements GitRepoTestSupport {
+    private static final Map<String, Object> STREAM_EVERYTHING = Map.of("streamingThreshold", 0L);
+
+    @TempDir
+    static Path tempDir;
+
+    @Override
+    public Path getTempDir() {
+        return tempDir;
+    }
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        GitRepoTestSupport.unzipRepo(tempDir, "filters.zip");
+    }
+
+    private static String read(Path path) throws Exception {
+        try (InputStream in = Files.newInputStream(path, GitOpenOption.FILTERED)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void raw_by_default() throws Exception {
+        try (FileSystem fs = fs("main", "filters")) {
+            Assertions.assertEquals("a\nb\n", Files.readString(fs.getPath("dos.txt")));
+            Assertions.assertEquals("$Id$\n", Files.readString(fs.getPath("id.c")));
+        }
+    }
+
+    @Test
+    public void eol_conversion() throws Exception {
+        try (FileSystem fs = fs("main", "filters")) {
+            Assertions.assertEquals("a\r\nb\r\n", read(fs.getPath("dos.txt")));
+            Assertions.assertEquals("a\nb\n", read(fs.getPath("plain")));
+        }
+    }
+
+    @Test
+    public void ident_expansion() throws Exception {
+        try (FileSystem fs = fs("main", "filters")) {
+            Assertions.assertEquals("$Id: 055c8729cdcc372500a08db659c045e16c4409fb $\n", read(fs.getPath("/id.c")));
+        }
+    }
+
+    @Test
+    public void filtered_buffer_freed_on_close() throws Exception {
+        try (FileSystem fs = fs("main", "filters")) {
+            MemoryStats stats = ((GitFileSystem) fs).getMemoryStats();
+            try (InputStream in = Files.newInputStream(fs.getPath("dos.txt"), GitOpenOption.FILTERED)) {
+                Assertions.assertEquals(1, stats.getCount(MemoryStats.Kind.FILTERED_BUFFER));
+                Assertions.assertEquals(6, stats.getBytes(MemoryStats.Kind.FILTERED_BUFFER));
+            }
+            Assertions.assertEquals(0, stats.getCount(MemoryStats.Kind.FILTERED_BUFFER));
+            Assertions.assertEquals(0, stats.getCount(MemoryStats.Kind.BLOB));
+        }
+    }
+
+    @Test
+    public void large_blobs_filter_to_a_file() throws Exception {
+        try (FileSystem fs = FileSystems.newFileSystem(uri("main", "filters"), STREAM_EVERYTHING)) {
+            MemoryStats stats = ((GitFileSystem) fs).getMemoryStats();
+            try (InputStream in = Files.newInputStream(fs.getPath("dos.txt"), GitOpenOption.FILTERED)) {
+                Assertions.assertEquals(0, stats.getCount(MemoryStats.Kind.FILTERED_BUFFER));
+                Assertions.assertEquals(0, stats.getCount(MemoryStats.Kind.BLOB));
+                Assertions.assertEquals("a\r\nb\r\n", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            Assertions.assertEquals("$Id: 055c8729cdcc372500a08db659c045e16c4409fb $\n", read(fs.getPath("id.c")));
+        }
+    }
+
+    @Test
+    public void large_blobs_without_filters_stream() throws Exception {
+        try (FileSystem fs = FileSystems.newFileSystem(uri("main", "filters"), STREAM_EVERYTHING)) {
+            MemoryStats stats = ((GitFileSystem) fs).getMemoryStats();
+            try (InputStream in = Files.newInputStream(fs.getPath("plain"), GitOpenOption.FILTERED)) {
+                Assertions.assertEquals(0, stats.getCount(MemoryStats.Kind.BLOB));
+                Assertions.assertEquals("a\nb\n", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
@@ -376,4 +376,30 @@ public class GitFileSystemProviderIntegrationTest implements GitRepoTestSupport
         Assertions.assertEquals(0, a_bytes.length);
         fs.close();
     }
+
+    @Test
+    public void file_sizes_over_history() throws Exception {
+        @SuppressWarnings("serial")
+        Map<String, long[]> expectedSizes = new TreeMap<>() {
+            {
+                put("HEAD@{1}", new long[] {4, 4});
+                put("HEAD@{2}", new long[] {4, 0});
+                put("HEAD@{3}", new long[] {0, 0});
+            }
+        };
+
+        for (Entry<String, long[]> e : expectedSizes.entrySet()) {
+            FileSystem fs = fs(e.getKey());
+            long a = Files.readAttributes(fs.getPath("a"), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS)
+                    .size();
+            long b = Files.readAttributes(fs.getPath("b"), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS)
+                    .size();
+            Assertions.assertEquals(e.getValue()[0], a, e.getKey());
+            Assertions.assertEquals(e.getValue()[1], b, e.getKey());
+            Assertions.assertEquals(
+                    0,
+                    Files.readAttributes(fs.getPath("/"), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS)
+                            .size());
+        }
+    }
 }
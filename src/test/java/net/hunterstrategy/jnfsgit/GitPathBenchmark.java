@@ -0,0 +1,138 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.jnfsgit;
+
+
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * The path operations Files.walk performs for every file: building a child
+ * path from a directory entry, turning it into the string used for tree
+ * lookups, hashing it, and the getFileName/getParent/relativize calls
+ * callers typically make on the result. to_uri covers fileKey, which walks
+ * following links compare.
+ *
+ * Requires libgit2 on the library path, for the filesystem the paths
+ * belong to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GitPathBenchmark {
+    private Path tempDir;
+    private FileSystem fs;
+    private GitPath start;
+    private GitPath dir;
+    private GitPath file;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        tempDir = Files.createTempDirectory("jnfsgit-bench");
+        GitRepoTestSupport.unzipRepo(tempDir, "repo1.zip");
+        URI uri = GitURI.toURI(tempDir.toString(), "HEAD");
+        fs = FileSystems.newFileSystem(uri, Map.of());
+        start = (GitPath) fs.getPath("/src");
+        dir = (GitPath) fs.getPath("/src/main/java/net/hunterstrategy/jnfsgit");
+        file = dir.resolveName("GitPath.java");
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        fs.close();
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public String resolve_child_to_string() {
+        return dir.resolveName("GitPath.java").toString();
+    }
+
+    @Benchmark
+    public int resolve_child_hash() {
+        return dir.resolveName("GitPath.java").hashCode();
+    }
+
+    @Benchmark
+    public Path get_path() {
+        return fs.getPath("/src/main/java/net/hunterstrategy/jnfsgit/GitPath.java");
+    }
+
+    @Benchmark
+    public Path file_name() {
+        return file.getFileName();
+    }
+
+    @Benchmark
+    public Path parent() {
+        return file.getParent();
+    }
+
+    @Benchmark
+    public Path relativize() {
+        return start.relativize(file);
+    }
+
+    @Benchmark
+    public boolean equal_paths() {
+        return file.equals(dir.resolveName("GitPath.java"));
+    }
+
+    @Benchmark
+    public URI to_uri() {
+        return dir.resolveName("GitPath.java").toUri();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                        .include(GitPathBenchmark.class.getSimpleName())
+                        .build())
+                .run();
+    }
+}
@@ -163,10 +163,6 @@ public class GitPathTest {
         Assertions.assertThrows(UnsupportedOperationException.class, () -> {
             path1.register(null, new Kind<?>[] {});
         });
-
-        Assertions.assertThrows(UnsupportedOperationException.class, () -> {
-            path1.toRealPath();
-        });
     }
 
     @Test
@@ -239,4 +235,34 @@ public class GitPathTest {
         Path relative = fs.getPath("dir", "..", "dir2");
         Assertions.assertEquals("dir2", relative.normalize().toString());
     }
+
+    @Test
+    public void whole_names() {
+        EasyMock.replay(fs);
+
+        GitPath path1 = new GitPath(fs, new GitURI(GitURI.toURI("/path/to/repo", "HEAD", "/path//to/file/")));
+        Assertions.assertEquals("/path/to/file", path1.toString());
+        Assertions.assertEquals(3, path1.getNameCount());
+
+        GitPath partial = new GitPath(fs, new GitURI(GitURI.toURI("/path/to/repo", "HEAD", "/pa")));
+        Assertions.assertFalse(path1.startsWith(partial));
+        Assertions.assertFalse(path1.endsWith(FileSystems.getDefault().getPath("ile")));
+
+        GitPath child = path1.getParent().resolveName(new String("file"));
+        Assertions.assertEquals(path1, child);
+        Assertions.assertEquals(path1.hashCode(), child.hashCode());
+    }
+
+    @Test
+    public void dot_dot() {
+        EasyMock.replay(fs);
+
+        Assertions.assertEquals("/a", fs.getPath("/..", "a").normalize().toString());
+        Assertions.assertEquals("../b", fs.getPath("../a/../b").normalize().toString());
+
+        GitPath from = GitPath.class.cast(fs.getPath("/a/b/c"));
+        Assertions.assertEquals("../../d", from.relativize(fs.getPath("/a/d")).toString());
+        Assertions.assertEquals("", from.relativize(from).toString());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> from.relativize(fs.getPath("d")));
+    }
 }
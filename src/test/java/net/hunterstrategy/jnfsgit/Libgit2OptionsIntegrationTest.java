@@ -0,0 +1,110 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.jnfsgit;
+
+
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import net.hunterstrategy.libgit2.Libgit2Options;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import net.hunterstrategy.util.IntegrationTest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.CleanupMode;
+import org.junit.jupiter.api.io.TempDir;
+
+@IntegrationTest
+public class Libgit2OptionsIntegrationTest implements GitRepoTestSupport {
+    @TempDir(cleanup = CleanupMode.ON_SUCCESS)
+    static Path tempDir;
+
+    private static long mwindowSize;
+    private static long mwindowMappedLimit;
+    private static long mwindowFileLimit;
+
+    @Override
+    public Path getTempDir() {
+        return tempDir;
+    }
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        GitRepoTestSupport.unzipRepo(tempDir, "repo1-bare.git.zip");
+        mwindowSize = Libgit2Options.getMwindowSize();
+        mwindowMappedLimit = Libgit2Options.getMwindowMappedLimit();
+        mwindowFileLimit = Libgit2Options.getMwindowFileLimit();
+    }
+
+    @AfterAll
+    public static void restore() {
+        // options are process-wide, don't leak them into other tests
+        Libgit2Options.setMwindowSize(mwindowSize);
+        Libgit2Options.setMwindowMappedLimit(mwindowMappedLimit);
+        Libgit2Options.setMwindowFileLimit(mwindowFileLimit);
+        Libgit2Options.setCaching(true);
+        Libgit2Options.setStrictHashVerification(true);
+    }
+
+    @Test
+    public void options_from_env() throws Exception {
+        Map<String, Object> env = new HashMap<>();
+        env.put("mwindowSize", 1024 * 1024);
+        env.put("mwindowMappedLimit", 64L * 1024 * 1024);
+        env.put("mwindowFileLimit", 16L);
+        env.put("cacheMaxSize", 32L * 1024 * 1024);
+        env.put("cacheObjectLimit.blob", 16 * 1024);
+        env.put("caching", true);
+        env.put("strictHashVerification", false);
+
+        try (FileSystem fs = FileSystems.newFileSystem(uri("HEAD", "repo1-bare.git"), env)) {
+            Assertions.assertEquals(1024 * 1024, Libgit2Options.getMwindowSize());
+            Assertions.assertEquals(64L * 1024 * 1024, Libgit2Options.getMwindowMappedLimit());
+            Assertions.assertEquals(16, Libgit2Options.getMwindowFileLimit());
+            // packed objects still read with the small windows
+            Assertions.assertEquals("bar\n", Files.readString(fs.getPath("b")));
+        }
+    }
+
+    @Test
+    public void not_applied_when_the_filesystem_already_exists() throws Exception {
+        try (FileSystem fs = FileSystems.newFileSystem(uri("HEAD", "repo1-bare.git"), Map.of())) {
+            long before = Libgit2Options.getMwindowSize();
+            Assertions.assertThrows(
+                    FileSystemAlreadyExistsException.class,
+                    () -> FileSystems.newFileSystem(uri("HEAD", "repo1-bare.git"), Map.of("mwindowSize", before + 1)));
+            Assertions.assertEquals(before, Libgit2Options.getMwindowSize());
+        }
+    }
+
+    @Test
+    public void invalid_values() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Libgit2Options.setMwindowSize(-1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Libgit2Options.setCacheMaxSize(-1));
+    }
+}
@@ -0,0 +1,71 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.jnfsgit;
+
+
+import java.nio.file.Path;
+import java.util.Optional;
+import net.hunterstrategy.libgit2.NoteSnapshot;
+import net.hunterstrategy.libgit2.Oid;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import net.hunterstrategy.util.IntegrationTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@IntegrationTest
+public class NotesIntegrationTest implements GitRepoTestSupport {
+    @TempDir
+    static Path tempDir;
+
+    @Override
+    public Path getTempDir() {
+        return tempDir;
+    }
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        GitRepoTestSupport.unzipRepo(tempDir, "notes.zip");
+    }
+
+    @Test
+    public void revision_note() throws Exception {
+        try (GitFileSystem fs = (GitFileSystem) fs("main", "notes")) {
+            Assertions.assertEquals(Optional.of("build 3\n"), fs.getNote());
+
+            NoteSnapshot notes = fs.getNotes();
+            Assertions.assertSame(notes, fs.getNotes());
+            Assertions.assertEquals(2, notes.size());
+
+            Oid two = Oid.fromString("e7245a3bf1cb5d3b5a7c37fd224efef34c417f5f");
+            Assertions.assertEquals(Optional.of("ci ok\n"), fs.getNotes("refs/notes/build").getMessage(two));
+        }
+    }
+
+    @Test
+    public void revision_without_note() throws Exception {
+        try (GitFileSystem fs = (GitFileSystem) fs("main~1", "notes")) {
+            Assertions.assertEquals(Optional.empty(), fs.getNote());
+        }
+    }
+}
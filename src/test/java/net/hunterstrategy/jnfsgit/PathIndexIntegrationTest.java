@@ -0,0 +1,105 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.jnfsgit;
+
+
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.Map;
+import net.hunterstrategy.libgit2.Tree;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import net.hunterstrategy.util.IntegrationTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * dirtree.zip: dir/{bar,baz,foo} and dir/child/{a,b,c}, 8 paths in all.
+ */
+@IntegrationTest
+public class PathIndexIntegrationTest implements GitRepoTestSupport {
+    @TempDir
+    static Path tempDir;
+
+    @Override
+    public Path getTempDir() {
+        return tempDir;
+    }
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        GitRepoTestSupport.unzipRepo(tempDir, "dirtree.zip");
+    }
+
+    private static void assertLookups(FileSystem fs) throws Exception {
+        Assertions.assertTrue(Files.isDirectory(fs.getPath("/dir/child"), LinkOption.NOFOLLOW_LINKS));
+        Assertions.assertTrue(Files.isRegularFile(fs.getPath("dir/child/b"), LinkOption.NOFOLLOW_LINKS));
+        Assertions.assertTrue(Files.exists(fs.getPath("dir", "foo")));
+        Assertions.assertFalse(Files.exists(fs.getPath("dir/child/d")));
+        Assertions.assertFalse(Files.exists(fs.getPath("dir/foo/a")));
+        Assertions.assertFalse(Files.exists(fs.getPath("di")));
+        Assertions.assertEquals("", Files.readString(fs.getPath("dir/baz")));
+    }
+
+    @Test
+    public void eager_index() throws Exception {
+        try (FileSystem fs = FileSystems.newFileSystem(uri("main", "dirtree"), Map.of("pathIndex", "eager"))) {
+            PathIndex index = ((GitFileSystem) fs).getPathIndex().get();
+            Assertions.assertEquals(8, index.size());
+            assertLookups(fs);
+
+            // entries come from the tree, which keeps them while it is cached
+            Tree.Entry entry = index.lookup("/dir/child/a");
+            Assertions.assertEquals("a", entry.getName());
+            Assertions.assertSame(entry, index.lookup("dir/child/a"));
+        }
+    }
+
+    @Test
+    public void lazy_index() throws Exception {
+        try (FileSystem fs = FileSystems.newFileSystem(uri("main", "dirtree"), Map.of("pathIndex", "lazy"))) {
+            assertLookups(fs);
+            Assertions.assertTrue(((GitFileSystem) fs).getPathIndex().isPresent());
+        }
+    }
+
+    @Test
+    public void over_memory_cap() throws Exception {
+        Map<String, Object> env = Map.of("pathIndex", "eager", "pathIndexMaxBytes", 64);
+        try (FileSystem fs = FileSystems.newFileSystem(uri("main", "dirtree"), env)) {
+            Assertions.assertTrue(((GitFileSystem) fs).getPathIndex().isEmpty());
+            assertLookups(fs);
+        }
+    }
+
+    @Test
+    public void off_by_default() throws Exception {
+        try (FileSystem fs = FileSystems.newFileSystem(uri("main", "dirtree"), Map.of())) {
+            Assertions.assertTrue(((GitFileSystem) fs).getPathIndex().isEmpty());
+            assertLookups(fs);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.jnfsgit;
+
+
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.hunterstrategy.libgit2.Repository;
+import net.hunterstrategy.libgit2.RepositoryPool;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import net.hunterstrategy.util.IntegrationTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@IntegrationTest
+public class RepositoryPoolIntegrationTest implements GitRepoTestSupport {
+    @TempDir
+    static Path tempDir;
+
+    @Override
+    public Path getTempDir() {
+        return tempDir;
+    }
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        GitRepoTestSupport.unzipRepo(tempDir, "repo1-bare.git.zip");
+    }
+
+    @Test
+    public void pool_is_bounded() throws Exception {
+        try (RepositoryPool pool =
+                new RepositoryPool(tempDir.resolve("repo1-bare.git").toString(), true, 2)) {
+            Repository first = pool.borrow();
+            Repository second = pool.borrow();
+            Assertions.assertNotSame(first, second);
+            Assertions.assertEquals(2, pool.size());
+
+            pool.giveBack(first);
+            Assertions.assertSame(first, pool.borrow());
+            Assertions.assertEquals(2, pool.size());
+            pool.giveBack(first);
+            pool.giveBack(second);
+            Assertions.assertThrows(IllegalStateException.class, () -> pool.giveBack(second));
+        }
+    }
+
+    @Test
+    public void close_waits_for_borrowed_handles() throws Exception {
+        RepositoryPool pool = new RepositoryPool(tempDir.resolve("repo1-bare.git").toString(), true, 2);
+        Repository borrowed = pool.borrow();
+        Repository idle = pool.borrow();
+        pool.giveBack(idle);
+
+        pool.close();
+        Assertions.assertFalse(idle.isOpen());
+        Assertions.assertTrue(borrowed.isOpen());
+        Assertions.assertThrows(IllegalStateException.class, pool::borrow);
+
+        pool.giveBack(borrowed);
+        Assertions.assertFalse(borrowed.isOpen());
+        Assertions.assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void close_wakes_waiting_borrowers() throws Exception {
+        RepositoryPool pool = new RepositoryPool(tempDir.resolve("repo1-bare.git").toString(), true, 1);
+        Repository only = pool.borrow();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Repository> waiting = executor.submit(pool::borrow);
+            pool.close();
+            ExecutionException e = Assertions.assertThrows(
+                    ExecutionException.class, () -> waiting.get(10, TimeUnit.SECONDS));
+            Assertions.assertInstanceOf(IllegalStateException.class, e.getCause());
+            pool.giveBack(only);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void opening_doesnt_hold_up_other_borrowers() throws Exception {
+        CountDownLatch opening = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        AtomicInteger opened = new AtomicInteger();
+        RepositoryPool pool = new RepositoryPool(tempDir.resolve("repo1-bare.git").toString(), true, 2, repo -> {
+            if (opened.incrementAndGet() == 2) {
+                opening.countDown();
+                try {
+                    proceed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Repository first = pool.borrow();
+            Future<Repository> second = executor.submit(pool::borrow);
+            opening.await();
+
+            // the second handle is still opening
+            Future<Repository> again = executor.submit(() -> {
+                pool.giveBack(first);
+                return pool.borrow();
+            });
+            Assertions.assertSame(first, again.get(10, TimeUnit.SECONDS));
+
+            proceed.countDown();
+            Assertions.assertNotSame(first, second.get(10, TimeUnit.SECONDS));
+            Assertions.assertEquals(2, pool.size());
+            pool.giveBack(first);
+            pool.giveBack(second.get());
+        } finally {
+            proceed.countDown();
+            executor.shutdown();
+            pool.close();
+        }
+    }
+
+    @Test
+    public void parallel_reads() throws Exception {
+        Map<String, Object> env = Map.of("repositoryPoolSize", 4);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (FileSystem fs = FileSystems.newFileSystem(uri("HEAD", "repo1-bare.git"), env)) {
+            Path b = fs.getPath("b");
+            List<Callable<String>> reads = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                reads.add(() -> Files.readString(b));
+            }
+            for (Future<String> read : executor.invokeAll(reads)) {
+                Assertions.assertEquals("bar\n", read.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.jnfsgit;
+
+
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import net.hunterstrategy.libgit2.InMemoryOdbBackend;
+import net.hunterstrategy.libgit2.MemoryStats;
+import net.hunterstrategy.libgit2.Repository;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import net.hunterstrategy.util.IntegrationTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * repo1.zip: HEAD has b ("bar"), HEAD~2 has a ("foo") and an empty b.
+ */
+@IntegrationTest
+public class SharedRepositoryIntegrationTest implements GitRepoTestSupport {
+    @TempDir
+    static Path tempDir;
+
+    @Override
+    public Path getTempDir() {
+        return tempDir;
+    }
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        GitRepoTestSupport.unzipRepo(tempDir, "repo1.zip");
+    }
+
+    @Test
+    public void revisions_share_repository() throws Exception {
+        FileSystem head = FileSystems.newFileSystem(uri("HEAD"), Map.of());
+        GitFileSystemProvider provider = (GitFileSystemProvider) head.provider();
+        int open = provider.getRepositoryRegistry().size();
+        try (FileSystem old = FileSystems.newFileSystem(uri("HEAD~2"), Map.of())) {
+            Assertions.assertEquals(open, provider.getRepositoryRegistry().size());
+            MemoryStats stats = ((GitFileSystem) head).getMemoryStats();
+            Assertions.assertSame(stats, ((GitFileSystem) old).getMemoryStats());
+            Assertions.assertEquals(1, stats.getCount(MemoryStats.Kind.REPOSITORY));
+
+            head.close();
+            Assertions.assertFalse(head.isOpen());
+            Assertions.assertTrue(old.isOpen());
+            Assertions.assertEquals("foo\n", Files.readString(old.getPath("a")));
+        } finally {
+            head.close();
+        }
+        Assertions.assertEquals(open - 1, provider.getRepositoryRegistry().size());
+    }
+
+    @Test
+    public void repository_from_environment() throws Exception {
+        try (Repository repo = Repository.open(tempDir.toString())) {
+            try (FileSystem fs = FileSystems.newFileSystem(uri("HEAD"), Map.of("repository", repo))) {
+                Assertions.assertEquals("bar\n", Files.readString(fs.getPath("b")));
+                Assertions.assertSame(repo.getMemoryStats(), ((GitFileSystem) fs).getMemoryStats());
+            }
+            Assertions.assertTrue(repo.isOpen());
+            // the filesystem's objects were freed with it
+            Assertions.assertEquals(0, repo.getMemoryStats().getCount(MemoryStats.Kind.TREE));
+        }
+    }
+
+    @Test
+    public void other_backends_get_their_own_repository() throws Exception {
+        InMemoryOdbBackend backend = new InMemoryOdbBackend();
+        try (FileSystem head = FileSystems.newFileSystem(uri("HEAD"), Map.of("odbBackend", backend))) {
+            GitFileSystemProvider provider = (GitFileSystemProvider) head.provider();
+            int open = provider.getRepositoryRegistry().size();
+            MemoryStats stats = ((GitFileSystem) head).getMemoryStats();
+
+            try (FileSystem same = FileSystems.newFileSystem(uri("HEAD~1"), Map.of("odbBackend", backend))) {
+                Assertions.assertEquals(open, provider.getRepositoryRegistry().size());
+                Assertions.assertSame(stats, ((GitFileSystem) same).getMemoryStats());
+            }
+            Map<String, Object> other = Map.of("odbBackend", new InMemoryOdbBackend());
+            try (FileSystem old = FileSystems.newFileSystem(uri("HEAD~2"), other)) {
+                Assertions.assertEquals(open + 1, provider.getRepositoryRegistry().size());
+                Assertions.assertNotSame(stats, ((GitFileSystem) old).getMemoryStats());
+                Assertions.assertEquals("foo\n", Files.readString(old.getPath("a")));
+            }
+            Map<String, Object> priority = Map.of("odbBackend", backend, "odbBackendPriority", 0);
+            try (FileSystem old = FileSystems.newFileSystem(uri("HEAD~2"), priority)) {
+                Assertions.assertNotSame(stats, ((GitFileSystem) old).getMemoryStats());
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.jnfsgit;
+
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import net.hunterstrategy.libgit2.InMemoryOdbBackend;
+import net.hunterstrategy.libgit2.MemoryStats;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import net.hunterstrategy.util.IntegrationTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.CleanupMode;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * bigblob.zip: bigblob (loose objects) and bigblob.git (packed, the same
+ * history). big.bin is 200000 bytes, see big(); main~1 has the original
+ * and main changes 10 bytes at 100000, so in the pack main's copy is
+ * stored whole and main~1's as a delta against it.
+ */
+@IntegrationTest
+public class StreamingReadIntegrationTest implements GitRepoTestSupport {
+    private static final Map<String, Object> STREAM_EVERYTHING = Map.of("streamingThreshold", 0L);
+
+    @TempDir(cleanup = CleanupMode.ON_SUCCESS)
+    static Path tempDir;
+
+    @Override
+    public Path getTempDir() {
+        return tempDir;
+    }
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        GitRepoTestSupport.unzipRepo(tempDir, "repo1.zip");
+        GitRepoTestSupport.unzipRepo(tempDir, "repo1-bare.git.zip");
+        GitRepoTestSupport.unzipRepo(tempDir, "bigblob.zip");
+    }
+
+    private static byte[] big(boolean changed) {
+        byte[] content = new byte[200_000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ((i * 7) ^ (i >> 8));
+        }
+        if (changed) {
+            byte[] digits = "0123456789".getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(digits, 0, content, 100_000, digits.length);
+        }
+        return content;
+    }
+
+    @Test
+    public void loose_objects_stream() throws Exception {
+        try (FileSystem fs = FileSystems.newFileSystem(uri("HEAD"), STREAM_EVERYTHING)) {
+            assertChannel(fs.getPath("b"));
+            Assertions.assertEquals("bar\n", Files.readString(fs.getPath("b")));
+        }
+    }
+
+    @Test
+    public void packed_objects_read_whole() throws Exception {
+        URI uri = uri("HEAD", "repo1-bare.git");
+        try (FileSystem fs = FileSystems.newFileSystem(uri, STREAM_EVERYTHING)) {
+            assertChannel(fs.getPath("b"));
+            Assertions.assertEquals("bar\n", Files.readString(fs.getPath("b")));
+        }
+    }
+
+    @Test
+    public void large_loose_objects_stream_in_chunks() throws Exception {
+        try (FileSystem fs = FileSystems.newFileSystem(uri("main", "bigblob"), STREAM_EVERYTHING)) {
+            assertLargeChannel(fs, "main", big(true), MemoryStats.Kind.ODB_STREAM);
+        }
+    }
+
+    @Test
+    public void large_packed_objects_stream_in_chunks() throws Exception {
+        try (FileSystem fs = FileSystems.newFileSystem(uri("main", "bigblob.git"), STREAM_EVERYTHING)) {
+            assertLargeChannel(fs, "main", big(true), MemoryStats.Kind.ODB_STREAM);
+        }
+    }
+
+    @Test
+    public void packed_deltas_read_whole() throws Exception {
+        try (FileSystem fs = FileSystems.newFileSystem(uri("main~1", "bigblob.git"), STREAM_EVERYTHING)) {
+            assertLargeChannel(fs, "main~1", big(false), MemoryStats.Kind.ODB_OBJECT);
+        }
+    }
+
+    @Test
+    public void packed_objects_read_through_backends() throws Exception {
+        Map<String, Object> env = Map.of("streamingThreshold", 0L, "odbBackend", new InMemoryOdbBackend());
+        try (FileSystem fs = FileSystems.newFileSystem(uri("main", "bigblob.git"), env)) {
+            // a backend is asked before the packs, so they aren't read directly
+            assertLargeChannel(fs, "main", big(true), MemoryStats.Kind.ODB_OBJECT);
+        }
+    }
+
+    private void assertLargeChannel(FileSystem fs, String rev, byte[] expected, MemoryStats.Kind kind)
+            throws Exception {
+        MemoryStats stats = ((GitFileSystem) fs).getMemoryStats();
+        try (SeekableByteChannel chan = Files.newByteChannel(fs.getPath("big.bin"))) {
+            Assertions.assertEquals(1, stats.getCount(kind), rev);
+            Assertions.assertEquals(expected.length, chan.size());
+
+            // several chunks, in reads that don't line up with them
+            ByteBuffer all = ByteBuffer.allocate(expected.length);
+            ByteBuffer piece = ByteBuffer.allocateDirect(5000);
+            while (chan.read(piece) > 0) {
+                piece.flip();
+                all.put(piece);
+                piece.clear();
+            }
+            Assertions.assertArrayEquals(expected, all.array());
+
+            // forward within the object, then backward across a chunk boundary
+            assertReadAt(chan, expected, 150_000, 1000);
+            assertReadAt(chan, expected, 65_000, 1000);
+            assertReadAt(chan, expected, 99_995, 20);
+        }
+        Assertions.assertEquals(0, stats.getCount(kind));
+    }
+
+    private static void assertReadAt(SeekableByteChannel chan, byte[] expected, int position, int length)
+            throws Exception {
+        chan.position(position);
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (chan.read(buf) < 0) {
+                break;
+            }
+        }
+        Assertions.assertArrayEquals(Arrays.copyOfRange(expected, position, position + length), buf.array());
+        Assertions.assertEquals(position + length, chan.position());
+    }
+
+    private void assertChannel(Path b) throws Exception {
+        try (SeekableByteChannel chan = Files.newByteChannel(b)) {
+            Assertions.assertEquals(4, chan.size());
+
+            ByteBuffer two = ByteBuffer.allocate(2);
+            Assertions.assertEquals(2, chan.read(two));
+            Assertions.assertEquals(2, chan.position());
+            Assertions.assertEquals("ba", new String(two.array(), StandardCharsets.UTF_8));
+
+            ByteBuffer rest = ByteBuffer.allocateDirect(8);
+            Assertions.assertEquals(2, chan.read(rest));
+            Assertions.assertEquals(2, rest.position());
+            Assertions.assertEquals(-1, chan.read(rest));
+
+            // seek backward, then past the end
+            chan.position(1);
+            ByteBuffer tail = ByteBuffer.allocate(8);
+            Assertions.assertEquals(3, chan.read(tail));
+            Assertions.assertEquals("ar\n", new String(tail.array(), 0, 3, StandardCharsets.UTF_8));
+            chan.position(10);
+            Assertions.assertEquals(-1, chan.read(tail));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.jnfsgit;
+
+
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import net.hunterstrategy.util.IntegrationTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * submodules.zip: top.txt and a submodule at libs/lib, checked out at the
+ * commit the gitlink records, where src/lib.txt is "lib v1".
+ */
+@IntegrationTest
+public class SubmoduleIntegrationTest implements GitRepoTestSupport {
+    @TempDir
+    static Path tempDir;
+
+    @Override
+    public Path getTempDir() {
+        return tempDir;
+    }
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        GitRepoTestSupport.unzipRepo(tempDir, "submodules.zip");
+    }
+
+    @Test
+    public void gitlink_is_other_by_default() throws Exception {
+        try (FileSystem fs = FileSystems.newFileSystem(uri("main", "submodules"), Map.of())) {
+            GitBasicFileAttributes attr = Files.readAttributes(
+                    fs.getPath("libs", "lib"), GitBasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            Assertions.assertTrue(attr.isOther());
+            Assertions.assertFalse(
+                    Files.exists(fs.getPath("libs", "lib", "src", "lib.txt"), LinkOption.NOFOLLOW_LINKS));
+        }
+    }
+
+    @Test
+    public void mounted_submodule() throws Exception {
+        try (FileSystem fs = FileSystems.newFileSystem(uri("main", "submodules"), Map.of("submodules", true))) {
+            GitBasicFileAttributes attr = Files.readAttributes(
+                    fs.getPath("libs", "lib"), GitBasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            Assertions.assertTrue(attr.isDirectory());
+            Assertions.assertEquals("lib v1\n", Files.readString(fs.getPath("libs", "lib", "src", "lib.txt")));
+
+            List<String> paths;
+            try (Stream<Path> walk = Files.walk(fs.getPath("/"))) {
+                paths = walk.map(Path::toString).collect(Collectors.toList());
+            }
+            Assertions.assertTrue(paths.contains("/libs/lib/src/lib.txt"), paths.toString());
+
+            GitFileSystemProvider provider = (GitFileSystemProvider) fs.provider();
+            // the superproject and the submodule
+            Assertions.assertEquals(2, provider.getRepositoryRegistry().size());
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.jnfsgit;
+
+
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NotLinkException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import net.hunterstrategy.util.IntegrationTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * links.zip: dir/file.txt, dir/sub/deep.txt and links
+ * alias -> dir, file-link -> dir/file.txt, chain -> file-link, dir/up -> ..,
+ * dangling -> missing, absolute -> /etc/passwd, escape -> ../outside,
+ * loop-a -> loop-b and loop-b -> loop-a.
+ */
+@IntegrationTest
+public class SymlinkIntegrationTest implements GitRepoTestSupport {
+    @TempDir
+    static Path tempDir;
+
+    @Override
+    public Path getTempDir() {
+        return tempDir;
+    }
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        GitRepoTestSupport.unzipRepo(tempDir, "links.zip");
+    }
+
+    @Test
+    public void read_through_links() throws Exception {
+        try (FileSystem fs = fs("main", "links")) {
+            Assertions.assertEquals("hello\n", Files.readString(fs.getPath("file-link")));
+            Assertions.assertEquals("hello\n", Files.readString(fs.getPath("chain")));
+            Assertions.assertEquals("hello\n", Files.readString(fs.getPath("alias", "file.txt")));
+            Assertions.assertEquals("deep\n", Files.readString(fs.getPath("dir/up/alias/sub/deep.txt")));
+            try (InputStream in = Files.newInputStream(fs.getPath("file-link"), LinkOption.NOFOLLOW_LINKS)) {
+                Assertions.assertEquals("dir/file.txt", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    public void read_links_without_following() throws Exception {
+        try (FileSystem fs = fs("main", "links")) {
+            Assertions.assertEquals("file-link", readLink(fs.getPath("chain")));
+            Assertions.assertEquals("dir", readLink(fs.getPath("alias")));
+            Assertions.assertEquals("missing", readLink(fs.getPath("dangling")));
+            Assertions.assertEquals("..", readLink(fs.getPath("alias/up")));
+            Assertions.assertThrows(FileNotFoundException.class, () -> Files.readString(fs.getPath("dangling")));
+            // not a link, so read as usual
+            Assertions.assertEquals("hello\n", readLink(fs.getPath("dir/file.txt")));
+        }
+    }
+
+    private static String readLink(Path path) throws Exception {
+        try (InputStream in = Files.newInputStream(path, LinkOption.NOFOLLOW_LINKS)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void attributes_through_links() throws Exception {
+        try (FileSystem fs = fs("main", "links")) {
+            Assertions.assertTrue(Files.isDirectory(fs.getPath("alias")));
+            Assertions.assertFalse(Files.isDirectory(fs.getPath("alias"), LinkOption.NOFOLLOW_LINKS));
+            Assertions.assertTrue(Files.isSymbolicLink(fs.getPath("alias")));
+            Assertions.assertTrue(Files.isRegularFile(fs.getPath("alias/sub/deep.txt")));
+            Assertions.assertTrue(Files.isSymbolicLink(fs.getPath("alias/up")));
+            Assertions.assertTrue(Files.exists(fs.getPath("chain")));
+            Assertions.assertFalse(Files.exists(fs.getPath("dangling")));
+            Assertions.assertTrue(Files.exists(fs.getPath("dangling"), LinkOption.NOFOLLOW_LINKS));
+            Assertions.assertTrue(Files.isSameFile(fs.getPath("alias/file.txt"), fs.getPath("chain")));
+        }
+    }
+
+    @Test
+    public void real_path() throws Exception {
+        try (FileSystem fs = fs("main", "links")) {
+            Assertions.assertEquals("/dir/file.txt", fs.getPath("chain").toRealPath().toString());
+            Assertions.assertEquals("/dir/sub", fs.getPath("alias/up/alias/./sub").toRealPath().toString());
+            Assertions.assertEquals("/dir", fs.getPath("alias/sub/..").toRealPath().toString());
+            Assertions.assertEquals("/", fs.getPath("dir/up").toRealPath().toString());
+            Assertions.assertEquals(
+                    "/dir/up", fs.getPath("alias/up").toRealPath(LinkOption.NOFOLLOW_LINKS).toString());
+
+            Assertions.assertThrows(FileNotFoundException.class, () -> fs.getPath("dangling").toRealPath());
+            Assertions.assertThrows(FileNotFoundException.class, () -> fs.getPath("absolute").toRealPath());
+            Assertions.assertThrows(FileNotFoundException.class, () -> fs.getPath("escape").toRealPath());
+            Assertions.assertThrows(FileSystemLoopException.class, () -> fs.getPath("loop-a").toRealPath());
+        }
+    }
+
+    @Test
+    public void read_symbolic_link() throws Exception {
+        try (FileSystem fs = fs("main", "links")) {
+            Assertions.assertEquals(fs.getPath("dir/file.txt"), Files.readSymbolicLink(fs.getPath("file-link")));
+            Assertions.assertEquals(fs.getPath(".."), Files.readSymbolicLink(fs.getPath("alias/up")));
+            Assertions.assertThrows(NotLinkException.class, () -> Files.readSymbolicLink(fs.getPath("dir")));
+        }
+    }
+
+    @Test
+    public void walk() throws Exception {
+        try (FileSystem fs = fs("main", "links")) {
+            List<String> files;
+            try (Stream<Path> walk = Files.walk(fs.getPath("/dir"))) {
+                files = walk.filter(Files::isRegularFile).map(Path::toString).sorted().collect(Collectors.toList());
+            }
+            // dir/up is visited, but not descended into
+            Assertions.assertEquals(List.of("/dir/file.txt", "/dir/sub/deep.txt"), files);
+
+            try (Stream<String> names = Files.list(fs.getPath("alias")).map(p -> p.getFileName().toString())) {
+                Assertions.assertEquals(List.of("file.txt", "sub", "up"), names.sorted().collect(Collectors.toList()));
+            }
+        }
+    }
+
+    @Test
+    public void walk_following_links_detects_cycles() throws Exception {
+        try (FileSystem fs = fs("main", "links")) {
+            // dir/up leads back to the root, then alias to /dir again
+            try (Stream<Path> walk = Files.walk(fs.getPath("/dir"), FileVisitOption.FOLLOW_LINKS)) {
+                UncheckedIOException e = Assertions.assertThrows(UncheckedIOException.class, walk::count);
+                Assertions.assertInstanceOf(FileSystemLoopException.class, e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import net.hunterstrategy.util.IntegrationTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@IntegrationTest
+public class BlobLifetimeIntegrationTest {
+    @TempDir
+    static Path tempDir;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        GitRepoTestSupport.unzipRepo(tempDir, "repo1.zip");
+    }
+
+    @Test
+    public void shared_blob_is_freed_after_last_release() throws Exception {
+        try (Repository repo = Repository.open(tempDir.toString())) {
+            Tree root = repo.revparseSingle("HEAD").peel(Tree.class).get();
+            Tree.Entry b = root.getByName("b");
+            int baseline = repo.getOwnedResources().size();
+
+            Blob first = b.openBlob().get();
+            Blob second = b.openBlob().get();
+            Assertions.assertSame(first, second);
+            Assertions.assertEquals(baseline + 1, repo.getOwnedResources().size());
+
+            first.release();
+            Assertions.assertEquals(baseline + 1, repo.getOwnedResources().size());
+            Assertions.assertEquals("bar\n", second.getStringContent(StandardCharsets.UTF_8));
+
+            second.release();
+            Assertions.assertEquals(baseline, repo.getOwnedResources().size());
+            second.release(); // unbalanced release is ignored
+
+            // loaded again on demand
+            Blob third = b.openBlob().get();
+            Assertions.assertNotSame(first, third);
+            Assertions.assertEquals(4, third.size());
+            third.release();
+            Assertions.assertEquals(baseline, repo.getOwnedResources().size());
+
+            // toBlob() pins the blob until the repository closes
+            Blob pinned = b.toBlob().get();
+            Blob opened = b.openBlob().get();
+            Assertions.assertSame(pinned, opened);
+            opened.release();
+            Assertions.assertEquals(baseline + 1, repo.getOwnedResources().size());
+        }
+    }
+
+    @Test
+    public void cached_blobs_are_tracked_apart() throws Exception {
+        // with blobs cached, libgit2 returns the same git_blob to both lookups
+        Libgit2Options.setCacheObjectLimit(GitObject.Type.BLOB, 1024);
+        try (Repository repo = Repository.open(tempDir.toString())) {
+            Oid oid = repo.revparseSingle("HEAD").peel(Tree.class).get().getByName("b").getOid();
+            MemoryStats stats = repo.getMemoryStats();
+            int baseline = repo.getOwnedResources().size();
+
+            Blob first = repo.openBlob(oid);
+            Blob second = repo.openBlob(oid);
+            Assumptions.assumeTrue(first.getPointer().address() == second.getPointer().address());
+            Assertions.assertEquals(baseline + 2, repo.getOwnedResources().size());
+            Assertions.assertEquals(1, stats.getCount(MemoryStats.Kind.BLOB));
+            Assertions.assertEquals(4, stats.getBytes(MemoryStats.Kind.BLOB));
+
+            first.release();
+            Assertions.assertEquals(baseline + 1, repo.getOwnedResources().size());
+            Assertions.assertEquals(1, stats.getCount(MemoryStats.Kind.BLOB));
+            Assertions.assertEquals("bar\n", second.getStringContent(StandardCharsets.UTF_8));
+
+            second.release();
+            Assertions.assertEquals(baseline, repo.getOwnedResources().size());
+            Assertions.assertEquals(0, stats.getCount(MemoryStats.Kind.BLOB));
+        } finally {
+            Libgit2Options.setCacheObjectLimit(GitObject.Type.BLOB, 0);
+        }
+    }
+}
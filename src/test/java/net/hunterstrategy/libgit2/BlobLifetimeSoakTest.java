@@ -0,0 +1,102 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import net.hunterstrategy.jnfsgit.GitURI;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import net.hunterstrategy.util.SoakTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Opens, reads and closes one blob a million times and checks that the
+ * process doesn't grow. Run with -Psoak, see SoakTest.
+ */
+@SoakTest
+public class BlobLifetimeSoakTest {
+    private static final int WARMUP = 100_000;
+    private static final int READS = 1_000_000;
+    private static final long MAX_RSS_GROWTH = 32L * 1024 * 1024;
+
+    @TempDir
+    static Path tempDir;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        GitRepoTestSupport.unzipRepo(tempDir, "repo1.zip");
+    }
+
+    @SoakTest
+    public void rss_is_flat_over_a_million_reads() throws Exception {
+        Assumptions.assumeTrue(Files.isReadable(Path.of("/proc/self/status")), "needs /proc");
+
+        try (FileSystem fs = FileSystems.newFileSystem(GitURI.toURI(tempDir.toString(), "HEAD"), null)) {
+            Path b = fs.getPath("b");
+            ByteBuffer dst = ByteBuffer.allocate(16);
+            long sink = 0;
+
+            for (int i = 0; i < WARMUP; i++) {
+                sink += read(b, dst);
+            }
+            System.gc();
+            long before = rss();
+
+            for (int i = 0; i < READS; i++) {
+                sink += read(b, dst);
+            }
+            System.gc();
+            long growth = rss() - before;
+
+            Assertions.assertEquals(4L * (WARMUP + READS), sink);
+            Assertions.assertTrue(growth < MAX_RSS_GROWTH, "RSS grew by " + growth + " bytes");
+        }
+    }
+
+    private static int read(Path path, ByteBuffer dst) throws Exception {
+        try (SeekableByteChannel chan = Files.newByteChannel(path)) {
+            dst.clear();
+            return chan.read(dst);
+        }
+    }
+
+    private static long rss() throws Exception {
+        List<String> status = Files.readAllLines(Path.of("/proc/self/status"));
+        for (String line : status) {
+            if (line.startsWith("VmRSS:")) {
+                // VmRSS:    123456 kB
+                String kb = line.substring("VmRSS:".length()).trim().split("\\s+")[0];
+                return Long.parseLong(kb) * 1024;
+            }
+        }
+        throw new IllegalStateException("No VmRSS in /proc/self/status");
+    }
+}
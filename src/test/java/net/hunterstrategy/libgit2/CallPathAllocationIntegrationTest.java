@@ -0,0 +1,125 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import net.hunterstrategy.util.IntegrationTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@IntegrationTest
+public class CallPathAllocationIntegrationTest {
+    private static final int WARMUP = 50_000;
+    private static final int ITERATIONS = 200_000;
+
+    @TempDir
+    static Path tempDir;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        GitRepoTestSupport.unzipRepo(tempDir, "dirtree.zip");
+    }
+
+    @Test
+    public void cached_tree_lookups_do_not_allocate() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        try (Repository repo = Repository.open(tempDir.resolve("dirtree").toString())) {
+            Tree root = repo.revparseSingle("main").peel(Tree.class).get();
+            Tree dir = root.getByName("dir").toTree().get();
+
+            long sink = 0;
+            for (int i = 0; i < WARMUP; i++) {
+                sink += lookup(root, dir, i);
+            }
+
+            // getCurrentThreadAllocatedBytes() is JDK 14+
+            long thread = Thread.currentThread().getId();
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += lookup(root, dir, i);
+            }
+            long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+            Assertions.assertTrue(sink > 0);
+            double perLookup = (double) allocated / ITERATIONS;
+            Assertions.assertTrue(
+                    perLookup < 1.0, String.format("%.2f bytes allocated per lookup (%d total)", perLookup, allocated));
+        }
+    }
+
+    @Test
+    public void ownership_survives_concurrent_lookups() throws Exception {
+        try (Repository repo = Repository.open(tempDir.resolve("dirtree").toString())) {
+            Tree dir = repo.revparseSingle("main").peel(Tree.class).get().getByName("dir").toTree().get();
+            Oid oid = dir.getByName("foo").getOid();
+            int baseline = repo.getOwnedResources().size();
+
+            List<Thread> threads = new ArrayList<>();
+            List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+            for (int t = 0; t < 8; t++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < 2_000; i++) {
+                            repo.openBlob(oid).release();
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            Assertions.assertEquals(List.of(), failures);
+            Assertions.assertEquals(baseline, repo.getOwnedResources().size());
+        }
+    }
+
+    /**
+     * One "lookup": an entry count, an indexed entry and a named entry,
+     * reading the fields a directory walk would read.
+     */
+    private long lookup(Tree root, Tree dir, int i) {
+        long count = dir.getEntryCount();
+        Tree.Entry byIndex = dir.getByIndex(i % count);
+        Tree.Entry byName = root.getByName("dir");
+        return count
+                + byIndex.getName().length()
+                + byIndex.getFileMode().ordinal()
+                + byName.getType().ordinal();
+    }
+}
@@ -0,0 +1,143 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import net.hunterstrategy.util.IntegrationTest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@IntegrationTest
+public class DiffIntegrationTest {
+    // repo1: a = "foo\n", b empty
+    private static final String FILL_A = "90578aa96eaa532b9377e31e36bff4172107d353";
+    // repo1 HEAD: a deleted, b = "bar\n"
+    private static final String DELETE_A = "5ad21057b0452ef12b36e15dc9334aacbf5fbdd5";
+
+    @TempDir
+    static Path tempDir;
+
+    static Repository repo;
+    static Tree oldTree;
+    static Tree newTree;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        GitRepoTestSupport.unzipRepo(tempDir, "repo1.zip");
+        repo = Repository.open(tempDir.toString());
+        oldTree = repo.lookupCommit(Oid.fromString(FILL_A)).getTree();
+        newTree = repo.lookupCommit(Oid.fromString(DELETE_A)).getTree();
+    }
+
+    @AfterAll
+    public static void teardown() throws Exception {
+        repo.close();
+    }
+
+    private static List<String> lines(Patch patch) {
+        List<String> lines = new ArrayList<>();
+        for (Patch.Hunk hunk : patch) {
+            for (Patch.Line line : hunk) {
+                lines.add(line.getOrigin() + line.getContent(StandardCharsets.UTF_8));
+            }
+        }
+        return lines;
+    }
+
+    @Test
+    public void deltas_and_lines() throws Exception {
+        try (Diff diff = repo.diffTreeToTree(oldTree, newTree, null)) {
+            Assertions.assertEquals(2, diff.getDeltaCount());
+
+            Diff.Delta a = diff.getDelta(0);
+            Assertions.assertEquals(Diff.Status.DELETED, a.getStatus());
+            Assertions.assertEquals("a", a.getOldFile().getPath());
+            Assertions.assertTrue(a.getOldFile().exists());
+            Assertions.assertFalse(a.getNewFile().exists());
+            Assertions.assertEquals(Tree.FileMode.BLOB, a.getOldFile().getFileMode());
+            try (Patch patch = a.newPatch()) {
+                Assertions.assertEquals(1, patch.getHunkCount());
+                Patch.Hunk hunk = patch.getHunk(0);
+                Assertions.assertEquals(1, hunk.getOldStart());
+                Assertions.assertEquals(1, hunk.getOldLines());
+                Assertions.assertEquals(0, hunk.getNewLines());
+                Assertions.assertTrue(hunk.getHeader().startsWith("@@ -1 +0,0 @@"));
+                Assertions.assertEquals(List.of("-foo\n"), lines(patch));
+            }
+
+            Diff.Delta b = diff.getDelta(1);
+            Assertions.assertEquals(Diff.Status.MODIFIED, b.getStatus());
+            try (Patch patch = b.newPatch()) {
+                Assertions.assertFalse(patch.isBinary());
+                Assertions.assertEquals(List.of("+bar\n"), lines(patch));
+                Patch.Line line = patch.getHunk(0).getLine(0);
+                Assertions.assertEquals(-1, line.getOldLineNumber());
+                Assertions.assertEquals(1, line.getNewLineNumber());
+            }
+        }
+    }
+
+    @Test
+    public void options() throws Exception {
+        Diff.Options options = new Diff.Options().pathspec("b");
+        try (Diff diff = repo.diffTreeToTree(oldTree, newTree, options)) {
+            Assertions.assertEquals(1, diff.getDeltaCount());
+            Assertions.assertEquals("b", diff.getDelta(0).getNewFile().getPath());
+        }
+
+        options = new Diff.Options().flags(Diff.Flag.REVERSE).pathspec("a");
+        try (Diff diff = repo.diffTreeToTree(oldTree, newTree, options)) {
+            Diff.Delta a = diff.getDelta(0);
+            Assertions.assertEquals(Diff.Status.ADDED, a.getStatus());
+            try (Patch patch = a.newPatch()) {
+                Assertions.assertEquals(List.of("+foo\n"), lines(patch));
+            }
+        }
+
+        options = new Diff.Options().flags(Diff.Flag.INCLUDE_UNMODIFIED);
+        try (Diff diff = repo.diffTreeToTree(newTree, newTree, options)) {
+            List<Diff.Status> statuses = new ArrayList<>();
+            for (Diff.Delta delta : diff) {
+                statuses.add(delta.getStatus());
+            }
+            Assertions.assertEquals(List.of(Diff.Status.UNMODIFIED), statuses);
+        }
+    }
+
+    @Test
+    public void empty_side() throws Exception {
+        try (Diff diff = repo.diffTreeToTree(null, newTree, null)) {
+            Assertions.assertEquals(1, diff.getDeltaCount());
+            Assertions.assertEquals(Diff.Status.ADDED, diff.getDelta(0).getStatus());
+        }
+        Assertions.assertEquals(0, repo.getMemoryStats().getCount(MemoryStats.Kind.DIFF));
+        Assertions.assertEquals(0, repo.getMemoryStats().getCount(MemoryStats.Kind.PATCH));
+    }
+}
@@ -0,0 +1,64 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class InMemoryOdbBackendTest {
+
+    @Test
+    public void ids_match_git() {
+        // git hash-object on "hello\n", and the empty tree
+        Assertions.assertEquals(
+                "ce013625030ba8dba906f756967f9e9ca394464a",
+                InMemoryOdbBackend.hash(GitObject.Type.BLOB, "hello\n".getBytes(StandardCharsets.UTF_8))
+                        .toString());
+        Assertions.assertEquals(
+                "4b825dc642cb6eb9a060e54bf8d69288fbee4904",
+                InMemoryOdbBackend.hash(GitObject.Type.TREE, new byte[0]).toString());
+        Assertions.assertThrows(
+                IllegalArgumentException.class, () -> InMemoryOdbBackend.hash(GitObject.Type.ANY, new byte[0]));
+    }
+
+    @Test
+    public void put_and_read() throws Exception {
+        InMemoryOdbBackend backend = new InMemoryOdbBackend();
+        byte[] content = "hello\n".getBytes(StandardCharsets.UTF_8);
+        Oid oid = backend.put(GitObject.Type.BLOB, content);
+        content[0] = 'j'; // stored content is a copy
+
+        Assertions.assertTrue(backend.exists(oid));
+        OdbBackend.RawObject object = backend.read(oid);
+        Assertions.assertEquals(GitObject.Type.BLOB, object.getType());
+        Assertions.assertEquals(
+                "hello\n", StandardCharsets.UTF_8.decode(object.getData()).toString());
+        // each view starts at the beginning
+        Assertions.assertEquals(6, object.getData().remaining());
+
+        Assertions.assertTrue(backend.remove(oid));
+        Assertions.assertNull(backend.read(oid));
+        Assertions.assertEquals(0, backend.size());
+    }
+}
@@ -0,0 +1,76 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.nio.file.Path;
+import net.hunterstrategy.libgit2.MemoryStats.Kind;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import net.hunterstrategy.util.IntegrationTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@IntegrationTest
+public class MemoryStatsIntegrationTest {
+    @TempDir
+    static Path tempDir;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        GitRepoTestSupport.unzipRepo(tempDir, "repo1.zip");
+    }
+
+    @Test
+    public void counts_follow_resource_lifetimes() throws Exception {
+        long processBlobs = MemoryStats.process().getCount(Kind.BLOB);
+        long processRepos = MemoryStats.process().getCount(Kind.REPOSITORY);
+
+        try (Repository repo = Repository.open(tempDir.toString())) {
+            MemoryStats stats = repo.getMemoryStats();
+            Assertions.assertEquals(1, stats.getCount(Kind.REPOSITORY));
+            Assertions.assertEquals(processRepos + 1, MemoryStats.process().getCount(Kind.REPOSITORY));
+
+            Tree root = repo.revparseSingle("HEAD").peel(Tree.class).get();
+            Assertions.assertEquals(1, stats.getCount(Kind.OBJECT));
+            Assertions.assertEquals(1, stats.getCount(Kind.TREE));
+
+            Blob b = root.getByName("b").openBlob().get();
+            Assertions.assertEquals(1, stats.getCount(Kind.TREE_ENTRY));
+            Assertions.assertEquals(1, stats.getCount(Kind.BLOB));
+            Assertions.assertEquals(4, stats.getBytes(Kind.BLOB));
+            Assertions.assertEquals(processBlobs + 1, MemoryStats.process().getCount(Kind.BLOB));
+
+            b.release();
+            Assertions.assertEquals(0, stats.getCount(Kind.BLOB));
+            Assertions.assertEquals(0, stats.getBytes(Kind.BLOB));
+
+            MemoryStats.CacheUsage cache = MemoryStats.libgit2Cache();
+            Assertions.assertTrue(cache.getCurrent() >= 0);
+            Assertions.assertTrue(cache.getAllowed() > 0);
+        }
+
+        Assertions.assertEquals(processBlobs, MemoryStats.process().getCount(Kind.BLOB));
+        Assertions.assertEquals(processRepos, MemoryStats.process().getCount(Kind.REPOSITORY));
+    }
+}
@@ -0,0 +1,71 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import net.hunterstrategy.libgit2.MemoryStats.Kind;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MemoryStatsTest {
+
+    @Test
+    public void repository_stats_roll_up_to_process() {
+        MemoryStats process = MemoryStats.process();
+        long blobs = process.getCount(Kind.BLOB);
+        long blobBytes = process.getBytes(Kind.BLOB);
+
+        MemoryStats repo = MemoryStats.forRepository();
+        repo.opened(Kind.BLOB, 100);
+        repo.opened(Kind.BLOB, 50);
+        repo.opened(Kind.TREE);
+
+        Assertions.assertEquals(2, repo.getCount(Kind.BLOB));
+        Assertions.assertEquals(150, repo.getBytes(Kind.BLOB));
+        Assertions.assertEquals(1, repo.getCount(Kind.TREE));
+        Assertions.assertEquals(150, repo.getTotalBytes());
+        Assertions.assertEquals(blobs + 2, process.getCount(Kind.BLOB));
+        Assertions.assertEquals(blobBytes + 150, process.getBytes(Kind.BLOB));
+
+        repo.closed(Kind.BLOB, 100);
+        Assertions.assertEquals(1, repo.getCount(Kind.BLOB));
+        Assertions.assertEquals(50, repo.getBytes(Kind.BLOB));
+        Assertions.assertEquals(blobBytes + 50, process.getBytes(Kind.BLOB));
+    }
+
+    @Test
+    public void clear_releases_everything_from_process() {
+        MemoryStats process = MemoryStats.process();
+        long trees = process.getCount(Kind.TREE);
+        long total = process.getTotalBytes();
+
+        MemoryStats repo = MemoryStats.forRepository();
+        repo.opened(Kind.TREE);
+        repo.opened(Kind.ODB_OBJECT, 1024);
+        repo.clear();
+
+        Assertions.assertEquals(0, repo.getCount(Kind.TREE));
+        Assertions.assertEquals(0, repo.getTotalBytes());
+        Assertions.assertEquals(trees, process.getCount(Kind.TREE));
+        Assertions.assertEquals(total, process.getTotalBytes());
+    }
+}
@@ -0,0 +1,128 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import com.kenai.jffi.MemoryIO;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import jnr.ffi.Pointer;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Per-call latency of the blob read path: NativeBackend, which is the
+ * java.lang.foreign version when the multi-release jar runs on Java 22+,
+ * against the same calls made directly through the JNR binding.
+ *
+ * Requires libgit2 on the library path. On Java 11 both sides are JNR. To
+ * compare on Java 22+, put the packaged jar ahead of target/classes:
+ *
+ *     mvn -B package -DskipTests
+ *     java --enable-native-access=ALL-UNNAMED \
+ *         -cp "target/jnfs-git-1.0.jar:target/test-classes:$(cat target/cp.txt)" \
+ *         org.openjdk.jmh.Main NativeBackendBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NativeBackendBenchmark {
+    private Path tempDir;
+    private Repository repo;
+    private Blob blob;
+    private Libgit2 git;
+    private Pointer pointer;
+    private int size;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        tempDir = Files.createTempDirectory("jnfsgit-bench");
+        GitRepoTestSupport.unzipRepo(tempDir, "repo1.zip");
+        repo = Repository.open(tempDir.toString());
+        blob = repo.revparseSingle("HEAD")
+                .peel(Tree.class)
+                .get()
+                .getByName("b")
+                .openBlob()
+                .get();
+        git = NativeRuntime.library();
+        pointer = blob.getPointer();
+        size = (int) blob.size();
+        System.out.println("NativeBackend: " + NativeBackend.name());
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        blob.release();
+        repo.close();
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long rawsize_jnr() {
+        return git.git_blob_rawsize(pointer);
+    }
+
+    @Benchmark
+    public long rawsize_backend() {
+        return NativeBackend.blobRawSize(git, pointer);
+    }
+
+    @Benchmark
+    public ByteBuffer content_jnr() {
+        return MemoryIO.getInstance().newDirectByteBuffer(git.git_blob_rawcontent(pointer).address(), size);
+    }
+
+    @Benchmark
+    public ByteBuffer content_backend() {
+        return NativeBackend.blobContent(git, pointer, size);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                        .include(NativeBackendBenchmark.class.getSimpleName())
+                        .build())
+                .run();
+    }
+}
@@ -0,0 +1,73 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import net.hunterstrategy.util.IntegrationTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * On JDK 22+ the java22-ffm profile puts the java.lang.foreign
+ * NativeBackend on the test classpath, see pom.xml.
+ */
+@IntegrationTest
+public class NativeBackendIntegrationTest {
+    @TempDir
+    static Path tempDir;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        GitRepoTestSupport.unzipRepo(tempDir, "repo1.zip");
+    }
+
+    @Test
+    public void ffm_on_java_22() throws Exception {
+        Assumptions.assumeTrue(Runtime.version().feature() >= 22);
+        try (Repository repo = Repository.open(tempDir.toString())) {
+            Assertions.assertEquals("ffm", NativeBackend.name());
+        }
+    }
+
+    @Test
+    public void reads_match_jnr() throws Exception {
+        try (Repository repo = Repository.open(tempDir.toString())) {
+            Tree root = repo.revparseSingle("HEAD").peel(Tree.class).get();
+            Blob blob = root.getByName("b").openBlob().get();
+            try {
+                Libgit2 git = NativeRuntime.library();
+                Assertions.assertEquals(git.git_blob_rawsize(blob.getPointer()), blob.size());
+                ByteBuffer content = blob.getRawContent();
+                Assertions.assertEquals("bar\n", StandardCharsets.UTF_8.decode(content).toString());
+            } finally {
+                blob.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.nio.file.Path;
+import java.util.Optional;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import net.hunterstrategy.util.IntegrationTest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@IntegrationTest
+public class NoteSnapshotIntegrationTest {
+    // notes.zip history, newest first; refs/notes/commits has notes on
+    // THREE and ONE, refs/notes/build on TWO
+    private static final Oid THREE = Oid.fromString("453aafa9fee437269f1a695a75aabd4d78755197");
+    private static final Oid TWO = Oid.fromString("e7245a3bf1cb5d3b5a7c37fd224efef34c417f5f");
+    private static final Oid ONE = Oid.fromString("197804c721c13d51f275e0da43136324405d4ff7");
+
+    @TempDir
+    static Path tempDir;
+
+    static Repository repo;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        GitRepoTestSupport.unzipRepo(tempDir, "notes.zip");
+        repo = Repository.open(tempDir.resolve("notes").toString());
+    }
+
+    @AfterAll
+    public static void teardown() throws Exception {
+        repo.close();
+    }
+
+    @Test
+    public void default_notes() throws Exception {
+        NoteSnapshot notes = repo.noteSnapshot();
+        Assertions.assertEquals(2, notes.size());
+        Assertions.assertEquals(Optional.of("build 1\n"), notes.getMessage(ONE));
+        Assertions.assertEquals(Optional.of("build 3\n"), notes.getMessage(THREE));
+        Assertions.assertFalse(notes.hasNote(TWO));
+
+        // ordered by annotated id
+        Assertions.assertEquals(ONE, notes.getAnnotatedId(0));
+        Assertions.assertEquals("c5a014c1a394ae625651ad1d858b6356ce6f5398", notes.getNoteId(0).toString());
+    }
+
+    @Test
+    public void other_notes_ref() throws Exception {
+        NoteSnapshot notes = repo.noteSnapshot("refs/notes/build");
+        Assertions.assertEquals(1, notes.size());
+        Assertions.assertEquals(Optional.of("ci ok\n"), notes.getMessage(TWO));
+
+        Assertions.assertEquals(0, repo.noteSnapshot("refs/notes/missing").size());
+    }
+
+    @Test
+    public void read_one_note() throws Exception {
+        Assertions.assertEquals(Optional.of("build 3\n"), repo.readNote(null, THREE));
+        Assertions.assertEquals(Optional.of("ci ok\n"), repo.readNote("refs/notes/build", TWO));
+        Assertions.assertEquals(Optional.empty(), repo.readNote(null, TWO));
+    }
+}
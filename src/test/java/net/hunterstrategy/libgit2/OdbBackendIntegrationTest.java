@@ -0,0 +1,125 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import net.hunterstrategy.util.IntegrationTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@IntegrationTest
+public class OdbBackendIntegrationTest {
+    // "bar\n", b at HEAD in repo1
+    private static final Oid BAR = Oid.fromString("5716ca5987cbf97d6bb54920bea6adde242d87e6");
+
+    @TempDir
+    static Path tempDir;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        GitRepoTestSupport.unzipRepo(tempDir, "repo1.zip");
+    }
+
+    /**
+     * Counts reads, and closes.
+     */
+    static class CountingBackend extends InMemoryOdbBackend {
+        final AtomicInteger reads = new AtomicInteger();
+        final AtomicInteger closes = new AtomicInteger();
+
+        @Override
+        public RawObject read(Oid oid) {
+            reads.incrementAndGet();
+            return super.read(oid);
+        }
+
+        @Override
+        public void close() {
+            closes.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void objects_from_java() throws Exception {
+        CountingBackend backend = new CountingBackend();
+        Oid hello = backend.put(GitObject.Type.BLOB, "hello\n".getBytes(StandardCharsets.UTF_8));
+
+        try (Repository repo = Repository.open(tempDir.toString())) {
+            repo.getOdb().addBackend(backend, Odb.PACKED_PRIORITY + 1);
+
+            Odb.Header header = repo.getOdb().readHeader(hello);
+            Assertions.assertEquals(6, header.getSize());
+            Assertions.assertEquals(GitObject.Type.BLOB, header.getType());
+
+            Blob blob = repo.openBlob(hello);
+            Assertions.assertEquals("hello\n", blob.getStringContent(StandardCharsets.UTF_8));
+            blob.release();
+
+            try (SeekableByteChannel channel = repo.getOdb().newReadChannel(hello)) {
+                ByteBuffer dst = ByteBuffer.allocate(16);
+                Assertions.assertEquals(6, channel.read(dst));
+            }
+
+            Assertions.assertThrows(
+                    GitCallException.class,
+                    () -> repo.openBlob(InMemoryOdbBackend.hash(GitObject.Type.BLOB, new byte[] {1})));
+        }
+        Assertions.assertEquals(1, backend.closes.get());
+    }
+
+    @Test
+    public void priority() throws Exception {
+        CountingBackend above = new CountingBackend();
+        CountingBackend below = new CountingBackend();
+        try (Repository repo = Repository.open(tempDir.toString())) {
+            repo.getOdb().addBackend(above, Odb.PACKED_PRIORITY + 1);
+            repo.getOdb().addBackend(below, 0);
+
+            repo.openBlob(BAR).release();
+            // asked before the disk, which has it; never asked after
+            Assertions.assertTrue(above.reads.get() > 0);
+            Assertions.assertEquals(0, below.reads.get());
+        }
+    }
+
+    @Test
+    public void exceptions_become_git_errors() throws Exception {
+        OdbBackend broken = oid -> {
+            throw new IllegalStateException("tier unavailable");
+        };
+        try (Repository repo = Repository.open(tempDir.toString())) {
+            repo.getOdb().addBackend(broken, Odb.PACKED_PRIORITY + 1);
+            GitCallException e = Assertions.assertThrows(
+                    GitCallException.class,
+                    () -> repo.openBlob(InMemoryOdbBackend.hash(GitObject.Type.BLOB, new byte[] {1})));
+            Assertions.assertTrue(e.getMessage().contains("tier unavailable"), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class OidTest {
+    private static final String EMPTY_BLOB = "e69de29bb2d1d6434b8b29ae775ad8c2e48c5391";
+    private static final String OTHER = "f69de29bb2d1d6434b8b29ae775ad8c2e48c5391";
+
+    @Test
+    public void hex_round_trip() {
+        Oid oid = Oid.fromString(EMPTY_BLOB);
+        Assertions.assertEquals(EMPTY_BLOB, oid.toString());
+        Assertions.assertEquals(EMPTY_BLOB, Oid.fromRaw(oid.getRaw()).toString());
+        Assertions.assertEquals(
+                EMPTY_BLOB, Oid.fromString(EMPTY_BLOB.toUpperCase()).toString());
+        Assertions.assertEquals("e69de29", oid.abbreviate(7));
+        Assertions.assertEquals(EMPTY_BLOB, oid.abbreviate(100));
+    }
+
+    @Test
+    public void equals_hashCode() {
+        Oid a = Oid.fromString(EMPTY_BLOB);
+        Oid b = Oid.fromRaw(a.getRaw());
+        Oid c = Oid.fromString(OTHER);
+
+        Assertions.assertEquals(a, b);
+        Assertions.assertEquals(a.hashCode(), b.hashCode());
+        Assertions.assertNotEquals(a, c);
+        Assertions.assertNotEquals(a, EMPTY_BLOB);
+
+        Map<Oid, String> byId = new HashMap<>();
+        byId.put(a, "a");
+        Assertions.assertEquals("a", byId.get(b));
+        Assertions.assertNull(byId.get(c));
+    }
+
+    @Test
+    public void raw_copies_are_defensive() {
+        byte[] raw = Oid.fromString(EMPTY_BLOB).getRaw();
+        Oid oid = Oid.fromRaw(raw);
+        raw[0] = 0;
+        Assertions.assertEquals(EMPTY_BLOB, oid.toString());
+        oid.getRaw()[0] = 0;
+        Assertions.assertEquals(EMPTY_BLOB, oid.toString());
+
+        byte[] packed = new byte[Oid.RAW_SIZE * 2];
+        oid.copyTo(packed, Oid.RAW_SIZE);
+        Assertions.assertTrue(oid.equalsRaw(packed, Oid.RAW_SIZE));
+        Assertions.assertFalse(oid.equalsRaw(packed, 0));
+        Assertions.assertEquals(oid, Oid.fromRaw(packed, Oid.RAW_SIZE));
+    }
+
+    @Test
+    public void ordering_matches_hex() {
+        Oid a = Oid.fromString(EMPTY_BLOB);
+        Oid c = Oid.fromString(OTHER);
+        Assertions.assertTrue(a.compareTo(c) < 0);
+        Assertions.assertTrue(c.compareTo(a) > 0);
+        Assertions.assertEquals(0, a.compareTo(Oid.fromString(EMPTY_BLOB)));
+        // high bit set must sort after, not before (unsigned)
+        Assertions.assertTrue(
+                Oid.fromString("8" + EMPTY_BLOB.substring(1)).compareTo(Oid.fromString("7" + EMPTY_BLOB.substring(1)))
+                        > 0);
+    }
+
+    @Test
+    public void zero() {
+        Assertions.assertTrue(Oid.fromRaw(new byte[Oid.RAW_SIZE]).isZero());
+        Assertions.assertFalse(Oid.fromString(EMPTY_BLOB).isZero());
+    }
+
+    @Test
+    public void invalid() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Oid.fromString(null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Oid.fromString("e69de29"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Oid.fromString(EMPTY_BLOB.replace('e', 'z')));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Oid.fromRaw(new byte[4]));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Oid.fromRaw(new byte[Oid.RAW_SIZE], 1));
+    }
+}
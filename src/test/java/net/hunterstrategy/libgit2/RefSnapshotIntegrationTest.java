@@ -0,0 +1,129 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import net.hunterstrategy.util.IntegrationTest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * refs.zip has packed and loose branches, a symbolic ref, lightweight and
+ * annotated tags, a tag of a tag, and a tag of a tree.
+ */
+@IntegrationTest
+public class RefSnapshotIntegrationTest {
+    private static final Oid TWO = Oid.fromString("0188b53fb507aad8cba93d2131a4be15d33abfce");
+    private static final Oid TWO_TREE = Oid.fromString("0e493054e65e28c31330d6adc94cd0054f969575");
+    private static final Oid ONE = Oid.fromString("3c92cfe68dfe1ddb8caf0c5878a7a74a0ef72565");
+    private static final Oid ONE_TREE = Oid.fromString("c953cbf72793bf7a7cd60d87a668185076b1698a");
+    private static final Oid V1_TAG = Oid.fromString("faa26c76334428fff0360b35f6a1a1c2d1a902df");
+    private static final Oid NESTED_TAG = Oid.fromString("7a5d157def95b6cc89b4d7be84214d42c79a5a83");
+
+    @TempDir
+    static Path tempDir;
+
+    static Repository repo;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        GitRepoTestSupport.unzipRepo(tempDir, "refs.zip");
+        repo = Repository.open(tempDir.toString());
+    }
+
+    @AfterAll
+    public static void teardown() throws Exception {
+        repo.close();
+    }
+
+    @Test
+    public void all_refs() {
+        RefSnapshot refs = repo.refSnapshot();
+        Assertions.assertEquals(8, refs.size());
+        Assertions.assertEquals("refs/heads/feature", refs.getName(0));
+
+        int main = refs.indexOf("refs/heads/main");
+        Assertions.assertEquals(TWO, refs.getTarget(main));
+        Assertions.assertEquals(TWO, refs.getCommit(main));
+        Assertions.assertEquals(TWO_TREE, refs.getTree(main));
+        Assertions.assertFalse(refs.isSymbolic(main));
+        Assertions.assertFalse(refs.isAnnotatedTag(main));
+
+        Assertions.assertEquals(TWO, refs.getCommit("refs/heads/loose"));
+        Assertions.assertEquals(ONE, refs.getCommit("refs/heads/feature"));
+        Assertions.assertNull(refs.getCommit("refs/heads/missing"));
+        Assertions.assertEquals(-1, refs.indexOf("refs/heads/missing"));
+    }
+
+    @Test
+    public void symbolic_refs() {
+        RefSnapshot refs = repo.refSnapshot();
+        int head = refs.indexOf("refs/remotes/origin/HEAD");
+        Assertions.assertTrue(refs.isSymbolic(head));
+        Assertions.assertEquals("refs/heads/main", refs.getSymbolicTarget(head));
+        Assertions.assertEquals(TWO, refs.getTarget(head));
+        Assertions.assertEquals(TWO_TREE, refs.getTree(head));
+    }
+
+    @Test
+    public void tags() {
+        RefSnapshot tags = repo.refSnapshot("refs/tags/*");
+        Assertions.assertEquals(4, tags.size());
+
+        int light = tags.indexOf("refs/tags/light");
+        Assertions.assertFalse(tags.isAnnotatedTag(light));
+        Assertions.assertEquals(ONE, tags.getCommit(light));
+        Assertions.assertEquals(ONE_TREE, tags.getTree(light));
+
+        int v1 = tags.indexOf("refs/tags/v1");
+        Assertions.assertTrue(tags.isAnnotatedTag(v1));
+        Assertions.assertEquals(V1_TAG, tags.getTarget(v1));
+        Assertions.assertEquals(TWO, tags.getCommit(v1));
+
+        int nested = tags.indexOf("refs/tags/nested");
+        Assertions.assertEquals(NESTED_TAG, tags.getTarget(nested));
+        Assertions.assertEquals(TWO, tags.getCommit(nested));
+
+        int treetag = tags.indexOf("refs/tags/treetag");
+        Assertions.assertNull(tags.getCommit(treetag));
+        Assertions.assertEquals(TWO_TREE, tags.getTree(treetag));
+    }
+
+    @Test
+    public void prefix_and_commit_lookups() {
+        RefSnapshot refs = repo.refSnapshot();
+        List<String> heads =
+                refs.indexesWithPrefix("refs/heads/").mapToObj(refs::getName).collect(Collectors.toList());
+        Assertions.assertEquals(List.of("refs/heads/feature", "refs/heads/loose", "refs/heads/main"), heads);
+        Assertions.assertEquals(0, refs.indexesWithPrefix("refs/notes/").count());
+
+        List<String> atOne = refs.indexesOfCommit(ONE).mapToObj(refs::getName).collect(Collectors.toList());
+        Assertions.assertEquals(List.of("refs/heads/feature", "refs/tags/light"), atOne);
+    }
+}
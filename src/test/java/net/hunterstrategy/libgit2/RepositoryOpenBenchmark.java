@@ -0,0 +1,107 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import jnr.ffi.LibraryLoader;
+import jnr.ffi.byref.PointerByReference;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Repository open latency: the shared NativeRuntime versus loading the
+ * library for every repository (the previous GitOperations behavior).
+ *
+ * Requires libgit2 on the library path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryOpenBenchmark {
+    private Path tempDir;
+    private String repoDir;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        tempDir = Files.createTempDirectory("jnfsgit-bench");
+        GitRepoTestSupport.unzipRepo(tempDir, "repo1.zip");
+        repoDir = tempDir.toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public boolean open_shared_runtime() throws Exception {
+        try (Repository repo = Repository.open(repoDir)) {
+            return repo.isOpen();
+        }
+    }
+
+    @Benchmark
+    public boolean open_load_per_repository() {
+        Libgit2 git = LibraryLoader.create(Libgit2.class).load("git2");
+        git.git_libgit2_init();
+        try {
+            PointerByReference repo = new PointerByReference();
+            int code = git.git_repository_open(repo, repoDir);
+            if (code == 0) {
+                git.git_repository_free(repo.getValue());
+            }
+            return code == 0;
+        } finally {
+            git.git_libgit2_shutdown();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                        .include(RepositoryOpenBenchmark.class.getSimpleName())
+                        .build())
+                .run();
+    }
+}
@@ -0,0 +1,68 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.nio.file.Path;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import net.hunterstrategy.util.IntegrationTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@IntegrationTest
+public class RepositoryRegistryIntegrationTest {
+    @TempDir
+    static Path tempDir;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        GitRepoTestSupport.unzipRepo(tempDir, "repo1.zip");
+    }
+
+    @Test
+    public void shared_until_last_release() throws Exception {
+        RepositoryRegistry registry = new RepositoryRegistry();
+        Repository first = registry.acquire(tempDir.toString(), false);
+        // same directory, spelled differently
+        Repository second = registry.acquire(tempDir.resolve("..").resolve(tempDir.getFileName()) + "/", false);
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(2, registry.references(first));
+        Assertions.assertEquals(1, registry.size());
+
+        registry.release(first);
+        Assertions.assertTrue(first.isOpen());
+        registry.release(second);
+        Assertions.assertFalse(first.isOpen());
+        Assertions.assertEquals(0, registry.size());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> registry.release(first));
+    }
+
+    @Test
+    public void missing_repository() throws Exception {
+        RepositoryRegistry registry = new RepositoryRegistry();
+        Assertions.assertThrows(
+                GitCallException.class, () -> registry.acquire(tempDir.resolve("missing").toString(), false));
+        Assertions.assertEquals(0, registry.size());
+    }
+}
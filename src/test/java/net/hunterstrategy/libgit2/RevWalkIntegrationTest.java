@@ -0,0 +1,129 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import net.hunterstrategy.util.IntegrationTest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@IntegrationTest
+public class RevWalkIntegrationTest {
+    // repo1 history, newest first
+    private static final String DELETE_A = "5ad21057b0452ef12b36e15dc9334aacbf5fbdd5";
+    private static final String FILL_B = "54a465ebe3b1f8c62c21ae3cb018a260dbc5fdce";
+    private static final String FILL_A = "90578aa96eaa532b9377e31e36bff4172107d353";
+    private static final String ADD_B = "e0ad3de2d07b0bd12a52cfff5a20d93c851ce447";
+    private static final String ADD_A = "71fe5a636a0c37ee413ff885a4f84f0bde836609";
+
+    @TempDir
+    static Path tempDir;
+
+    static Repository repo;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        GitRepoTestSupport.unzipRepo(tempDir, "repo1.zip");
+        repo = Repository.open(tempDir.toString());
+    }
+
+    @AfterAll
+    public static void teardown() throws Exception {
+        repo.close();
+    }
+
+    private static List<String> walk(RevWalk walk) {
+        List<String> ids = new ArrayList<>();
+        for (Oid oid : walk) {
+            ids.add(oid.toString());
+        }
+        return ids;
+    }
+
+    @Test
+    public void walk_from_head() throws Exception {
+        try (RevWalk walk = repo.newRevWalk()) {
+            walk.sorting(RevWalk.Sort.TOPOLOGICAL, RevWalk.Sort.TIME).pushHead();
+            Assertions.assertEquals(List.of(DELETE_A, FILL_B, FILL_A, ADD_B, ADD_A), walk(walk));
+
+            walk.sorting(RevWalk.Sort.TIME, RevWalk.Sort.REVERSE).pushRef("refs/heads/main");
+            walk.hide(Oid.fromString(FILL_A));
+            Assertions.assertEquals(List.of(FILL_B, DELETE_A), walk(walk));
+        }
+    }
+
+    @Test
+    public void filters() throws Exception {
+        try (RevWalk walk = repo.newRevWalk()) {
+            walk.sorting(RevWalk.Sort.TIME).filterPaths("a").pushHead();
+            Assertions.assertEquals(List.of(DELETE_A, FILL_A, ADD_A), walk(walk));
+
+            walk.filterPaths("/b").pushHead();
+            Assertions.assertEquals(List.of(FILL_B, ADD_B), walk(walk));
+
+            walk.filterPaths()
+                    .filterCommitTime(Instant.ofEpochSecond(1668026838), null)
+                    .pushHead();
+            Assertions.assertEquals(List.of(DELETE_A, FILL_B, FILL_A), walk(walk));
+
+            walk.filterCommitTime(null, null)
+                    .filterAuthor(Pattern.compile("nobody"))
+                    .pushHead();
+            Assertions.assertEquals(List.of(), walk(walk));
+
+            walk.filterAuthor(Pattern.compile("Vanore")).filterPaths("b").pushHead();
+            Assertions.assertEquals(List.of(FILL_B, ADD_B), walk(walk));
+
+            // the root is every path
+            walk.filterAuthor(null).filterPaths("a", "/").pushHead();
+            Assertions.assertEquals(List.of(DELETE_A, FILL_B, FILL_A, ADD_B, ADD_A), walk(walk));
+            walk.filterPaths("").pushHead();
+            Assertions.assertEquals(List.of(DELETE_A, FILL_B, FILL_A, ADD_B, ADD_A), walk(walk));
+        }
+    }
+
+    @Test
+    public void lookup_commit() {
+        Commit commit = repo.lookupCommit(Oid.fromString(FILL_B));
+        Assertions.assertEquals(FILL_B, commit.getOid().toString());
+        Assertions.assertEquals(1668026855000L, commit.getCommitTime().getTime());
+    }
+
+    @Test
+    public void closing_frees_the_walk() throws Exception {
+        long walks = repo.getMemoryStats().getCount(MemoryStats.Kind.REVWALK);
+        RevWalk walk = repo.newRevWalk();
+        Assertions.assertEquals(walks + 1, repo.getMemoryStats().getCount(MemoryStats.Kind.REVWALK));
+        walk.close();
+        walk.close();
+        Assertions.assertEquals(walks, repo.getMemoryStats().getCount(MemoryStats.Kind.REVWALK));
+    }
+}
@@ -0,0 +1,135 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.nio.file.Path;
+import net.hunterstrategy.libgit2.MemoryStats.Kind;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import net.hunterstrategy.util.IntegrationTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * dirtree.zip: dir has 4 entries (weight 5), dir/child has 3 (weight 4).
+ */
+@IntegrationTest
+public class TreeCacheIntegrationTest {
+    @TempDir
+    static Path tempDir;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        GitRepoTestSupport.unzipRepo(tempDir, "dirtree.zip");
+    }
+
+    private static Repository open() {
+        return Repository.open(tempDir.resolve("dirtree").toString());
+    }
+
+    @Test
+    public void subtrees_load_on_first_use() throws Exception {
+        try (Repository repo = open()) {
+            TreeCache cache = repo.getTreeCache();
+            Tree root = repo.revparseSingle("main").peel(Tree.class).get();
+            Tree dir = root.getByName("dir").toTree().get();
+            Assertions.assertEquals(0, cache.size());
+            Assertions.assertEquals(1, repo.getMemoryStats().getCount(Kind.TREE));
+
+            Assertions.assertNotNull(dir.getByName("foo"));
+            Assertions.assertEquals(1, cache.size());
+            Assertions.assertEquals(5, cache.getWeight());
+            Assertions.assertEquals(1, cache.getMisses());
+            Assertions.assertEquals(2, repo.getMemoryStats().getCount(Kind.TREE));
+
+            Assertions.assertSame(dir, root.getByName("dir").toTree().get());
+            Assertions.assertEquals(1, cache.getHits());
+        }
+    }
+
+    @Test
+    public void least_recently_used_is_evicted() throws Exception {
+        MemoryStats stats;
+        try (Repository repo = open()) {
+            TreeCache cache = repo.getTreeCache();
+            cache.setMaxWeight(5);
+            stats = repo.getMemoryStats();
+            Tree root = repo.revparseSingle("main").peel(Tree.class).get();
+
+            Tree dir = root.getByName("dir").toTree().get();
+            Tree.Entry foo = dir.getByName("foo");
+            Tree child = dir.getByName("child").toTree().get();
+            Assertions.assertEquals("a", child.getByName("a").getName());
+            Assertions.assertEquals(1, cache.getEvictions());
+            Assertions.assertEquals(4, cache.getWeight());
+            // root and child
+            Assertions.assertEquals(2, stats.getCount(Kind.TREE));
+            Assertions.assertNull(dir.getPointer());
+            // entries read before the eviction keep their fields, not their native entry
+            Assertions.assertEquals("foo", foo.getName());
+            Assertions.assertThrows(IllegalStateException.class, foo::getPointer);
+
+            // loaded again by id
+            Assertions.assertEquals(4, dir.getEntryCount());
+            Assertions.assertEquals("foo", dir.getByName("foo").getName());
+            Assertions.assertEquals("bar", dir.getByIndex(0).getName());
+            Assertions.assertEquals(2, cache.getEvictions());
+            Assertions.assertEquals(3, cache.getMisses());
+            Assertions.assertEquals(2, stats.getCount(Kind.TREE));
+            Assertions.assertNotNull(root.getByNameRecursive("dir/child/c"));
+        }
+        // loaded trees freed with the repository, evicted ones not freed twice
+        Assertions.assertEquals(0, stats.getCount(Kind.TREE));
+    }
+
+    @Test
+    public void pinned_tree_is_freed_on_unpin() throws Exception {
+        try (Repository repo = open()) {
+            TreeCache cache = repo.getTreeCache();
+            cache.setMaxWeight(5);
+            MemoryStats stats = repo.getMemoryStats();
+            Tree root = repo.revparseSingle("main").peel(Tree.class).get();
+            Tree dir = root.getByName("dir").toTree().get();
+            Tree child = dir.getByName("child").toTree().get();
+
+            child.pin();
+            Assertions.assertNotNull(dir.getByName("foo"));
+            Assertions.assertEquals(1, cache.size());
+            Assertions.assertEquals(3, stats.getCount(Kind.TREE));
+            Assertions.assertNotNull(child.getPointer());
+
+            child.unpin();
+            Assertions.assertEquals(2, stats.getCount(Kind.TREE));
+            Assertions.assertNull(child.getPointer());
+        }
+    }
+
+    @Test
+    public void limit_must_be_positive() throws Exception {
+        try (Repository repo = open()) {
+            TreeCache cache = repo.getTreeCache();
+            Assertions.assertThrows(IllegalArgumentException.class, () -> cache.setMaxWeight(0));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2;
+
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import net.hunterstrategy.util.GitRepoTestSupport;
+import net.hunterstrategy.util.IntegrationTest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@IntegrationTest
+public class TreeListingIntegrationTest {
+    private static final String EMPTY_BLOB = "e69de29bb2d1d6434b8b29ae775ad8c2e48c5391";
+    private static final String CHILD_TREE = "765b32c65d38f04c4f287abda055818ec0f26912";
+
+    @TempDir
+    static Path tempDir;
+
+    static Repository repo;
+    static Tree tree;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        GitRepoTestSupport.unzipRepo(tempDir, "dirtree.zip");
+        repo = Repository.open(tempDir.resolve("dirtree").toString());
+        tree = repo.revparseSingle("main").peel(Tree.class).get();
+    }
+
+    @AfterAll
+    public static void teardown() throws Exception {
+        repo.close();
+    }
+
+    private static List<String> paths(TreeListing listing) {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < listing.size(); i++) {
+            paths.add(listing.getPath(i));
+        }
+        return paths;
+    }
+
+    @Test
+    public void pre_order() throws Exception {
+        TreeListing listing = tree.walk(TreeListing.Order.PRE);
+        Assertions.assertEquals(
+                List.of(
+                        "dir",
+                        "dir/bar",
+                        "dir/baz",
+                        "dir/child",
+                        "dir/child/a",
+                        "dir/child/b",
+                        "dir/child/c",
+                        "dir/foo"),
+                paths(listing));
+
+        Assertions.assertTrue(listing.isTree(3));
+        Assertions.assertEquals("child", listing.getName(3));
+        Assertions.assertEquals(GitObject.Type.TREE, listing.getType(3));
+        Assertions.assertEquals(CHILD_TREE, listing.getOid(3).toString());
+
+        Assertions.assertFalse(listing.isTree(4));
+        Assertions.assertEquals(Tree.FileMode.BLOB, listing.getFileMode(4));
+        Assertions.assertEquals(GitObject.Type.BLOB, listing.getType(4));
+        Assertions.assertEquals(EMPTY_BLOB, listing.getOid(4).toString());
+    }
+
+    @Test
+    public void post_order() throws Exception {
+        TreeListing listing = tree.walk(TreeListing.Order.POST);
+        List<String> paths = paths(listing);
+        Assertions.assertEquals(8, paths.size());
+        Assertions.assertEquals("dir", paths.get(paths.size() - 1));
+        Assertions.assertTrue(paths.indexOf("dir/child") > paths.indexOf("dir/child/c"));
+    }
+
+    @Test
+    public void skip_directories() throws Exception {
+        TreeListing listing = tree.walk(dir -> !"dir/child".equals(dir));
+        Assertions.assertEquals(List.of("dir", "dir/bar", "dir/baz", "dir/child", "dir/foo"), paths(listing));
+    }
+
+    @Test
+    public void callback_failure() throws Exception {
+        IllegalArgumentException ex = Assertions.assertThrows(IllegalArgumentException.class, () -> tree.walk(dir -> {
+            throw new IllegalArgumentException(dir);
+        }));
+        Assertions.assertEquals("dir", ex.getMessage());
+    }
+
+    @Test
+    public void limit_stops_the_walk() throws Exception {
+        List<Long> seen = new ArrayList<>();
+        Assertions.assertTrue(tree.walk(TreeListing.Order.PRE, (size, chars) -> {
+                    seen.add(chars);
+                    return size < 3;
+                })
+                .isEmpty());
+        // "dir", "dir/bar", "dir/baz", and nothing after
+        Assertions.assertEquals(List.of(3L, 10L, 17L), seen);
+
+        TreeListing listing = tree.walk(TreeListing.Order.PRE, (size, chars) -> true).get();
+        Assertions.assertEquals(8, listing.size());
+    }
+}
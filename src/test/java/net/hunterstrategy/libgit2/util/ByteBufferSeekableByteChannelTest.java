@@ -0,0 +1,111 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2.util;
+
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ByteBufferSeekableByteChannelTest {
+    private static final byte[] CONTENT = "hello, world\n".getBytes(StandardCharsets.UTF_8);
+
+    private static ByteBuffer source() {
+        ByteBuffer direct = ByteBuffer.allocateDirect(CONTENT.length);
+        direct.put(CONTENT).flip();
+        return direct;
+    }
+
+    @Test
+    public void read_advances_destination() throws Exception {
+        SeekableByteChannel chan = new ByteBufferSeekableByteChannel(source());
+        ByteBuffer dst = ByteBuffer.allocate(5);
+
+        Assertions.assertEquals(5, chan.read(dst));
+        Assertions.assertEquals(5, dst.position());
+        Assertions.assertEquals(5, chan.position());
+        Assertions.assertEquals(0, chan.read(dst)); // full destination
+
+        dst.flip();
+        Assertions.assertEquals("hello", StandardCharsets.UTF_8.decode(dst).toString());
+    }
+
+    @Test
+    public void read_loop() throws Exception {
+        SeekableByteChannel chan = new ByteBufferSeekableByteChannel(source());
+        ByteBuffer dst = ByteBuffer.allocate(CONTENT.length + 10);
+        ByteBuffer small = ByteBuffer.allocateDirect(3);
+
+        int read;
+        while ((read = chan.read(small)) != -1) {
+            Assertions.assertTrue(read > 0);
+            small.flip();
+            dst.put(small);
+            small.clear();
+        }
+        dst.flip();
+        Assertions.assertEquals(CONTENT.length, dst.remaining());
+        Assertions.assertEquals(ByteBuffer.wrap(CONTENT), dst);
+        Assertions.assertEquals(CONTENT.length, chan.position());
+    }
+
+    @Test
+    public void seek() throws Exception {
+        ByteBuffer src = source();
+        SeekableByteChannel chan = new ByteBufferSeekableByteChannel(src);
+        Assertions.assertEquals(CONTENT.length, chan.size());
+
+        ByteBuffer dst = ByteBuffer.allocate(5);
+        chan.position(7);
+        Assertions.assertEquals(5, chan.read(dst));
+        Assertions.assertEquals("world", new String(dst.array(), StandardCharsets.UTF_8));
+
+        chan.position(0);
+        dst.clear();
+        Assertions.assertEquals(5, chan.read(dst));
+        Assertions.assertEquals("hello", new String(dst.array(), StandardCharsets.UTF_8));
+
+        // past the end is legal, and reads as end-of-stream
+        chan.position(CONTENT.length + 100);
+        Assertions.assertEquals(CONTENT.length + 100, chan.position());
+        dst.clear();
+        Assertions.assertEquals(-1, chan.read(dst));
+        Assertions.assertEquals(0, dst.position());
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> chan.position(-1));
+        // source buffer limit is left alone
+        Assertions.assertEquals(CONTENT.length, src.limit());
+    }
+
+    @Test
+    public void closed() throws Exception {
+        SeekableByteChannel chan = new ByteBufferSeekableByteChannel(source());
+        chan.close();
+        Assertions.assertFalse(chan.isOpen());
+        Assertions.assertThrows(ClosedChannelException.class, () -> chan.read(ByteBuffer.allocate(1)));
+        Assertions.assertThrows(ClosedChannelException.class, () -> chan.position());
+        Assertions.assertThrows(ClosedChannelException.class, () -> chan.size());
+    }
+}
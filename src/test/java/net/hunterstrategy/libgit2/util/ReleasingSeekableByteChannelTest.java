@@ -0,0 +1,103 @@
+/*-
+ * #%L
+ * java.nio FileSystem - git
+ * %%
+ * Copyright (C) 2022 - 2023 Hunter Strategy LLC
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package net.hunterstrategy.libgit2.util;
+
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ReleasingSeekableByteChannelTest {
+
+    @Test
+    public void releases_once_on_close() throws Exception {
+        AtomicInteger releases = new AtomicInteger();
+        SeekableByteChannel inner = new ByteBufferSeekableByteChannel(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+        SeekableByteChannel chan = new ReleasingSeekableByteChannel(inner, releases::incrementAndGet);
+
+        Assertions.assertSame(chan, chan.position(1));
+        Assertions.assertEquals(2, chan.read(ByteBuffer.allocate(4)));
+        Assertions.assertEquals(3, chan.size());
+        Assertions.assertEquals(0, releases.get());
+
+        chan.close();
+        chan.close();
+        Assertions.assertFalse(chan.isOpen());
+        Assertions.assertFalse(inner.isOpen());
+        Assertions.assertEquals(1, releases.get());
+    }
+
+    @Test
+    public void release_waits_for_reads_in_flight() throws Exception {
+        AtomicInteger releases = new AtomicInteger();
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        SeekableByteChannel inner = new ByteBufferSeekableByteChannel(ByteBuffer.wrap(new byte[] {1, 2, 3})) {
+            @Override
+            public synchronized int read(ByteBuffer dst) throws IOException {
+                reading.countDown();
+                try {
+                    proceed.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return super.read(dst);
+            }
+        };
+        SeekableByteChannel chan = new ReleasingSeekableByteChannel(inner, releases::incrementAndGet);
+
+        AtomicInteger read = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            try {
+                read.set(chan.read(ByteBuffer.allocate(4)));
+            } catch (IOException e) {
+                read.set(-2);
+            }
+        });
+        reader.start();
+        reading.await();
+
+        Thread closer = new Thread(() -> {
+            try {
+                chan.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        closer.start();
+        closer.join(200);
+        Assertions.assertTrue(closer.isAlive());
+        Assertions.assertEquals(0, releases.get());
+
+        proceed.countDown();
+        reader.join();
+        closer.join();
+        Assertions.assertEquals(3, read.get());
+        Assertions.assertEquals(1, releases.get());
+        Assertions.assertFalse(chan.isOpen());
+    }
+}